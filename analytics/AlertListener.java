@@ -0,0 +1,6 @@
+package analytics;
+
+// Called on the thread that recorded the attempt, so implementations should hand slow work off.
+public interface AlertListener {
+    void onAlert(LoginAlert alert);
+}
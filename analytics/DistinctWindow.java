@@ -0,0 +1,69 @@
+package analytics;
+
+import java.util.Arrays;
+
+// Approximate count of distinct keys over the last `buckets` time buckets, by linear counting: each bucket
+// is a bitmap of hashed keys and the estimate follows from the share of zero bits in their union. Memory
+// is fixed at buckets * bits / 8 bytes however many keys arrive; estimates stay within a few percent up
+// to about `bits` distinct keys and saturate beyond that. The union is rebuilt only when the window
+// slides, so adding a key and reading the estimate are O(1). Not thread-safe.
+final class DistinctWindow {
+    private final long[][] bitmaps;
+    private final long[] union;
+    private final int bits;
+    private long head = Long.MIN_VALUE;
+    private int zeros;
+
+    DistinctWindow(int buckets, int bits) {
+        if (bits < 64 || Integer.bitCount(bits) != 1) throw new IllegalArgumentException("bits must be a power of two >= 64");
+        this.bitmaps = new long[buckets][bits >>> 6];
+        this.union = new long[bits >>> 6];
+        this.bits = bits;
+        this.zeros = bits;
+    }
+
+    void add(long bucket, int hash) {
+        advance(bucket);
+        int bit = mix(hash) & (bits - 1);
+        long mask = 1L << bit;
+        bitmaps[(int) Math.floorMod(head, (long) bitmaps.length)][bit >>> 6] |= mask;
+        if ((union[bit >>> 6] & mask) == 0) {
+            union[bit >>> 6] |= mask;
+            zeros--;
+        }
+    }
+
+    double estimate() {
+        if (zeros == 0) return bits * Math.log(bits);
+        return -bits * Math.log((double) zeros / bits);
+    }
+
+    boolean isIdle(long bucket) {
+        return bucket - head >= bitmaps.length;
+    }
+
+    private void advance(long bucket) {
+        if (head != Long.MIN_VALUE && bucket <= head) return;
+        if (head == Long.MIN_VALUE || bucket - head >= bitmaps.length) {
+            for (long[] bitmap : bitmaps) Arrays.fill(bitmap, 0);
+        } else {
+            for (long b = head + 1; b <= bucket; b++) Arrays.fill(bitmaps[(int) Math.floorMod(b, (long) bitmaps.length)], 0);
+        }
+        head = bucket;
+        Arrays.fill(union, 0);
+        for (long[] bitmap : bitmaps) {
+            for (int i = 0; i < union.length; i++) union[i] |= bitmap[i];
+        }
+        zeros = bits;
+        for (long word : union) zeros -= Long.bitCount(word);
+    }
+
+    // Murmur3 finalizer, so keys with similar String hashes land on unrelated bits.
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,46 @@
+package analytics;
+
+import util.Clock;
+
+// Raised by LoginAnalytics when a detector crosses its threshold. key is the username or source the alert
+// is about, or "*" for the global detectors; value is the measurement that crossed threshold.
+public class LoginAlert {
+    public enum Type {
+        // A user's failure ratio over the rolling window.
+        USER_FAILURE_RATIO,
+        // The failure ratio over all attempts in the rolling window.
+        GLOBAL_FAILURE_RATIO,
+        // Distinct usernames tried from one source in the rolling window.
+        SOURCE_USERNAME_BURST,
+        // Distinct usernames with a failed attempt in the rolling window, across all sources.
+        GLOBAL_USERNAME_BURST,
+        // An attempt at an hour in which the user has rarely logged in before.
+        UNUSUAL_HOUR
+    }
+
+    private final Type type;
+    private final String key;
+    private final long timestampMillis;
+    private final double value;
+    private final double threshold;
+
+    public LoginAlert(Type type, String key, long timestampMillis, double value, double threshold) {
+        this.type = type;
+        this.key = key;
+        this.timestampMillis = timestampMillis;
+        this.value = value;
+        this.threshold = threshold;
+    }
+
+    public Type getType() { return type; }
+    public String getKey() { return key; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public double getValue() { return value; }
+    public double getThreshold() { return threshold; }
+
+    @Override
+    public String toString() {
+        return type + " " + key + " at " + Clock.toLocalDateTime(timestampMillis) + ": "
+                + String.format("%.2f", value) + " (threshold " + String.format("%.2f", threshold) + ")";
+    }
+}
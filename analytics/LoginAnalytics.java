@@ -0,0 +1,262 @@
+package analytics;
+
+import config.AppConfig;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import model.LoginAttempt;
+import util.CaseFolding;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Incremental analytics over login attempts as they happen. Every detector keeps a rolling window of
+// ANALYTICS_WINDOW_BUCKETS buckets of ANALYTICS_BUCKET_MILLIS each, keyed by the attempt's own timestamp,
+// so the same code serves live traffic and LoginReplay backtests:
+//   - failure ratio per user and over all attempts;
+//   - distinct usernames tried per source, and distinct usernames failing across all sources;
+//   - attempts at an hour of the day in which the user has rarely logged in successfully.
+// Alerts are raised synchronously on the recording thread, at most once per window per key and detector.
+//
+// State per user, per source and globally is fixed-size, and at most ANALYTICS_MAX_KEYS users and sources
+// are tracked each. Past that budget, keys idle for a whole window are dropped (at most one sweep a
+// second); if none are idle, new keys only feed the global detectors. A user's hour profile outlives
+// their window: profiles are kept apart, up to ANALYTICS_MAX_PROFILES of them, and dropped only once the
+// user has not logged in for ANALYTICS_PROFILE_IDLE_DAYS.
+public class LoginAnalytics {
+    private static final int SOURCE_BITS = 256;
+    private static final int GLOBAL_BITS = 8_192;
+    // Hour profiles are halved once this many logins are counted, so they follow slowly changing habits.
+    private static final int MAX_PROFILE_LOGINS = 1_000;
+
+    private static final class UserState {
+        final RollingWindow window = new RollingWindow(AppConfig.ANALYTICS_WINDOW_BUCKETS);
+        long lastRatioAlert = Long.MIN_VALUE;
+    }
+
+    private static final class HourProfile {
+        final short[] loginsByHour = new short[24];
+        int logins;
+        long lastLoginMillis;
+        long lastHourAlert = Long.MIN_VALUE;
+    }
+
+    private static final class SourceState {
+        final DistinctWindow usernames = new DistinctWindow(AppConfig.ANALYTICS_WINDOW_BUCKETS, SOURCE_BITS);
+        long lastAlert = Long.MIN_VALUE;
+    }
+
+    private final AlertListener listener;
+    private final boolean perUser;
+    private final boolean global;
+    private final long zoneOffsetMillis;
+    private final Map<String, UserState> users = new ConcurrentHashMap<>();
+    private final Map<String, HourProfile> profiles = new ConcurrentHashMap<>();
+    private final Map<String, SourceState> sources = new ConcurrentHashMap<>();
+    private final RollingWindow globalWindow = new RollingWindow(AppConfig.ANALYTICS_WINDOW_BUCKETS);
+    private final DistinctWindow failingUsernames = new DistinctWindow(AppConfig.ANALYTICS_WINDOW_BUCKETS, GLOBAL_BITS);
+    private long lastGlobalRatioAlert = Long.MIN_VALUE;
+    private long lastGlobalBurstAlert = Long.MIN_VALUE;
+    private volatile long lastEvictionMillis;
+
+    private final Counter attempts;
+    private final Map<LoginAlert.Type, Counter> alerts = new EnumMap<>(LoginAlert.Type.class);
+    private final LatencyHistogram recordLatency;
+    private final LatencyHistogram alertLatency;
+
+    public LoginAnalytics(AlertListener listener) {
+        this(listener, MetricsRegistry.getInstance(), ZoneId.systemDefault());
+    }
+
+    public LoginAnalytics(AlertListener listener, MetricsRegistry registry, ZoneId zone) {
+        this(listener, registry, zone, true, true);
+    }
+
+    // LoginReplay runs the per-user detectors and the global ones in separate instances.
+    LoginAnalytics(AlertListener listener, MetricsRegistry registry, ZoneId zone, boolean perUser, boolean global) {
+        this.listener = listener;
+        this.perUser = perUser;
+        this.global = global;
+        // Fixed at start-up; a daylight saving change shifts hours by one, which the neighbouring-hour
+        // tolerance of the time-of-day check absorbs.
+        this.zoneOffsetMillis = zone.getRules().getOffset(Instant.now()).getTotalSeconds() * 1000L;
+        this.attempts = registry.counter("analytics_attempts_total");
+        for (LoginAlert.Type type : LoginAlert.Type.values()) {
+            alerts.put(type, registry.counter("analytics_alerts_total", "type", type.name().toLowerCase()));
+        }
+        this.recordLatency = registry.histogram("analytics_record_seconds");
+        this.alertLatency = registry.histogram("analytics_alert_seconds");
+    }
+
+    public void onAttempt(LoginAttempt attempt, String source) {
+        onAttempt(attempt.getUsername(), source, attempt.getTimestampMillis(), attempt.isSuccess());
+    }
+
+    // source identifies the client (e.g. its address) and may be null.
+    public void onAttempt(String username, String source, long timestampMillis, boolean success) {
+        long start = System.nanoTime();
+        long bucket = Math.floorDiv(timestampMillis, AppConfig.ANALYTICS_BUCKET_MILLIS);
+        String user = CaseFolding.fold(username);
+        if (perUser) recordUser(user, bucket, timestampMillis, success, start);
+        if (global) {
+            recordGlobal(user, bucket, timestampMillis, success, start);
+            if (source != null) recordSource(source, user, bucket, timestampMillis, start);
+        }
+        attempts.increment();
+        recordLatency.recordSince(start);
+    }
+
+    public int getTrackedUsers() {
+        return users.size();
+    }
+
+    public int getProfiledUsers() {
+        return profiles.size();
+    }
+
+    public int getTrackedSources() {
+        return sources.size();
+    }
+
+    private void recordUser(String user, long bucket, long timestampMillis, boolean success, long start) {
+        UserState state = users.get(user);
+        if (state == null) state = track(users, AppConfig.ANALYTICS_MAX_KEYS, user, timestampMillis, UserState::new);
+        if (state != null) {
+            LoginAlert ratioAlert = null;
+            synchronized (state) {
+                RollingWindow window = state.window;
+                window.add(bucket, success);
+                double ratio = (double) window.getFailures() / window.getAttempts();
+                if (window.getAttempts() >= AppConfig.ANALYTICS_USER_MIN_ATTEMPTS && ratio >= AppConfig.ANALYTICS_USER_FAILURE_RATIO
+                        && isDue(state.lastRatioAlert, bucket)) {
+                    state.lastRatioAlert = bucket;
+                    ratioAlert = new LoginAlert(LoginAlert.Type.USER_FAILURE_RATIO, user, timestampMillis, ratio,
+                            AppConfig.ANALYTICS_USER_FAILURE_RATIO);
+                }
+            }
+            raise(ratioAlert, start);
+        }
+
+        // Only a successful login starts a profile, so guessed usernames never take one.
+        HourProfile profile = profiles.get(user);
+        if (profile == null && success) {
+            profile = track(profiles, AppConfig.ANALYTICS_MAX_PROFILES, user, timestampMillis, HourProfile::new);
+        }
+        if (profile == null) return;
+
+        LoginAlert hourAlert = null;
+        int hour = (int) Math.floorMod(timestampMillis + zoneOffsetMillis, 86_400_000L) / 3_600_000;
+        synchronized (profile) {
+            if (profile.logins >= AppConfig.ANALYTICS_HOUR_MIN_LOGINS) {
+                short[] byHour = profile.loginsByHour;
+                double share = (double) (byHour[(hour + 23) % 24] + byHour[hour] + byHour[(hour + 1) % 24]) / profile.logins;
+                if (share < AppConfig.ANALYTICS_RARE_HOUR_SHARE && isDue(profile.lastHourAlert, bucket)) {
+                    profile.lastHourAlert = bucket;
+                    hourAlert = new LoginAlert(LoginAlert.Type.UNUSUAL_HOUR, user, timestampMillis, share,
+                            AppConfig.ANALYTICS_RARE_HOUR_SHARE);
+                }
+            }
+            if (success) {
+                profile.lastLoginMillis = Math.max(profile.lastLoginMillis, timestampMillis);
+                profile.loginsByHour[hour]++;
+                if (++profile.logins == MAX_PROFILE_LOGINS) {
+                    for (int h = 0; h < 24; h++) profile.loginsByHour[h] /= 2;
+                    profile.logins /= 2;
+                }
+            }
+        }
+        raise(hourAlert, start);
+    }
+
+    private void recordGlobal(String user, long bucket, long timestampMillis, boolean success, long start) {
+        LoginAlert ratioAlert = null;
+        LoginAlert burstAlert = null;
+        synchronized (globalWindow) {
+            globalWindow.add(bucket, success);
+            double ratio = (double) globalWindow.getFailures() / globalWindow.getAttempts();
+            if (globalWindow.getAttempts() >= AppConfig.ANALYTICS_GLOBAL_MIN_ATTEMPTS
+                    && ratio >= AppConfig.ANALYTICS_GLOBAL_FAILURE_RATIO && isDue(lastGlobalRatioAlert, bucket)) {
+                lastGlobalRatioAlert = bucket;
+                ratioAlert = new LoginAlert(LoginAlert.Type.GLOBAL_FAILURE_RATIO, "*", timestampMillis, ratio,
+                        AppConfig.ANALYTICS_GLOBAL_FAILURE_RATIO);
+            }
+            if (!success) {
+                failingUsernames.add(bucket, user.hashCode());
+                double distinct = failingUsernames.estimate();
+                if (distinct >= AppConfig.ANALYTICS_GLOBAL_USERNAME_BURST && isDue(lastGlobalBurstAlert, bucket)) {
+                    lastGlobalBurstAlert = bucket;
+                    burstAlert = new LoginAlert(LoginAlert.Type.GLOBAL_USERNAME_BURST, "*", timestampMillis, distinct,
+                            AppConfig.ANALYTICS_GLOBAL_USERNAME_BURST);
+                }
+            }
+        }
+        raise(ratioAlert, start);
+        raise(burstAlert, start);
+    }
+
+    private void recordSource(String source, String user, long bucket, long timestampMillis, long start) {
+        SourceState state = sources.get(source);
+        if (state == null) state = track(sources, AppConfig.ANALYTICS_MAX_KEYS, source, timestampMillis, SourceState::new);
+        if (state == null) return;
+
+        LoginAlert alert = null;
+        synchronized (state) {
+            state.usernames.add(bucket, user.hashCode());
+            double distinct = state.usernames.estimate();
+            if (distinct >= AppConfig.ANALYTICS_SOURCE_USERNAME_BURST && isDue(state.lastAlert, bucket)) {
+                state.lastAlert = bucket;
+                alert = new LoginAlert(LoginAlert.Type.SOURCE_USERNAME_BURST, source, timestampMillis, distinct,
+                        AppConfig.ANALYTICS_SOURCE_USERNAME_BURST);
+            }
+        }
+        raise(alert, start);
+    }
+
+    private <S> S track(Map<String, S> states, int maxKeys, String key, long nowMillis, Supplier<S> factory) {
+        if (states.size() >= maxKeys) {
+            if (nowMillis - lastEvictionMillis >= 1_000) {
+                lastEvictionMillis = nowMillis;
+                evictIdle(nowMillis);
+            }
+            if (states.size() >= maxKeys) return null;
+        }
+        return states.computeIfAbsent(key, k -> factory.get());
+    }
+
+    // Drops users and sources with nothing left in their windows, and the hour profiles of users who
+    // have not logged in for ANALYTICS_PROFILE_IDLE_DAYS.
+    public void evictIdle(long nowMillis) {
+        long bucket = Math.floorDiv(nowMillis, AppConfig.ANALYTICS_BUCKET_MILLIS);
+        users.values().removeIf(state -> {
+            synchronized (state) {
+                return state.window.isIdle(bucket);
+            }
+        });
+        long profileCutoff = nowMillis - AppConfig.ANALYTICS_PROFILE_IDLE_DAYS * 86_400_000L;
+        profiles.values().removeIf(profile -> {
+            synchronized (profile) {
+                return profile.lastLoginMillis < profileCutoff;
+            }
+        });
+        sources.values().removeIf(state -> {
+            synchronized (state) {
+                return state.usernames.isIdle(bucket);
+            }
+        });
+    }
+
+    private void raise(LoginAlert alert, long start) {
+        if (alert == null) return;
+        alerts.get(alert.getType()).increment();
+        listener.onAlert(alert);
+        alertLatency.recordSince(start);
+    }
+
+    private static boolean isDue(long lastAlertBucket, long bucket) {
+        return lastAlertBucket == Long.MIN_VALUE || bucket - lastAlertBucket >= AppConfig.ANALYTICS_WINDOW_BUCKETS;
+    }
+}
@@ -0,0 +1,69 @@
+package analytics;
+
+import metrics.MetricsRegistry;
+import model.LoginAttempt;
+import util.CaseFolding;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Backtests the LoginAnalytics detectors over recorded attempts, e.g. UserRepository.getLoginHistory().
+// Attempts are sorted by time and split by username into one partition per thread, each replayed through
+// its own per-user detectors, while one more task replays the full stream through the global detectors.
+// Per-user state never crosses partitions, so the alerts are the same as replaying on a single thread as
+// long as the history fits ANALYTICS_MAX_KEYS users and ANALYTICS_MAX_PROFILES profiles. Those budgets
+// apply per partition, so past them a partitioned replay keeps keys a single instance would drop, and its
+// alerts can differ.
+// Recorded attempts carry no source, so the per-source burst detector is not part of a backtest.
+public final class LoginReplay {
+    private static final Comparator<LoginAlert> ALERT_ORDER = Comparator.comparingLong(LoginAlert::getTimestampMillis)
+            .thenComparing(LoginAlert::getType).thenComparing(LoginAlert::getKey);
+
+    private LoginReplay() {}
+
+    // Alerts in timestamp order. Metrics go to a private registry so a backtest does not skew live ones.
+    public static List<LoginAlert> replay(List<LoginAttempt> history, int threads, ZoneId zone)
+            throws InterruptedException {
+        LoginAttempt[] attempts = history.toArray(new LoginAttempt[0]);
+        Arrays.parallelSort(attempts, Comparator.comparingLong(LoginAttempt::getTimestampMillis));
+
+        List<List<LoginAttempt>> partitions = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) partitions.add(new ArrayList<>(attempts.length / threads + 1));
+        for (LoginAttempt attempt : attempts) {
+            int h = CaseFolding.hash(attempt.getUsername());
+            partitions.get(Math.floorMod(h ^ (h >>> 16), threads)).add(attempt);
+        }
+
+        MetricsRegistry registry = new MetricsRegistry();
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            List<Future<List<LoginAlert>>> results = new ArrayList<>(threads + 1);
+            results.add(pool.submit(() -> run(Arrays.asList(attempts), new ArrayList<>(), registry, zone, false, true)));
+            for (List<LoginAttempt> partition : partitions) {
+                results.add(pool.submit(() -> run(partition, new ArrayList<>(), registry, zone, true, false)));
+            }
+            List<LoginAlert> alerts = new ArrayList<>();
+            for (Future<List<LoginAlert>> result : results) alerts.addAll(result.get());
+            alerts.sort(ALERT_ORDER);
+            return alerts;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<LoginAlert> run(List<LoginAttempt> attempts, List<LoginAlert> alerts, MetricsRegistry registry,
+                                        ZoneId zone, boolean perUser, boolean global) {
+        LoginAnalytics analytics = new LoginAnalytics(alerts::add, registry, zone, perUser, global);
+        for (LoginAttempt attempt : attempts) analytics.onAttempt(attempt, null);
+        return alerts;
+    }
+}
@@ -0,0 +1,57 @@
+package analytics;
+
+import java.util.Arrays;
+
+// Attempt and failure counts over the last `buckets` time buckets, with running totals so that adding an
+// attempt and reading the totals are both O(1). Attempts older than the newest bucket are counted in it,
+// which keeps slightly out-of-order events without rewinding the window. Not thread-safe.
+final class RollingWindow {
+    private final int[] attempts;
+    private final int[] failures;
+    private long head = Long.MIN_VALUE;
+    private int totalAttempts;
+    private int totalFailures;
+
+    RollingWindow(int buckets) {
+        attempts = new int[buckets];
+        failures = new int[buckets];
+    }
+
+    void add(long bucket, boolean success) {
+        advance(bucket);
+        int index = (int) Math.floorMod(head, (long) attempts.length);
+        attempts[index]++;
+        totalAttempts++;
+        if (!success) {
+            failures[index]++;
+            totalFailures++;
+        }
+    }
+
+    int getAttempts() { return totalAttempts; }
+    int getFailures() { return totalFailures; }
+
+    // True once every bucket has slid out of the window.
+    boolean isIdle(long bucket) {
+        return bucket - head >= attempts.length;
+    }
+
+    private void advance(long bucket) {
+        if (head == Long.MIN_VALUE || bucket - head >= attempts.length) {
+            Arrays.fill(attempts, 0);
+            Arrays.fill(failures, 0);
+            totalAttempts = 0;
+            totalFailures = 0;
+            head = bucket;
+            return;
+        }
+        while (head < bucket) {
+            head++;
+            int index = (int) Math.floorMod(head, (long) attempts.length);
+            totalAttempts -= attempts[index];
+            totalFailures -= failures[index];
+            attempts[index] = 0;
+            failures[index] = 0;
+        }
+    }
+}
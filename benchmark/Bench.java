@@ -0,0 +1,107 @@
+package benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Bench {
+    public interface Op {
+        void run(int thread, long iteration);
+    }
+
+    public static final class Result {
+        private final double opsPerSecond;
+        private final double bytesPerOp;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Result(double opsPerSecond, double bytesPerOp, long gcCount, long gcMillis) {
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public double getOpsPerSecond() { return opsPerSecond; }
+        // NaN when the JVM cannot report per-thread allocation.
+        public double getBytesPerOp() { return bytesPerOp; }
+        public long getGcCount() { return gcCount; }
+        public long getGcMillis() { return gcMillis; }
+    }
+
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private Bench() {}
+
+    // Runs op on the given number of threads for roughly durationMillis and returns total ops/sec.
+    public static double opsPerSecond(int threads, long durationMillis, Op op) throws InterruptedException {
+        return measure(threads, durationMillis, op).getOpsPerSecond();
+    }
+
+    // Like opsPerSecond, plus bytes allocated per op and the GC activity seen during the run.
+    public static Result measure(int threads, long durationMillis, Op op) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        LongAdder ops = new LongAdder();
+        LongAdder allocated = new LongAdder();
+        long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long allocatedBefore = allocatedBytes();
+                    long i = 0;
+                    while ((i & 255) != 0 || System.nanoTime() < deadline[0]) {
+                        op.run(thread, i++);
+                    }
+                    allocated.add(allocatedBytes() - allocatedBefore);
+                    ops.add(i);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "bench-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long begin = System.nanoTime();
+        deadline[0] = begin + durationMillis * 1_000_000L;
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        long total = ops.sum();
+        double bytesPerOp = allocatedBytes() < 0 || total == 0 ? Double.NaN : (double) allocated.sum() / total;
+        return new Result(total * 1e9 / elapsed, bytesPerOp, gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    }
+
+    public static void report(String name, int threads, double opsPerSecond) {
+        System.out.printf("%-40s threads=%-3d %,15.0f ops/s%n", name, threads, opsPerSecond);
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+}
@@ -0,0 +1,168 @@
+package benchmark;
+
+import factory.UserFactory;
+import model.User;
+import model.UserStatus;
+import repository.UserDatabase;
+import security.PasswordHasher;
+import service.AuthService;
+import service.OTPService;
+import validation.InputValidators;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+// Hot-path benchmarks for the repository, OTP, auth, username and input-validation code, single- and
+// multi-threaded, at growing user counts. Results (throughput, bytes allocated per op, GC activity)
+// are printed and written as JSON lines.
+//
+// Usage: BenchmarkSuite [results.jsonl] [max users] [threads] [millis per run]
+public class BenchmarkSuite {
+    private static final int[] DATASET_SIZES = {1_000, 100_000, 1_000_000, 10_000_000};
+    private static final int WARMUP_MILLIS = 500;
+    // Lookup keys are built ahead of the run from this many users, so the measured op allocates only
+    // what the lookup itself does.
+    private static final int SAMPLED_KEYS = 1 << 16;
+
+    private final List<String> results = new ArrayList<>();
+    private final long durationMillis;
+    private final int[] threadCounts;
+
+    private BenchmarkSuite(long durationMillis, int maxThreads) {
+        this.durationMillis = durationMillis;
+        this.threadCounts = maxThreads > 1 ? new int[]{1, maxThreads} : new int[]{1};
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path output = Path.of(args.length > 0 ? args[0] : "benchmark-results.jsonl");
+        int maxUsers = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long millis = args.length > 3 ? Long.parseLong(args[3]) : 2_000;
+
+        BenchmarkSuite suite = new BenchmarkSuite(millis, threads);
+        PrintStream console = System.out;
+        // The services log to stdout on every call; keep that out of the measurements.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            suite.runValidators(console);
+            suite.runServices(console, maxUsers);
+        } finally {
+            System.setOut(console);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(output)) {
+            for (String line : suite.results) writer.write(line + "\n");
+        }
+        console.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private void runValidators(PrintStream console) throws InterruptedException {
+        String[] nics = {"123456789012", "123456789V", "P1234567", "OL1234567", "12345", "X1234567"};
+        String[] passwords = {"password1", "abcdefgh", "Secr3tPassw0rd", "1234567"};
+        String[] emails = {"user@example.com", "no-at-sign.com", "a@b.c", ""};
+
+        measure(console, "validate.nic", 0, values(nics, InputValidators::isValidNic));
+        measure(console, "validate.account", 0, values(new String[]{"ACC123456", "ACC12345", "acc123456"}, InputValidators::isValidAccountNumber));
+        measure(console, "validate.mobile", 0, values(new String[]{"0771234567", "", "077123"}, InputValidators::isValidMobile));
+        measure(console, "validate.email", 0, values(emails, InputValidators::isValidEmail));
+        measure(console, "validate.otp", 0, values(new String[]{"123456", "12345a"}, InputValidators::isValidOtp));
+        measure(console, "validate.password", 0, values(passwords, InputValidators::isValidPassword));
+    }
+
+    private void runServices(PrintStream console, int maxUsers) throws InterruptedException {
+        UserDatabase db = UserDatabase.getInstance();
+        PasswordHasher hasher = new PasswordHasher(1, Runtime.getRuntime().availableProcessors(), 10_000);
+        String storedHash = hasher.hash("password1").join();
+        AuthService authService = new AuthService(db, hasher);
+        UserFactory userFactory = new UserFactory(hasher);
+        OTPService otpService = new OTPService();
+        otpService.setOtpListener((userId, otp, channel) -> {});
+
+        AtomicLong addedUsers = new AtomicLong();
+        int loaded = 0;
+        for (int size : DATASET_SIZES) {
+            if (size > maxUsers) break;
+            // Every user shares one precomputed hash; hashing millions of passwords is not what is measured here.
+            for (; loaded < size; loaded++) db.addUser(user("user", loaded, storedHash));
+            int users = loaded;
+
+            measure(console, "db.findByUsername", users, (t, i) -> db.findByUsername("user" + (i % users)));
+            measure(console, "db.findByUsername.miss", users, (t, i) -> db.findByUsername("missing" + i));
+            String[] mixedCase = sample(users, n -> "USER" + n);
+            String[] mobiles = sample(users, n -> mobile(n));
+            String[] emails = sample(users, n -> "User" + n + "@Example.com");
+            measure(console, "db.findByUsername.mixedCase", users, (t, i) -> db.findByUsername(mixedCase[(int) (i & (SAMPLED_KEYS - 1))]));
+            measure(console, "db.findByMobile", users, (t, i) -> db.findByMobile(mobiles[(int) (i & (SAMPLED_KEYS - 1))]));
+            measure(console, "db.findByEmail", users, (t, i) -> db.findByEmail(emails[(int) (i & (SAMPLED_KEYS - 1))]));
+            measure(console, "db.countLoginFailures", users, (t, i) ->
+                    db.countLoginFailuresSince(mixedCase[(int) (i & (SAMPLED_KEYS - 1))], 0));
+            measure(console, "db.addUser", users, (t, i) -> db.addUser(user("added", addedUsers.incrementAndGet(), storedHash)));
+            // One user per thread whose contacts change on every op: index churn, not growth.
+            String[] churnMobiles = sample(SAMPLED_KEYS, n -> "06" + String.format("%08d", n));
+            String[] churnEmails = sample(SAMPLED_KEYS, n -> "churn" + n + "@example.com");
+            User[] churned = new User[threadCounts[threadCounts.length - 1]];
+            for (int t = 0; t < churned.length; t++) {
+                churned[t] = user("churn" + users + "_", t, storedHash);
+                db.addUser(churned[t]);
+            }
+            measure(console, "db.updateContacts", users, (t, i) -> db.updateContacts(churned[t],
+                    churnMobiles[(int) (i & (SAMPLED_KEYS - 1))], churnEmails[(int) (i & (SAMPLED_KEYS - 1))]));
+            measure(console, "otp.generate", users, (t, i) -> otpService.generateOTP(null, "user" + (i % users), "mobile", false));
+            measure(console, "otp.validate", users, (t, i) -> otpService.validateOTP("user" + (i % users), "000000"));
+            measure(console, "factory.suggestUsername", users, (t, i) -> userFactory.suggestUsername("user" + (i % 100)));
+            measure(console, "auth.validateCredentials", users, (t, i) ->
+                    authService.validateCredentials("user" + (i % users), (i & 1) == 0 ? "password1" : "wrong"));
+        }
+        hasher.close();
+    }
+
+    private void measure(PrintStream console, String name, int users, Bench.Op op) throws InterruptedException {
+        for (int threads : threadCounts) {
+            Bench.measure(threads, WARMUP_MILLIS, op);
+            Bench.Result result = Bench.measure(threads, durationMillis, op);
+            console.printf("%-28s users=%-10d threads=%-3d %,15.0f ops/s %10.1f B/op gc=%d (%d ms)%n", name, users,
+                    threads, result.getOpsPerSecond(), result.getBytesPerOp(), result.getGcCount(), result.getGcMillis());
+            results.add(String.format(Locale.ROOT,
+                    "{\"benchmark\":\"%s\",\"users\":%d,\"threads\":%d,\"opsPerSecond\":%.1f,\"bytesPerOp\":%.1f,\"gcCount\":%d,\"gcMillis\":%d}",
+                    name, users, threads, result.getOpsPerSecond(), result.getBytesPerOp(), result.getGcCount(), result.getGcMillis()));
+        }
+    }
+
+    private static String[] sample(int users, IntFunction<String> key) {
+        String[] keys = new String[SAMPLED_KEYS];
+        for (int i = 0; i < SAMPLED_KEYS; i++) keys[i] = key.apply((int) ((i * 2_654_435_761L) % users));
+        return keys;
+    }
+
+    private static String mobile(long n) {
+        return "07" + String.format("%08d", n % 100_000_000);
+    }
+
+    private static Bench.Op values(String[] inputs, Predicate<String> validator) {
+        return (t, i) -> validator.test(inputs[(int) (i % inputs.length)]);
+    }
+
+    private static User user(String prefix, long n, String passwordHash) {
+        String username = prefix + n;
+        User user = new User();
+        user.setUsername(username);
+        user.setNic("nic-" + username);
+        user.setAccountNumber("acc-" + username);
+        user.setPassword(passwordHash);
+        user.setDisplayName(username);
+        user.setMobile(mobile(n));
+        user.setEmail(username + "@example.com");
+        user.setStatus(UserStatus.ACTIVE);
+        return user;
+    }
+}
@@ -0,0 +1,48 @@
+package benchmark;
+
+import repository.ExpiringCodeStore;
+import util.CachedClock;
+import util.Clock;
+import util.ManualClock;
+
+import java.time.LocalDateTime;
+
+// Cost of one expiry check with LocalDateTime against epoch millis read from the system clock and from
+// the cached clock, plus a deterministic expiry check driven by a ManualClock.
+public class ClockBenchmark {
+    private static final long DURATION_MILLIS = 2_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        checkManualExpiry();
+
+        LocalDateTime lockedUntil = LocalDateTime.now().plusHours(3);
+        long lockedUntilMillis = System.currentTimeMillis() + 3 * 3_600_000L;
+        Clock system = Clock.system();
+        Clock cached = CachedClock.getInstance();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : cores > 1 ? new int[]{1, cores} : new int[]{1}) {
+            report("LocalDateTime.now().isAfter", threads, Bench.measure(threads, DURATION_MILLIS,
+                    (t, i) -> lockedUntil.isAfter(LocalDateTime.now())));
+            report("system clock millis", threads, Bench.measure(threads, DURATION_MILLIS,
+                    (t, i) -> { if (lockedUntilMillis < system.currentTimeMillis()) throw new AssertionError(); }));
+            report("cached clock millis", threads, Bench.measure(threads, DURATION_MILLIS,
+                    (t, i) -> { if (lockedUntilMillis < cached.currentTimeMillis()) throw new AssertionError(); }));
+        }
+    }
+
+    private static void report(String name, int threads, Bench.Result result) {
+        System.out.printf("%-30s threads=%-3d %,15.0f checks/s %8.2f ns/check %6.1f B/check%n", name, threads,
+                result.getOpsPerSecond(), threads * 1e9 / result.getOpsPerSecond(), result.getBytesPerOp());
+    }
+
+    private static void checkManualExpiry() {
+        ManualClock clock = new ManualClock(1_000_000);
+        ExpiringCodeStore store = new ExpiringCodeStore(clock);
+        store.put("user", "123456", 30_000);
+        clock.advance(30_000);
+        boolean validAtDeadline = !store.isExpired("user");
+        clock.advance(1);
+        boolean expiredAfter = store.isExpired("user") && !store.consume("user", "123456");
+        System.out.println("manual clock: valid at deadline=" + validAtDeadline + ", expired 1 ms later=" + expiredAfter);
+    }
+}
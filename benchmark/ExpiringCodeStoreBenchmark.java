@@ -0,0 +1,69 @@
+package benchmark;
+
+import repository.ExpiringCodeStore;
+import util.Clock;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExpiringCodeStoreBenchmark {
+    private static final int LIVE_KEYS = 1_000_000;
+    private static final long DURATION_MILLIS = 2_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] keys = new String[LIVE_KEYS];
+        String[] codes = new String[LIVE_KEYS];
+        for (int i = 0; i < LIVE_KEYS; i++) {
+            keys[i] = "user" + i;
+            codes[i] = String.format("%06d", i % 1_000_000);
+        }
+
+        long before = usedHeap();
+        Map<String, String> legacyCodes = new HashMap<>();
+        Map<String, LocalDateTime> legacyExpiry = new HashMap<>();
+        for (int i = 0; i < LIVE_KEYS; i++) {
+            legacyCodes.put(keys[i], codes[i]);
+            legacyExpiry.put(keys[i], LocalDateTime.now().plusSeconds(300));
+        }
+        System.out.printf("legacy maps heap:        %,d bytes/key%n", (usedHeap() - before) / LIVE_KEYS);
+
+        before = usedHeap();
+        ExpiringCodeStore store = new ExpiringCodeStore();
+        for (int i = 0; i < LIVE_KEYS; i++) store.put(keys[i], codes[i], 300_000);
+        System.out.printf("ExpiringCodeStore heap:  %,d bytes/key%n", (usedHeap() - before) / LIVE_KEYS);
+
+        Bench.report("legacy put", 1, Bench.opsPerSecond(1, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % LIVE_KEYS);
+            legacyCodes.put(keys[k], codes[k]);
+            legacyExpiry.put(keys[k], LocalDateTime.now().plusSeconds(300));
+        }));
+        Bench.report("legacy validate", 1, Bench.opsPerSecond(1, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % LIVE_KEYS);
+            if (!LocalDateTime.now().isAfter(legacyExpiry.get(keys[k]))) legacyCodes.get(keys[k]).equals(codes[k]);
+        }));
+        Bench.report("store put", 1, Bench.opsPerSecond(1, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % LIVE_KEYS);
+            store.put(keys[k], codes[k], 300_000);
+        }));
+        Bench.report("store validate", 1, Bench.opsPerSecond(1, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % LIVE_KEYS);
+            if (!store.isExpired(keys[k])) store.matches(keys[k], codes[k]);
+        }));
+
+        // Short-lived codes must disappear on their own once they expire.
+        ExpiringCodeStore shortLived = new ExpiringCodeStore(Clock.system(), 10);
+        for (int i = 0; i < LIVE_KEYS; i++) shortLived.put(keys[i], codes[i], 50);
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        shortLived.expire();
+        System.out.printf("evicted %,d expired keys in %.1f ms, %d left%n",
+                LIVE_KEYS, (System.nanoTime() - start) / 1e6, shortLived.size());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,100 @@
+package benchmark;
+
+import security.LockoutManager;
+import util.Clock;
+import util.ManualClock;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Lock checks against many locked NICs, the old ArrayList.contains next to LockoutManager.isLocked, then
+// the heap each lock costs, the escalation schedule, how long a sweep takes and how long a restart takes
+// to recover the log.
+//
+// Usage: LockoutManagerBenchmark [locked keys]
+public class LockoutManagerBenchmark {
+    private static final long HOUR = 3_600_000L;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String[] nics = new String[keys];
+        for (int i = 0; i < keys; i++) nics[i] = String.format("%09dV", i * 7L);
+
+        checks(nics);
+        heapPerLock(nics);
+        escalation();
+        sweepAndRecovery(nics);
+    }
+
+    private static void checks(String[] nics) throws InterruptedException {
+        List<String> list = new ArrayList<>();
+        LockoutManager lockouts = new LockoutManager(Clock.cached());
+        for (String nic : nics) {
+            list.add(nic);
+            lockouts.lock(LockoutManager.Kind.ONBOARDING, nic);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        // Half the checks are for NICs that were never locked, the worst case for contains.
+        Bench.Op listOp = (t, i) -> list.contains(i % 2 == 0 ? nics[(int) (i % nics.length)] : "unlocked");
+        Bench.Op managerOp = (t, i) -> lockouts.isLocked(LockoutManager.Kind.ONBOARDING,
+                i % 2 == 0 ? nics[(int) (i % nics.length)] : "unlocked");
+        Bench.Result scan = Bench.measure(threads, 2_000, listOp);
+        Bench.measure(threads, 500, managerOp);
+        Bench.Result manager = Bench.measure(threads, 2_000, managerOp);
+        System.out.printf("%,d locked keys: ArrayList.contains %,.0f ops/s, LockoutManager.isLocked %,.0f ops/s %.1f B/op%n",
+                nics.length, scan.getOpsPerSecond(), manager.getOpsPerSecond(), manager.getBytesPerOp());
+    }
+
+    private static void heapPerLock(String[] nics) {
+        ManualClock clock = new ManualClock(1_700_000_000_000L);
+        long before = usedHeap();
+        LockoutManager lockouts = new LockoutManager(clock);
+        for (String nic : nics) lockouts.lock(LockoutManager.Kind.ONBOARDING, nic);
+        long used = usedHeap() - before;
+        System.out.printf("heap per lock: %,d bytes (%,d entries)%n", used / nics.length, lockouts.size());
+    }
+
+    private static void escalation() {
+        ManualClock clock = new ManualClock(1_700_000_000_000L);
+        LockoutManager lockouts = new LockoutManager(clock);
+        StringBuilder schedule = new StringBuilder("lock durations for a repeat offender (hours):");
+        for (int strike = 0; strike < 7; strike++) {
+            long until = lockouts.lock(LockoutManager.Kind.LOGIN, "mallory");
+            schedule.append(' ').append((until - clock.currentTimeMillis()) / HOUR);
+            clock.advance(until - clock.currentTimeMillis() + 1);
+        }
+        clock.advance(100 * HOUR);
+        long until = lockouts.lock(LockoutManager.Kind.LOGIN, "mallory");
+        schedule.append(", after a quiet spell: ").append((until - clock.currentTimeMillis()) / HOUR);
+        System.out.println(schedule);
+    }
+
+    private static void sweepAndRecovery(String[] nics) throws Exception {
+        Path directory = Files.createTempDirectory("lockouts");
+        ManualClock clock = new ManualClock(1_700_000_000_000L);
+        LockoutManager lockouts = LockoutManager.open(directory, clock);
+        long start = System.nanoTime();
+        for (String nic : nics) lockouts.lock(LockoutManager.Kind.ONBOARDING, nic);
+        System.out.printf("%,d durable locks in %,d ms%n", nics.length, (System.nanoTime() - start) / 1_000_000);
+        lockouts.close();
+
+        start = System.nanoTime();
+        LockoutManager recovered = LockoutManager.open(directory, clock);
+        System.out.printf("restart recovered %,d locks in %,d ms%n", recovered.size(), (System.nanoTime() - start) / 1_000_000);
+
+        clock.advance(200 * HOUR);
+        start = System.nanoTime();
+        recovered.sweep();
+        System.out.printf("sweep dropped expired entries in %.1f ms, %d left%n", (System.nanoTime() - start) / 1e6,
+                recovered.size());
+        recovered.close();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
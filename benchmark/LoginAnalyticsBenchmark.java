@@ -0,0 +1,161 @@
+package benchmark;
+
+import analytics.LoginAlert;
+import analytics.LoginAnalytics;
+import analytics.LoginReplay;
+import metrics.HistogramSnapshot;
+import metrics.MetricsRegistry;
+import model.LoginAttempt;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// LoginAnalytics on the login path: recording throughput and allocation, record and alert latency,
+// heap per tracked user, how quickly an injected credential-stuffing run is flagged, and LoginReplay
+// over a recorded history on one thread against several (which must raise the same alerts).
+//
+// Usage: LoginAnalyticsBenchmark [threads] [replayed attempts]
+public class LoginAnalyticsBenchmark {
+    private static final ZoneId ZONE = ZoneOffset.UTC;
+    private static final int USERS = 100_000;
+    private static final int SOURCES = 10_000;
+    private static final int TRACKED_USERS = 200_000;
+    private static final long DURATION_MILLIS = 2_000;
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int replayed = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+
+        String[] usernames = new String[USERS];
+        for (int i = 0; i < USERS; i++) usernames[i] = "user" + i;
+        String[] sources = new String[SOURCES];
+        for (int i = 0; i < SOURCES; i++) sources[i] = "10.0." + (i >>> 8) + "." + (i & 0xFF);
+
+        throughput(usernames, sources, threads);
+        heapPerUser();
+        credentialStuffing(usernames);
+        // At least two partitions, so the comparison means something on a single core.
+        replay(usernames, replayed, Math.max(threads, 2));
+    }
+
+    // One attempt per simulated 10 ms, about 5% failing, so windows roll over and alerts stay rare.
+    private static void throughput(String[] usernames, String[] sources, int threads) throws InterruptedException {
+        for (int n : threads > 1 ? new int[]{1, threads} : new int[]{1}) {
+            MetricsRegistry registry = new MetricsRegistry();
+            LoginAnalytics analytics = new LoginAnalytics(alert -> {}, registry, ZONE);
+            AtomicLong clock = new AtomicLong(START_MILLIS);
+            Bench.Op op = (t, i) -> analytics.onAttempt(usernames[(int) (i * 7919 % USERS)],
+                    sources[(int) (i % SOURCES)], clock.addAndGet(10), i % 20 != 0);
+            Bench.measure(n, 500, op);
+            Bench.Result result = Bench.measure(n, DURATION_MILLIS, op);
+            System.out.printf("%-32s threads=%-3d %,12.0f ops/s %8.1f B/op gc=%d (%d ms)%n", "onAttempt", n,
+                    result.getOpsPerSecond(), result.getBytesPerOp(), result.getGcCount(), result.getGcMillis());
+            printLatency("record", registry.histogram("analytics_record_seconds").snapshot());
+            printLatency("alert", registry.histogram("analytics_alert_seconds").snapshot());
+        }
+    }
+
+    private static void heapPerUser() {
+        LoginAnalytics analytics = new LoginAnalytics(alert -> {}, new MetricsRegistry(), ZONE);
+        String[] usernames = new String[TRACKED_USERS];
+        for (int i = 0; i < TRACKED_USERS; i++) usernames[i] = "tracked" + i;
+        long before = usedHeap();
+        for (int i = 0; i < TRACKED_USERS; i++) analytics.onAttempt(usernames[i], null, START_MILLIS + i, true);
+        long used = usedHeap() - before;
+        System.out.printf("heap per tracked user: %,d bytes (%,d users)%n", used / analytics.getTrackedUsers(),
+                analytics.getTrackedUsers());
+    }
+
+    // Five minutes of background traffic, each user from their own address, then one source tries a new username every 100 ms with a leaked
+    // password list while another hammers a single account.
+    private static void credentialStuffing(String[] usernames) {
+        List<LoginAlert> alerts = new ArrayList<>();
+        LoginAnalytics analytics = new LoginAnalytics(alerts::add, new MetricsRegistry(), ZONE);
+        Random random = new Random(42);
+        long now = START_MILLIS;
+        for (int i = 0; i < 30_000; i++, now += 10) {
+            int user = random.nextInt(USERS);
+            analytics.onAttempt(usernames[user], homeAddress(user), now, random.nextInt(20) != 0);
+        }
+        int background = alerts.size();
+        Map<LoginAlert.Type, Integer> byType = new EnumMap<>(LoginAlert.Type.class);
+        for (LoginAlert alert : alerts) byType.merge(alert.getType(), 1, Integer::sum);
+
+        long attackStart = now;
+        int tried = 0;
+        long sourceFlagged = -1;
+        long accountFlagged = -1;
+        for (int i = 0; i < 1_000; i++, now += 100) {
+            int user = random.nextInt(USERS);
+            analytics.onAttempt(usernames[user], homeAddress(user), now, true);
+            analytics.onAttempt("stuffed" + i, "203.0.113.7", now, false);
+            analytics.onAttempt(usernames[0], "198.51.100.9", now, false);
+            tried++;
+            for (LoginAlert alert : alerts.subList(background, alerts.size())) {
+                if (sourceFlagged < 0 && alert.getType() == LoginAlert.Type.SOURCE_USERNAME_BURST) sourceFlagged = tried;
+                if (accountFlagged < 0 && alert.getType() == LoginAlert.Type.USER_FAILURE_RATIO
+                        && alert.getKey().equals(usernames[0])) accountFlagged = tried;
+            }
+            if (sourceFlagged > 0 && accountFlagged > 0) break;
+        }
+        System.out.printf("credential stuffing: background alerts %s; source flagged after %d usernames, "
+                + "account flagged after %d guesses (%.1f s into the attack)%n", byType, sourceFlagged,
+                accountFlagged, (now - attackStart) / 1_000.0);
+        for (LoginAlert alert : alerts.subList(background, alerts.size())) System.out.println("  " + alert);
+    }
+
+    private static void replay(String[] usernames, int count, int threads) throws InterruptedException {
+        Random random = new Random(7);
+        List<LoginAttempt> history = new ArrayList<>(count);
+        long now = START_MILLIS;
+        for (int i = 0; i < count; i++) {
+            now += random.nextInt(20);
+            // Every 50,000 attempts, a burst of failures spread over many accounts.
+            boolean burst = i % 50_000 < 2_000;
+            history.add(new LoginAttempt(usernames[random.nextInt(burst ? 5_000 : USERS)], now,
+                    burst ? random.nextInt(10) == 0 : random.nextInt(20) != 0));
+        }
+
+        long start = System.nanoTime();
+        List<LoginAlert> single = LoginReplay.replay(history, 1, ZONE);
+        long singleNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<LoginAlert> parallel = LoginReplay.replay(history, threads, ZONE);
+        long parallelNanos = System.nanoTime() - start;
+
+        System.out.printf("replay %,d attempts: 1 thread %,d ms, %d threads %,d ms (%.2fx); %,d alerts, identical: %b%n",
+                count, singleNanos / 1_000_000, threads, parallelNanos / 1_000_000, (double) singleNanos / parallelNanos,
+                single.size(), sameAlerts(single, parallel));
+    }
+
+    private static String homeAddress(int user) {
+        return "10." + (user >>> 16) + "." + (user >>> 8 & 0xFF) + "." + (user & 0xFF);
+    }
+
+    private static boolean sameAlerts(List<LoginAlert> a, List<LoginAlert> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).toString().equals(b.get(i).toString())) return false;
+        }
+        return true;
+    }
+
+    private static void printLatency(String name, HistogramSnapshot snapshot) {
+        System.out.printf("  %-6s latency: n=%,d p50=%,d ns p99=%,d ns p99.9=%,d ns max=%,d ns%n", name,
+                snapshot.getCount(), snapshot.getPercentile(50), snapshot.getPercentile(99),
+                snapshot.getPercentile(99.9), snapshot.getMax());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
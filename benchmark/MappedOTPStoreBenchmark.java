@@ -0,0 +1,132 @@
+package benchmark;
+
+import repository.ExpiringCodeStore;
+import repository.MappedOTPStore;
+import repository.OTPStore;
+import util.Clock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// put / validate / consume throughput of the in-process ExpiringCodeStore against MappedOTPStore, then a
+// second JVM mapping the same file: it consumes codes this JVM issued, sees the attempt limit this JVM
+// used up, and ping-pongs codes with it to measure the cross-process round trip.
+//
+// Usage: MappedOTPStoreBenchmark [file]; the child mode (peer <file>) is started by the benchmark itself.
+public class MappedOTPStoreBenchmark {
+    private static final int KEYS = 50_000;
+    private static final int BUCKETS = 65_536;
+    private static final int ROUND_TRIPS = 5_000;
+    private static final long DURATION_MILLIS = 2_000;
+    private static final long TTL_MILLIS = 300_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("peer")) {
+            peer(Path.of(args[1]));
+            return;
+        }
+        Path file = args.length > 0 ? Path.of(args[0]) : Files.createTempFile("otp-store", ".bin");
+        Files.deleteIfExists(file);
+
+        String[] keys = new String[KEYS];
+        String[] codes = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "user" + i;
+            codes[i] = String.format("%06d", i * 7919 % 1_000_000);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        try (MappedOTPStore mapped = new MappedOTPStore(file, BUCKETS, 3, Clock.system())) {
+            measure("ExpiringCodeStore", new ExpiringCodeStore(Clock.system(), 100, 3), keys, codes, threads);
+            measure("MappedOTPStore", mapped, keys, codes, threads);
+            crossProcess(file, mapped, keys, codes);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void measure(String name, OTPStore store, String[] keys, String[] codes, int threads)
+            throws InterruptedException {
+        for (int i = 0; i < KEYS; i++) store.put(keys[i], codes[i], TTL_MILLIS);
+        report(name + " put", threads, Bench.measure(threads, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % KEYS);
+            store.put(keys[k], codes[k], TTL_MILLIS);
+        }));
+        report(name + " matches", threads, Bench.measure(threads, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % KEYS);
+            store.matches(keys[k], codes[k]);
+        }));
+        report(name + " put + consume", threads, Bench.measure(threads, DURATION_MILLIS, (t, i) -> {
+            int k = (int) (i % KEYS);
+            store.put(keys[k], codes[k], TTL_MILLIS);
+            store.consume(keys[k], codes[k]);
+        }));
+    }
+
+    private static void crossProcess(Path file, MappedOTPStore store, String[] keys, String[] codes)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < KEYS; i++) store.put(keys[i], codes[i], TTL_MILLIS);
+        // Two of the three allowed attempts are used up here; the peer's single wrong guess must burn the code.
+        store.put("attempts", "123456", TTL_MILLIS);
+        store.consume("attempts", "000000");
+        store.consume("attempts", "000001");
+
+        Process peer = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), MappedOTPStoreBenchmark.class.getName(), "peer", file.toString())
+                .inheritIO().start();
+
+        // Ping-pong: both sides know the sequence of codes, and the peer answers each "ping" with the same "pong".
+        await(store, "ready", "1");
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            String code = roundTripCode(i);
+            store.put("ping", code, TTL_MILLIS);
+            await(store, "pong", code);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (!peer.waitFor(60, TimeUnit.SECONDS)) peer.destroy();
+        store.remove("ready");
+        store.remove("ping");
+        store.remove("pong");
+        System.out.printf("cross-process round trip: %,.1f us (%,d round trips)%n", elapsed / 1_000.0 / ROUND_TRIPS, ROUND_TRIPS);
+        System.out.printf("codes issued here left unconsumed by the peer: %,d%n", store.size());
+    }
+
+    private static void peer(Path file) throws IOException {
+        try (MappedOTPStore store = new MappedOTPStore(file, BUCKETS, 3, Clock.system())) {
+            int consumed = 0;
+            for (int i = 0; i < KEYS; i++) {
+                if (store.consume("user" + i, String.format("%06d", i * 7919 % 1_000_000))) consumed++;
+            }
+            store.consume("attempts", "000002");
+            System.out.printf("peer consumed %,d of %,d codes; attempt limit shared: %b%n", consumed, KEYS,
+                    !store.consume("attempts", "123456"));
+
+            store.put("ready", "1", TTL_MILLIS);
+            for (int i = 0; i < ROUND_TRIPS; i++) {
+                String code = roundTripCode(i);
+                await(store, "ping", code);
+                store.put("pong", code, TTL_MILLIS);
+            }
+        }
+    }
+
+    // Spins briefly, then parks, so the two JVMs still make progress when they share one core.
+    private static void await(OTPStore store, String key, String code) {
+        for (int spins = 0; !store.matches(key, code); spins++) {
+            if (spins < 100) Thread.onSpinWait();
+            else LockSupport.parkNanos(10_000);
+        }
+    }
+
+    private static String roundTripCode(int i) {
+        return String.format("%06d", i);
+    }
+
+    private static void report(String name, int threads, Bench.Result result) {
+        System.out.printf("%-40s threads=%-3d %,12.0f ops/s %8.1f B/op%n", name, threads, result.getOpsPerSecond(),
+                result.getBytesPerOp());
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import metrics.Counter;
+import metrics.HistogramSnapshot;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Recording cost of counters and latency histograms (ns and bytes per record, uncontended and shared by
+// every core), and histogram percentile accuracy against exact percentiles of the same samples.
+public class MetricsBenchmark {
+    private static final long DURATION_MILLIS = 2_000;
+    private static final int SAMPLES = 1_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        checkAccuracy(registry.histogram("accuracy_seconds"));
+
+        Counter counter = registry.counter("bench_total");
+        LatencyHistogram histogram = registry.histogram("bench_seconds");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : cores > 1 ? new int[]{1, cores} : new int[]{1}) {
+            report("counter.increment", threads, Bench.measure(threads, DURATION_MILLIS, (t, i) -> counter.increment()));
+            report("histogram.record", threads, Bench.measure(threads, DURATION_MILLIS, (t, i) -> histogram.record(i & 0xFFFFF)));
+            report("histogram.recordSince", threads, Bench.measure(threads, DURATION_MILLIS,
+                    (t, i) -> histogram.recordSince(System.nanoTime())));
+        }
+        long start = System.nanoTime();
+        int length = registry.scrape().length();
+        System.out.printf("scrape: %,d chars in %.2f ms%n", length, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void report(String name, int threads, Bench.Result result) {
+        System.out.printf("%-24s threads=%-3d %,15.0f ops/s %8.2f ns/op per thread %6.1f B/op%n", name, threads,
+                result.getOpsPerSecond(), threads * 1e9 / result.getOpsPerSecond(), result.getBytesPerOp());
+    }
+
+    // Log-normal samples spanning microseconds to seconds, like real request latencies.
+    private static void checkAccuracy(LatencyHistogram histogram) {
+        long[] samples = new long[SAMPLES];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = (long) Math.exp(random.nextGaussian() * 2 + 13);
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        double worst = 0;
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99}) {
+            long exact = samples[(int) Math.ceil(percentile / 100 * SAMPLES) - 1];
+            long reported = snapshot.getPercentile(percentile);
+            double error = Math.abs(reported - exact) / (double) exact;
+            worst = Math.max(worst, error);
+            System.out.printf("p%-6s exact=%,15d ns reported=%,15d ns error=%.2f%%%n", percentile, exact, reported, error * 100);
+        }
+        System.out.printf("worst percentile error %.2f%%, max exact=%b%n", worst * 100, snapshot.getMax() == samples[SAMPLES - 1]);
+    }
+}
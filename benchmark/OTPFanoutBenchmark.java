@@ -0,0 +1,140 @@
+package benchmark;
+
+import listener.OTPGateway;
+import listener.OTPListener;
+import listener.OTPMessage;
+import metrics.HistogramSnapshot;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import service.OTPDispatcher;
+import util.Clock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// OTP delivery while the mobile gateway hangs. First, codes sent to both channels: one after the other
+// through a listener that calls the gateway directly, against OTPDispatcher's parallel fan-out; the
+// figure is how long the email copy takes to arrive. Then codes for users with both contacts sent to
+// mobile with email as fallback: timeouts, failover and the breaker opening, and routing going back to
+// mobile once it recovers.
+//
+// Usage: OTPFanoutBenchmark [codes per phase]
+public class OTPFanoutBenchmark {
+    private static final long HEALTHY_MILLIS = 5;
+    private static final long HUNG_MILLIS = 1_000;
+    private static final long DEADLINE_MILLIS = 200;
+    private static final int BREAKER_FAILURES = 3;
+    private static final long BREAKER_OPEN_MILLIS = 1_000;
+    private static final long SEND_INTERVAL_MILLIS = 10;
+
+    // Per-channel latency that can be changed while codes are in flight; records when each code first lands.
+    private static final class ScriptedGateway implements OTPGateway {
+        volatile long mobileMillis = HEALTHY_MILLIS;
+        final Map<String, Long> sentAt = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> deliveredBy = new ConcurrentHashMap<>();
+        final LatencyHistogram firstArrival = new MetricsRegistry().histogram("first_arrival_seconds");
+
+        @Override
+        public void deliver(String channel, List<OTPMessage> batch) throws Exception {
+            Thread.sleep(channel.equals("mobile") ? mobileMillis : HEALTHY_MILLIS);
+            long now = System.nanoTime();
+            for (OTPMessage message : batch) {
+                Long sent = sentAt.remove(message.getUserId());
+                if (sent != null) firstArrival.record(now - sent);
+                deliveredBy.computeIfAbsent(channel, k -> new LongAdder()).increment();
+            }
+        }
+
+        void sent(String userId) {
+            sentAt.put(userId, System.nanoTime());
+        }
+
+        long delivered(String channel) {
+            LongAdder count = deliveredBy.get(channel);
+            return count == null ? 0 : count.sum();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int codes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        sequentialFanOut(codes / 4);
+        parallelFanOut(codes);
+        failover(codes);
+    }
+
+    // The old path: each channel's send returns only once its gateway call does.
+    private static void sequentialFanOut(int codes) throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway();
+        gateway.mobileMillis = HUNG_MILLIS;
+        OTPListener direct = (userId, otp, channel) -> {
+            try {
+                gateway.deliver(channel, List.of(new OTPMessage(userId, otp, channel)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        for (int i = 0; i < codes; i++) {
+            gateway.sent("seq" + i);
+            direct.sendOTP("seq" + i, "123456", "mobile");
+            direct.sendOTP("seq" + i, "123456", "email");
+        }
+        print("sequential, mobile hung", gateway.firstArrival.snapshot(), gateway);
+    }
+
+    private static void parallelFanOut(int codes) throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway();
+        gateway.mobileMillis = HUNG_MILLIS;
+        try (OTPDispatcher dispatcher = dispatcher(gateway)) {
+            for (int i = 0; i < codes; i++) {
+                gateway.sent("fan" + i);
+                dispatcher.sendOTPToAll("fan" + i, "123456", List.of("mobile", "email"));
+                Thread.sleep(SEND_INTERVAL_MILLIS);
+            }
+            Thread.sleep(DEADLINE_MILLIS * 2);
+            print("parallel fan-out, mobile hung", gateway.firstArrival.snapshot(), gateway);
+        }
+    }
+
+    private static void failover(int codes) throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway();
+        try (OTPDispatcher dispatcher = dispatcher(gateway)) {
+            gateway.mobileMillis = HUNG_MILLIS;
+            send(dispatcher, gateway, "down", codes);
+            print("mobile hung, email fallback", gateway.firstArrival.snapshot(), gateway);
+            System.out.println("  mobile " + dispatcher.getStats().get("mobile"));
+
+            gateway.mobileMillis = HEALTHY_MILLIS;
+            Thread.sleep(BREAKER_OPEN_MILLIS);
+            long mobileBefore = gateway.delivered("mobile");
+            long emailBefore = gateway.delivered("email");
+            send(dispatcher, gateway, "up", codes);
+            System.out.printf("%-32s on mobile %d, on email %d, circuit %s%n", "mobile recovered",
+                    gateway.delivered("mobile") - mobileBefore, gateway.delivered("email") - emailBefore,
+                    dispatcher.getStats().get("mobile").getCircuit());
+        }
+    }
+
+    private static void send(OTPDispatcher dispatcher, ScriptedGateway gateway, String prefix, int codes)
+            throws InterruptedException {
+        for (int i = 0; i < codes; i++) {
+            gateway.sent(prefix + i);
+            dispatcher.sendOTP(prefix + i, "123456", "mobile", "email");
+            Thread.sleep(SEND_INTERVAL_MILLIS);
+        }
+        Thread.sleep(DEADLINE_MILLIS * 2);
+    }
+
+    private static OTPDispatcher dispatcher(OTPGateway gateway) {
+        return new OTPDispatcher(gateway, 10_000, 100, 1, 2, OTPDispatcher.OverflowPolicy.DROP_OLDEST,
+                DEADLINE_MILLIS, BREAKER_FAILURES, BREAKER_OPEN_MILLIS, Clock.system(), new MetricsRegistry());
+    }
+
+    private static void print(String name, HistogramSnapshot arrival, ScriptedGateway gateway) {
+        System.out.printf("%-32s codes=%d first copy p50=%.1f ms p99=%.1f ms max=%.1f ms, undelivered %d%n", name,
+                arrival.getCount(), arrival.getPercentile(50) / 1e6, arrival.getPercentile(99) / 1e6,
+                arrival.getMax() / 1e6, gateway.sentAt.size());
+    }
+}
@@ -0,0 +1,113 @@
+package benchmark;
+
+import model.User;
+import model.UserStatus;
+import repository.PartitionedUserDatabase;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Throughput of a mixed workload (80% findByUsername, 10% findByNic, 10% addUser) on every core as the
+// number of in-process shards grows, then an online rebalance under concurrent lookups that counts
+// how many users moved and whether any registered user was ever reported missing.
+//
+// Usage: PartitionedUserDatabaseBenchmark [users] [threads]
+public class PartitionedUserDatabaseBenchmark {
+    private static final long DURATION_MILLIS = 2_000;
+    private static final int[] SHARD_COUNTS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String[] usernames = new String[users];
+        String[] nics = new String[users];
+        for (int i = 0; i < users; i++) {
+            usernames[i] = "customer" + i;
+            nics[i] = "nic" + i;
+        }
+
+        double baseline = 0;
+        for (int shards : SHARD_COUNTS) {
+            PartitionedUserDatabase db = preload(shards, users);
+            String prefix = "s" + shards + "_";
+            double opsPerSecond = Bench.opsPerSecond(threads, DURATION_MILLIS, (t, i) -> {
+                int op = (int) (i % 10);
+                int n = (int) ((i * 7919 + t * 104_729L) % users);
+                if (op < 8) db.findByUsername(usernames[n]);
+                else if (op == 8) db.findByNic(nics[n]);
+                else db.addUser(user(prefix + t + "_" + i));
+            });
+            if (baseline == 0) baseline = opsPerSecond;
+            System.out.printf("shards=%-3d threads=%-3d %,15.0f ops/s  %.2fx  sizes=%s%n", shards, threads,
+                    opsPerSecond, opsPerSecond / baseline, spread(db.getShardSizes()));
+        }
+
+        rebalanceUnderLoad(users, usernames, nics, Math.max(1, threads - 1));
+    }
+
+    private static void rebalanceUnderLoad(int users, String[] usernames, String[] nics, int readers)
+            throws InterruptedException {
+        PartitionedUserDatabase db = preload(4, users);
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder lookups = new LongAdder();
+        LongAdder misses = new LongAdder();
+        Thread[] threads = new Thread[readers];
+        for (int t = 0; t < readers; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                long i = seed;
+                while (running.get()) {
+                    int n = (int) (i++ * 7919 % users);
+                    if (db.findByUsername(usernames[n]) == null || db.findByNic(nics[n]) == null) misses.increment();
+                    lookups.add(2);
+                }
+            }, "reader-" + t);
+            threads[t].start();
+        }
+
+        for (int target : new int[]{5, 8, 3}) {
+            int before = db.getShardCount();
+            long start = System.nanoTime();
+            int moved = db.rebalance(target);
+            System.out.printf("rebalance %d -> %d shards: moved %,d of %,d users (%.1f%%, ideal %.1f%%) in %,d ms  sizes=%s%n",
+                    before, target, moved, users, 100.0 * moved / users, 100.0 * idealMoved(before, target),
+                    (System.nanoTime() - start) / 1_000_000, spread(db.getShardSizes()));
+        }
+        running.set(false);
+        for (Thread thread : threads) thread.join();
+        System.out.printf("lookups during rebalancing: %,d, missed: %,d%n", lookups.sum(), misses.sum());
+    }
+
+    // Share of users that must move when only the added or removed shards' ring segments change hands.
+    private static double idealMoved(int from, int to) {
+        return (double) Math.abs(to - from) / Math.max(from, to);
+    }
+
+    private static PartitionedUserDatabase preload(int shards, int users) {
+        PartitionedUserDatabase db = new PartitionedUserDatabase(shards);
+        for (int i = 0; i < users; i++) {
+            User user = user("customer" + i);
+            user.setNic("nic" + i);
+            db.addUser(user);
+        }
+        return db;
+    }
+
+    private static User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setNic(username + "nic");
+        user.setAccountNumber(username + "acc");
+        user.setPassword("password1");
+        user.setDisplayName(username);
+        user.setStatus(UserStatus.INITIATED);
+        return user;
+    }
+
+    private static String spread(int[] sizes) {
+        int min = Arrays.stream(sizes).min().orElse(0);
+        int max = Arrays.stream(sizes).max().orElse(0);
+        return "[" + min + ".." + max + "]";
+    }
+}
@@ -0,0 +1,86 @@
+package benchmark;
+
+import model.LoginAttempt;
+import model.User;
+import model.UserStatus;
+import repository.UserDatabase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Startup (snapshot load + log replay) time against user count. UserDatabase is a per-JVM singleton, so
+// every population and every recovery runs in its own child JVM.
+public class PersistenceBenchmark {
+    private static final int[] USER_COUNTS = {10_000, 100_000, 1_000_000};
+    private static final int UNSNAPSHOTTED_USERS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("populate")) {
+            populate(Path.of(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        if (args.length == 3 && args[0].equals("recover")) {
+            recover(Path.of(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        for (int users : USER_COUNTS) {
+            Path directory = Files.createTempDirectory("user-db-bench");
+            try {
+                run("populate", directory, users);
+                run("recover", directory, users);
+            } finally {
+                deleteRecursively(directory);
+            }
+        }
+    }
+
+    private static void populate(Path directory, int users) throws Exception {
+        UserDatabase db = UserDatabase.open(directory);
+        for (int i = 0; i < users; i++) {
+            db.addUser(user(i));
+            if (i % 10 == 0) db.logLoginAttempt(new LoginAttempt("user" + i, i % 20 == 0));
+            if (i == users - UNSNAPSHOTTED_USERS - 1) db.checkpoint();
+        }
+        // Simulate a crash: the last users exist only in the write-ahead log.
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void recover(Path directory, int users) throws Exception {
+        long start = System.nanoTime();
+        UserDatabase db = UserDatabase.open(directory);
+        long elapsed = System.nanoTime() - start;
+        boolean complete = db.findByUsername("user0") != null && db.findByUsername("user" + (users - 1)) != null;
+        System.out.printf("users=%,-10d startup=%,8.1f ms recovered=%s%n", users, elapsed / 1e6, complete);
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void run(String mode, Path directory, int users) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                PersistenceBenchmark.class.getName(), mode, directory.toString(), String.valueOf(users))
+                .inheritIO().start();
+        if (process.waitFor() != 0) throw new IllegalStateException(mode + " failed for " + users + " users");
+    }
+
+    private static User user(int i) {
+        User user = new User();
+        user.setUsername("user" + i);
+        user.setNic(String.format("%012d", i));
+        user.setAccountNumber("ACC" + i);
+        user.setPassword("password" + i);
+        user.setDisplayName("User " + i);
+        user.setStatus(UserStatus.INITIATED);
+        user.setMobile(String.format("07%08d", i));
+        return user;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import portfolio.PortfolioCache;
+import portfolio.StubCoreBankingSource;
+import util.Clock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dashboard cost per login: the old per-login sample maps and String.format rendering against cached
+// snapshots, how often a login still reaches the core-banking stub, and that the cache stays bounded.
+public class PortfolioBenchmark {
+    private static final long DURATION_MILLIS = 2_000;
+    private static final int USERS = 100_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] usernames = new String[USERS];
+        for (int i = 0; i < USERS; i++) usernames[i] = "user" + i;
+
+        report("legacy maps + format", Bench.measure(1, DURATION_MILLIS, (t, i) -> legacyDashboard()));
+
+        StubCoreBankingSource source = new StubCoreBankingSource(0);
+        // Sized with headroom: each segment holds capacity / 16, and keys never split exactly evenly.
+        PortfolioCache cache = new PortfolioCache(source, USERS * 2, Clock.cached());
+        for (String username : usernames) cache.get(username, "ACC" + username);
+        long callsBefore = source.getCalls();
+        report("cached snapshot", Bench.measure(1, DURATION_MILLIS, (t, i) -> cache.get(usernames[(int) (i % USERS)], null)));
+        System.out.printf("core-banking calls during cached run: %d%n", source.getCalls() - callsBefore);
+
+        PortfolioCache small = new PortfolioCache(source, 1_024, Clock.cached());
+        for (String username : usernames) small.get(username, "ACC" + username);
+        System.out.printf("bounded cache: %,d entries after %,d distinct users (capacity 1,024)%n", small.size(), USERS);
+
+        StubCoreBankingSource slow = new StubCoreBankingSource(20);
+        PortfolioCache slowCache = new PortfolioCache(slow, 1_024, Clock.cached());
+        long start = System.nanoTime();
+        slowCache.get("first", "ACC1");
+        long miss = System.nanoTime() - start;
+        start = System.nanoTime();
+        slowCache.get("first", "ACC1");
+        System.out.printf("first login %.2f ms, repeat login %.4f ms, backend calls %d%n", miss / 1e6,
+                (System.nanoTime() - start) / 1e6, slow.getCalls());
+        slowCache.invalidate("first");
+        slowCache.get("first", "ACC1");
+        System.out.printf("after invalidation: backend calls %d%n", slow.getCalls());
+    }
+
+    private static List<String> legacyDashboard() {
+        Map<String, Double> accounts = new HashMap<>();
+        Map<String, Double> loans = new HashMap<>();
+        Map<String, Double> creditCards = new HashMap<>();
+        accounts.put("Savings", 15000.0);
+        loans.put("Personal Loan", 5000.0);
+        creditCards.put("Visa Platinum", 2500.0);
+        List<String> out = new ArrayList<>();
+        accounts.forEach((name, balance) -> out.add(String.format("- %s: $%.2f", name, balance)));
+        loans.forEach((name, amount) -> out.add(String.format("- %s: $%.2f", name, amount)));
+        creditCards.forEach((name, limit) -> out.add(String.format("- %s: $%.2f available", name, limit)));
+        return out;
+    }
+
+    private static void report(String name, Bench.Result result) {
+        System.out.printf("%-24s %,12.0f dashboards/s %10.1f B/dashboard%n", name, result.getOpsPerSecond(), result.getBytesPerOp());
+    }
+}
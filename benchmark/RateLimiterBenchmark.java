@@ -0,0 +1,55 @@
+package benchmark;
+
+import ratelimit.RateLimitPolicy;
+import ratelimit.SlidingWindowRateLimiter;
+import ratelimit.SlidingWindowRateLimiter.Dimension;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Contended single-key throughput, accuracy of the limit under contention, and heap per tracked key
+// with millions of distinct keys.
+public class RateLimiterBenchmark {
+    private static final int DISTINCT_KEYS = 2_000_000;
+    private static final long DURATION_MILLIS = 2_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        SlidingWindowRateLimiter exact = new SlidingWindowRateLimiter(DISTINCT_KEYS);
+        exact.setPolicy(Dimension.SOURCE, new RateLimitPolicy(1_000, 3_600_000));
+        AtomicLong granted = new AtomicLong();
+        Bench.measure(maxThreads, 500, (t, i) -> {
+            if (exact.tryAcquire(Dimension.SOURCE, "10.0.0.1")) granted.incrementAndGet();
+        });
+        System.out.printf("contended key: %d granted for a limit of 1000 across %d threads%n", granted.get(), maxThreads);
+
+        exact.setPolicy(Dimension.USERNAME, new RateLimitPolicy(10, 60_000));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Bench.report("tryAcquire hot key", threads, Bench.opsPerSecond(threads, DURATION_MILLIS, (t, i) ->
+                    exact.tryAcquire(Dimension.USERNAME, "hot-user")));
+            Bench.report("tryAcquire distinct keys", threads, Bench.opsPerSecond(threads, DURATION_MILLIS, (t, i) ->
+                    exact.tryAcquire(Dimension.USERNAME, "user" + (i * 31 + t) % DISTINCT_KEYS)));
+        }
+
+        String[] keys = new String[DISTINCT_KEYS];
+        for (int i = 0; i < DISTINCT_KEYS; i++) keys[i] = "user" + i;
+        long before = usedHeap();
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(DISTINCT_KEYS);
+        limiter.setPolicy(Dimension.USERNAME, new RateLimitPolicy(10, 60_000));
+        for (String key : keys) limiter.tryAcquire(Dimension.USERNAME, key);
+        System.out.printf("heap per tracked key: %d bytes (%,d keys, key strings excluded)%n",
+                (usedHeap() - before) / DISTINCT_KEYS, limiter.trackedKeys(Dimension.USERNAME));
+
+        SlidingWindowRateLimiter bounded = new SlidingWindowRateLimiter(100_000);
+        bounded.setPolicy(Dimension.USERNAME, new RateLimitPolicy(10, 60_000));
+        for (String key : keys) bounded.tryAcquire(Dimension.USERNAME, key);
+        System.out.printf("with a 100,000 key budget: %,d keys tracked exactly, the rest in the hashed overflow table%n",
+                bounded.trackedKeys(Dimension.USERNAME));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
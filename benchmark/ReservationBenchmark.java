@@ -0,0 +1,158 @@
+package benchmark;
+
+import model.User;
+import model.UserStatus;
+import repository.PartitionedUserDatabase;
+import repository.UserRepository;
+import reservation.Reservation;
+import reservation.ReservationService;
+import util.Clock;
+import util.ManualClock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Concurrent onboardings drawing usernames, NICs and account numbers from small pools, so many of them
+// want the same keys at once. Each one checks its keys, "thinks" for a moment (the password and display
+// name prompts) and then registers. Checking the repository directly lets two of them pass the check and
+// collide at the insert; holding the keys in ReservationService turns every conflict into an early "taken".
+// Also reports claim throughput, heap per reservation and the cost of expiring holds in bulk.
+//
+// Usage: ReservationBenchmark [threads] [onboardings per thread]
+public class ReservationBenchmark {
+    private static final int USERNAMES = 2_000;
+    private static final int NICS = 5_000;
+    private static final int ACCOUNTS = 5_000;
+    private static final long THINK_NANOS = 200_000;
+    private static final int HELD_RESERVATIONS = 200_000;
+    private static final long HOLD_MILLIS = 60_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        contention("check then insert", threads, perThread, false);
+        contention("reserve then commit", threads, perThread, true);
+        claimThroughput();
+        heapAndBulkExpiry();
+    }
+
+    private static void contention(String name, int threads, int perThread, boolean reserve) throws InterruptedException {
+        UserRepository db = new PartitionedUserDatabase(4);
+        ReservationService reservations = new ReservationService(db, Clock.system(), HOLD_MILLIS);
+        LongAdder registered = new LongAdder();
+        LongAdder rejectedEarly = new LongAdder();
+        LongAdder lateCollisions = new LongAdder();
+
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    User user = user("user" + random.nextInt(USERNAMES), "nic" + random.nextInt(NICS),
+                            "ACC" + random.nextInt(ACCOUNTS));
+                    if (reserve) {
+                        Reservation reservation = reservations.open();
+                        if (!reservations.hold(reservation, ReservationService.Kind.NIC, user.getNic())
+                                || !reservations.hold(reservation, ReservationService.Kind.ACCOUNT, user.getAccountNumber())
+                                || !reservations.hold(reservation, ReservationService.Kind.USERNAME, user.getUsername())) {
+                            reservations.release(reservation);
+                            rejectedEarly.increment();
+                            continue;
+                        }
+                        LockSupport.parkNanos(THINK_NANOS);
+                        try {
+                            reservations.commit(reservation, user);
+                            registered.increment();
+                        } catch (IllegalArgumentException e) {
+                            lateCollisions.increment();
+                        }
+                    } else {
+                        if (db.findByNic(user.getNic()) != null || db.findByAccount(user.getAccountNumber()) != null
+                                || db.isUsernameTaken(user.getUsername())) {
+                            rejectedEarly.increment();
+                            continue;
+                        }
+                        LockSupport.parkNanos(THINK_NANOS);
+                        try {
+                            db.addUser(user);
+                            registered.increment();
+                        } catch (IllegalArgumentException e) {
+                            lateCollisions.increment();
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-20s threads=%-4d registered=%,7d rejected early=%,7d late collisions=%,5d (%,d ms)%n",
+                name, threads, registered.sum(), rejectedEarly.sum(), lateCollisions.sum(), elapsed / 1_000_000);
+    }
+
+    // open + three holds + release against an empty repository.
+    private static void claimThroughput() throws InterruptedException {
+        UserRepository db = new PartitionedUserDatabase(1);
+        ReservationService reservations = new ReservationService(db, Clock.cached(), HOLD_MILLIS);
+        String[] keys = new String[1 << 16];
+        for (int i = 0; i < keys.length; i++) keys[i] = "key" + i;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Bench.Op op = (t, i) -> {
+            String key = keys[(int) ((i * threads + t) & (keys.length - 1))];
+            Reservation reservation = reservations.open();
+            reservations.hold(reservation, ReservationService.Kind.USERNAME, key);
+            reservations.hold(reservation, ReservationService.Kind.NIC, key);
+            reservations.hold(reservation, ReservationService.Kind.ACCOUNT, key);
+            reservations.release(reservation);
+        };
+        Bench.measure(threads, 500, op);
+        Bench.Result result = Bench.measure(threads, 2_000, op);
+        System.out.printf("open + 3 holds + release: threads=%d %,.0f ops/s %.1f B/op%n", threads,
+                result.getOpsPerSecond(), result.getBytesPerOp());
+    }
+
+    private static void heapAndBulkExpiry() {
+        ManualClock clock = new ManualClock(1_700_000_000_000L);
+        ReservationService reservations = new ReservationService(new PartitionedUserDatabase(1), clock, HOLD_MILLIS);
+        String[] keys = new String[HELD_RESERVATIONS];
+        for (int i = 0; i < keys.length; i++) keys[i] = "held" + i;
+
+        long before = usedHeap();
+        for (int i = 0; i < HELD_RESERVATIONS; i++) {
+            Reservation reservation = reservations.open();
+            reservations.hold(reservation, ReservationService.Kind.USERNAME, keys[i]);
+            reservations.hold(reservation, ReservationService.Kind.NIC, keys[i]);
+            reservations.hold(reservation, ReservationService.Kind.ACCOUNT, keys[i]);
+            if (i % 1_000 == 999) clock.advance(10);
+        }
+        long used = usedHeap() - before;
+        System.out.printf("heap per reservation with 3 holds: %,d bytes (%,d holds)%n", used / HELD_RESERVATIONS,
+                reservations.getHoldCount());
+
+        clock.advance(HOLD_MILLIS * 2);
+        long start = System.nanoTime();
+        reservations.expire();
+        System.out.printf("expired %,d reservations in %.1f ms, %d holds left%n", HELD_RESERVATIONS,
+                (System.nanoTime() - start) / 1e6, reservations.getHoldCount());
+    }
+
+    private static User user(String username, String nic, String account) {
+        User user = new User();
+        user.setUsername(username);
+        user.setNic(nic);
+        user.setAccountNumber(account);
+        user.setPassword("hash");
+        user.setDisplayName(username);
+        user.setStatus(UserStatus.INITIATED);
+        return user;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
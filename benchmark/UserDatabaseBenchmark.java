@@ -0,0 +1,43 @@
+package benchmark;
+
+import model.User;
+import model.UserStatus;
+import repository.UserDatabase;
+
+public class UserDatabaseBenchmark {
+    private static final int PRELOADED_USERS = 100_000;
+    private static final long DURATION_MILLIS = 2_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        UserDatabase db = UserDatabase.getInstance();
+        for (int i = 0; i < PRELOADED_USERS; i++) db.addUser(user("pre", 0, i));
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double reads = Bench.opsPerSecond(threads, DURATION_MILLIS, (t, i) ->
+                    db.findByUsername("preuser" + (i % PRELOADED_USERS)));
+            Bench.report("findByUsername", threads, reads);
+
+            double nicReads = Bench.opsPerSecond(threads, DURATION_MILLIS, (t, i) ->
+                    db.findByNic("prenic" + (i % PRELOADED_USERS)));
+            Bench.report("findByNic", threads, nicReads);
+
+            String prefix = "w" + threads + "x";
+            double writes = Bench.opsPerSecond(threads, DURATION_MILLIS, (t, i) ->
+                    db.addUser(user(prefix, t, i)));
+            Bench.report("addUser", threads, writes);
+        }
+    }
+
+    private static User user(String prefix, int thread, long i) {
+        String id = prefix + thread + "_" + i;
+        User user = new User();
+        user.setUsername(prefix.equals("pre") ? "preuser" + i : id + "user");
+        user.setNic(prefix.equals("pre") ? "prenic" + i : id + "nic");
+        user.setAccountNumber(id + "acc");
+        user.setPassword("password1");
+        user.setDisplayName(id);
+        user.setStatus(UserStatus.INITIATED);
+        return user;
+    }
+}
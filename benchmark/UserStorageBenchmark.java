@@ -0,0 +1,115 @@
+package benchmark;
+
+import model.User;
+import model.UserStatus;
+import repository.UserDatabase;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Heap per registered user for the previous object graph (a User with String fields, LocalDateTime locks
+// and three eager HashMaps, held in three ConcurrentHashMap indexes) against the packed column store,
+// plus lookup throughput and allocation on the new store.
+//
+// Usage: UserStorageBenchmark [users]; run with a heap large enough for both, e.g. -Xmx3g.
+public class UserStorageBenchmark {
+    private static final long DURATION_MILLIS = 2_000;
+
+    // The shape of model.User and its indexes before the column store.
+    private static final class LegacyUser {
+        String username, password, displayName, accountNumber, nic, status, mobile = "", email = "";
+        LocalDateTime lockExpiry, lockedUntil;
+        String preferredOTPChannel = "Mobile";
+        volatile int loginAttempts;
+        Map<String, Double> accounts = new HashMap<>();
+        Map<String, Double> loans = new HashMap<>();
+        Map<String, Double> creditCards = new HashMap<>();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long before = usedHeap();
+        Map<String, LegacyUser> byUsername = new ConcurrentHashMap<>();
+        Map<String, LegacyUser> byNic = new ConcurrentHashMap<>();
+        Map<String, LegacyUser> byAccount = new ConcurrentHashMap<>();
+        for (int i = 0; i < users; i++) {
+            LegacyUser user = new LegacyUser();
+            user.username = "customer" + i;
+            user.password = passwordHash(i);
+            user.displayName = "Customer " + i;
+            user.accountNumber = account(i);
+            user.nic = nic(i);
+            user.status = "INITIATED";
+            user.mobile = mobile(i);
+            user.preferredOTPChannel = user.mobile;
+            byNic.put(user.nic, user);
+            byAccount.put(user.accountNumber, user);
+            byUsername.put(user.username.toLowerCase(), user);
+        }
+        long legacyBytes = (usedHeap() - before) / users;
+        System.out.printf("legacy object graph: %,d bytes/user%n", legacyBytes);
+        byUsername.clear();
+        byNic.clear();
+        byAccount.clear();
+
+        before = usedHeap();
+        UserDatabase db = UserDatabase.getInstance();
+        for (int i = 0; i < users; i++) db.addUser(user(i));
+        long columnBytes = (usedHeap() - before) / users;
+        System.out.printf("column store:        %,d bytes/user (%.1fx smaller)%n", columnBytes, (double) legacyBytes / columnBytes);
+
+        String[] usernames = new String[Math.min(users, 1_000_000)];
+        String[] nics = new String[usernames.length];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = "Customer" + i;
+            nics[i] = nic(i);
+        }
+        report("findByUsername (mixed case)", Bench.measure(1, DURATION_MILLIS, (t, i) -> db.findByUsername(usernames[(int) (i % usernames.length)])));
+        report("findByNic", Bench.measure(1, DURATION_MILLIS, (t, i) -> db.findByNic(nics[(int) (i % nics.length)])));
+        report("findByUsername + getPassword", Bench.measure(1, DURATION_MILLIS, (t, i) -> db.findByUsername(usernames[(int) (i % usernames.length)]).getPassword()));
+    }
+
+    private static User user(int i) {
+        User user = new User();
+        user.setUsername("customer" + i);
+        user.setPassword(passwordHash(i));
+        user.setDisplayName("Customer " + i);
+        user.setAccountNumber(account(i));
+        user.setNic(nic(i));
+        user.setStatus(UserStatus.INITIATED);
+        user.setMobile(mobile(i));
+        user.setPreferredOTPChannel(user.getMobile());
+        return user;
+    }
+
+    // Same length and alphabet as a PasswordHasher record.
+    private static String passwordHash(int i) {
+        String salt = String.format("%022d", i);
+        return "pbkdf2-sha256$210000$" + salt + "$" + salt + salt.substring(0, 21);
+    }
+
+    private static String account(int i) {
+        return "ACC" + (100_000_000 + i);
+    }
+
+    private static String nic(int i) {
+        return String.valueOf(200_000_000_000L + i);
+    }
+
+    private static String mobile(int i) {
+        return "07" + (10_000_000 + i % 90_000_000);
+    }
+
+    private static void report(String name, Bench.Result result) {
+        System.out.printf("%-32s %,12.0f ops/s %8.1f B/op%n", name, result.getOpsPerSecond(), result.getBytesPerOp());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
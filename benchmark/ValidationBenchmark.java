@@ -0,0 +1,30 @@
+package benchmark;
+
+import check.ValidatorEquivalenceCheck;
+import validation.InputValidators;
+
+import java.util.Random;
+import java.util.function.Predicate;
+
+// Throughput of every hand-written validator against String.matches on the regex it replaced. That
+// they accept exactly the same inputs is check.ValidatorEquivalenceCheck's job.
+public class ValidationBenchmark {
+    private static final long DURATION_MILLIS = 2_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] inputs = ValidatorEquivalenceCheck.inputs(new Random(7), 4_096);
+        compare("nic", ValidatorEquivalenceCheck.NIC, InputValidators::isValidNic, inputs);
+        compare("email", ValidatorEquivalenceCheck.EMAIL, InputValidators::isValidEmail, inputs);
+        compare("password", ValidatorEquivalenceCheck.PASSWORD, InputValidators::isValidPassword, inputs);
+        compare("otp", ValidatorEquivalenceCheck.OTP, InputValidators::isValidOtp, inputs);
+    }
+
+    private static void compare(String name, String regex, Predicate<String> validator, String[] inputs) throws InterruptedException {
+        int mask = inputs.length - 1;
+        Bench.Result matches = Bench.measure(1, DURATION_MILLIS, (t, i) -> inputs[(int) i & mask].matches(regex));
+        Bench.Result handWritten = Bench.measure(1, DURATION_MILLIS, (t, i) -> validator.test(inputs[(int) i & mask]));
+        System.out.printf("%-10s String.matches %,13.0f ops/s %7.1f B/op | validator %,13.0f ops/s %5.1f B/op | %.1fx%n",
+                name, matches.getOpsPerSecond(), matches.getBytesPerOp(), handWritten.getOpsPerSecond(),
+                handWritten.getBytesPerOp(), handWritten.getOpsPerSecond() / matches.getOpsPerSecond());
+    }
+}
@@ -0,0 +1,17 @@
+package check;
+
+// Assertions for the standalone checks. They throw AssertionError whether or not the JVM runs with -ea,
+// so a failing check always ends its process with a non-zero exit status.
+public final class Check {
+    private Check() {}
+
+    public static void that(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+
+    public static void equal(Object expected, Object actual, String what) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package check;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Runs every standalone check and exits with a non-zero status if any of them fails, so a build step
+// can gate on it. Each check can also be run on its own through its main method.
+//
+// Usage: CheckSuite
+public class CheckSuite {
+    private interface CheckMain {
+        void run(String[] args) throws Exception;
+    }
+
+    public static void main(String[] args) {
+        Map<String, CheckMain> checks = new LinkedHashMap<>();
+        checks.put("recovery", RecoveryCheck::main);
+        checks.put("validator equivalence", ValidatorEquivalenceCheck::main);
+        checks.put("rebalancing", RebalanceCheck::main);
+        checks.put("reservation races", ReservationRaceCheck::main);
+        checks.put("mapped OTP store crash", MappedOTPStoreCrashCheck::main);
+
+        int failed = 0;
+        for (Map.Entry<String, CheckMain> check : checks.entrySet()) {
+            try {
+                check.getValue().run(new String[0]);
+                System.out.println("PASS " + check.getKey());
+            } catch (Throwable e) {
+                failed++;
+                System.out.println("FAIL " + check.getKey() + ": " + e);
+                e.printStackTrace();
+            }
+        }
+        System.out.println((checks.size() - failed) + "/" + checks.size() + " checks passed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,117 @@
+package check;
+
+import repository.MappedOTPStore;
+import util.Clock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// A JVM killed while it holds a bucket of a MappedOTPStore must not wedge it for the others: reads of
+// that bucket come back within the stale-lock timeout, and writes go through after them. A child JVM
+// rewrites codes in a one-bucket store until it is killed; kills that land while it holds the bucket
+// are what the check is after, and it fails if none of its attempts catches one.
+public class MappedOTPStoreCrashCheck {
+    private static final int KEYS = 8;
+    private static final int ATTEMPTS = 40;
+    private static final int CAUGHT_ENOUGH = 3;
+    private static final long READ_DEADLINE_MILLIS = 10_000;
+    // The lock word of the only bucket comes right after the 64-byte file header.
+    private static final int LOCK_WORD = 64;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            write(Path.of(args[0]));
+            return;
+        }
+
+        Random random = new Random(19);
+        int caught = 0;
+        for (int attempt = 0; attempt < ATTEMPTS && caught < CAUGHT_ENOUGH; attempt++) {
+            Path file = Files.createTempFile("otp-crash-check", ".bin");
+            Files.delete(file);
+            try {
+                killWriter(file, random.nextInt(50));
+                if (!heldByDeadWriter(file)) continue;
+                caught++;
+                readAndWrite(file);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        Check.that(caught > 0, "no kill out of " + ATTEMPTS + " landed while the writer held the bucket");
+        System.out.println("reads after " + caught + " writers killed mid-write: ok");
+    }
+
+    // Child: rewrites codes until killed.
+    private static void write(Path file) throws IOException {
+        try (MappedOTPStore store = new MappedOTPStore(file, 1, 3, Clock.system())) {
+            System.out.println("ready");
+            System.out.flush();
+            for (long i = 0; ; i++) store.put("user" + i % KEYS, String.format("%06d", i % 1_000_000), 60_000);
+        }
+    }
+
+    private static void killWriter(Path file, long afterMillis) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                MappedOTPStoreCrashCheck.class.getName(), file.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        Check.equal("ready", output.readLine(), "writer start-up");
+        Thread.sleep(afterMillis);
+        process.destroyForcibly();
+        process.waitFor();
+    }
+
+    private static boolean heldByDeadWriter(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, LOCK_WORD + 8);
+            return (buffer.order(ByteOrder.nativeOrder()).getLong(LOCK_WORD) & 1) != 0;
+        }
+    }
+
+    // Every read of the wedged bucket, then a write and a read of it back, within the deadline.
+    private static void readAndWrite(Path file) throws Exception {
+        try (MappedOTPStore store = new MappedOTPStore(file, 1, 3, Clock.system())) {
+            CompletableFuture<Void> reads = new CompletableFuture<>();
+            // A daemon, so a reader that never stops spinning does not keep this JVM alive.
+            Thread reader = new Thread(() -> {
+                try {
+                    for (int key = 0; key < KEYS; key++) {
+                        store.matches("user" + key, "000000");
+                        store.isExpired("user" + key);
+                        store.getFailedAttempts("user" + key);
+                    }
+                    reads.complete(null);
+                } catch (RuntimeException e) {
+                    reads.completeExceptionally(e);
+                }
+            });
+            reader.setDaemon(true);
+            reader.start();
+            try {
+                reads.get(READ_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new AssertionError("reads of a bucket held by a dead writer still spinning after "
+                        + READ_DEADLINE_MILLIS + " ms");
+            } catch (ExecutionException e) {
+                throw new AssertionError("read failed", e.getCause());
+            }
+            store.put("user0", "123456", 60_000);
+            Check.that(store.matches("user0", "123456"), "code written after the takeover not read back");
+            Check.that(!heldByDeadWriter(file), "bucket still locked after the takeover");
+        }
+    }
+}
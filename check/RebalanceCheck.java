@@ -0,0 +1,138 @@
+package check;
+
+import metrics.MetricsRegistry;
+import model.LoginAttempt;
+import model.User;
+import model.UserStatus;
+import repository.PartitionedUserDatabase;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Online rebalancing must not lose, duplicate or roll back anything. Through a series of shard count
+// changes, readers look up preloaded users by every key and must never miss one, while writers register
+// new users and change contacts. After each change every user is found with its latest contacts and its
+// login history, and the shards together hold each user exactly once.
+//
+// Usage: RebalanceCheck [users]
+public class RebalanceCheck {
+    private static final int[] SHARD_COUNTS = {5, 8, 3, 1, 4};
+    private static final int UPDATERS = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        PartitionedUserDatabase db = new PartitionedUserDatabase(4, new MetricsRegistry());
+        for (int i = 0; i < users; i++) {
+            db.addUser(user("preloaded", i, mobile(i)));
+            if (i % 10 == 0) db.logLoginAttempt(new LoginAttempt("preloaded" + i, i % 20 == 0));
+        }
+
+        // Each updater owns the preloaded users with index % UPDATERS == its number, so it alone knows
+        // their latest mobile.
+        String[] latestMobile = new String[users];
+        for (int i = 0; i < users; i++) latestMobile[i] = mobile(i);
+        ConcurrentLinkedQueue<String> added = new ConcurrentLinkedQueue<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[UPDATERS + 2];
+        workers[0] = worker("reader", failure, () -> {
+            for (long n = 0; running.get(); n++) {
+                int i = (int) (n * 7919 % users);
+                String username = "preloaded" + i;
+                Check.that(db.findByUsername(username) != null, username + " missed by username");
+                Check.that(db.findByNic(nic("preloaded", i)) != null, username + " missed by NIC");
+                Check.that(db.findByAccount(account("preloaded", i)) != null, username + " missed by account");
+            }
+        });
+        workers[1] = worker("adder", failure, () -> {
+            for (int n = 0; running.get(); n++) {
+                db.addUser(user("added", n, "09" + String.format("%08d", n)));
+                added.add("added" + n);
+            }
+        });
+        for (int u = 0; u < UPDATERS; u++) {
+            int updater = u;
+            workers[2 + u] = worker("updater-" + u, failure, () -> {
+                for (long n = 0; running.get(); n++) {
+                    int i = (int) ((n * 104_729 % (users / UPDATERS)) * UPDATERS + updater);
+                    String mobile = "08" + String.format("%08d", n % 100_000_000);
+                    db.updateContacts(db.findByUsername("preloaded" + i), mobile, "preloaded" + i + "@example.org");
+                    latestMobile[i] = mobile;
+                }
+            });
+        }
+        for (Thread worker : workers) worker.start();
+
+        try {
+            for (int shards : SHARD_COUNTS) {
+                int before = db.getShardCount();
+                db.rebalance(shards);
+                Check.equal(shards, db.getShardCount(), "shard count");
+                Check.that(failure.get() == null, "worker failed during rebalance " + before + " -> " + shards);
+                System.out.printf("rebalance %d -> %d shards: ok, sizes=%s%n", before, shards,
+                        Arrays.toString(db.getShardSizes()));
+            }
+        } finally {
+            running.set(false);
+            for (Thread worker : workers) worker.join();
+        }
+        if (failure.get() != null) throw new AssertionError("Worker failed", failure.get());
+
+        Check.equal(users + added.size(), db.getUserCount(), "registered users");
+        Check.equal(db.getUserCount(), Arrays.stream(db.getShardSizes()).sum(), "users held by the shards");
+        for (int i = 0; i < users; i++) {
+            String username = "preloaded" + i;
+            User user = db.findByUsername(username);
+            Check.that(user != null, username + " lost");
+            Check.equal(latestMobile[i], user.getMobile(), "mobile of " + username);
+            User byMobile = db.findByMobile(latestMobile[i]);
+            Check.that(byMobile != null, username + " not found by its latest mobile");
+            if (!latestMobile[i].equals(mobile(i))) Check.that(db.findByMobile(mobile(i)) == null, username + " still found by its old mobile");
+            Check.equal(i % 10 == 0 ? 1 : 0, db.getRecentLoginAttempts(username, 5).size(), "login attempts of " + username);
+        }
+        Check.equal((users + 9) / 10, db.getLoginHistory().size(), "login attempts across shards");
+        for (String username : added) Check.that(db.findByUsername(username) != null, username + " lost");
+        System.out.printf("%,d preloaded and %,d added users intact%n", users, added.size());
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static Thread worker(String name, AtomicReference<Throwable> failure, Body body) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, name);
+    }
+
+    private static User user(String prefix, int i, String mobile) {
+        User user = new User();
+        user.setUsername(prefix + i);
+        user.setNic(nic(prefix, i));
+        user.setAccountNumber(account(prefix, i));
+        user.setPassword("password" + i);
+        user.setDisplayName("User " + i);
+        user.setStatus(UserStatus.ACTIVE);
+        user.setMobile(mobile);
+        user.setEmail(prefix + i + "@example.com");
+        return user;
+    }
+
+    private static String nic(String prefix, int i) {
+        return prefix + "-nic-" + i;
+    }
+
+    private static String account(String prefix, int i) {
+        return prefix + "-acc-" + i;
+    }
+
+    private static String mobile(int i) {
+        return String.format("07%08d", i);
+    }
+}
@@ -0,0 +1,132 @@
+package check;
+
+import model.LoginAttempt;
+import model.User;
+import model.UserStatus;
+import repository.UserDatabase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+// Every acknowledged write must come back after a restart: users added and contacts changed while
+// checkpoints run back to back, recovered from snapshot plus log replay after a crash and after a clean
+// close. UserDatabase is a per-JVM singleton, so each population and each recovery runs in a child JVM.
+public class RecoveryCheck {
+    private static final int USERS = 20_000;
+    // Every this many users has its contacts changed after it was added.
+    private static final int UPDATE_EVERY = 7;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2) {
+            int status = 0;
+            try {
+                if (args[0].equals("verify")) verify(Path.of(args[1]));
+                else populate(Path.of(args[1]), args[0].equals("close"));
+            } catch (Throwable e) {
+                e.printStackTrace();
+                status = 1;
+            }
+            // The checkpoint thread and the log writer would otherwise keep a crashed child alive.
+            Runtime.getRuntime().halt(status);
+        }
+
+        for (String ending : new String[]{"crash", "close"}) {
+            Path directory = Files.createTempDirectory("recovery-check");
+            try {
+                run(ending, directory);
+                run("verify", directory);
+                System.out.println("recovery after " + ending + ": ok");
+            } finally {
+                deleteRecursively(directory);
+            }
+        }
+    }
+
+    private static void populate(Path directory, boolean close) throws Exception {
+        UserDatabase db = UserDatabase.open(directory);
+        AtomicBoolean populating = new AtomicBoolean(true);
+        AtomicReference<Exception> checkpointFailure = new AtomicReference<>();
+        Thread checkpoints = new Thread(() -> {
+            try {
+                while (populating.get()) db.checkpoint();
+            } catch (IOException | RuntimeException e) {
+                checkpointFailure.set(e);
+            }
+        });
+        checkpoints.start();
+        for (int i = 0; i < USERS; i++) {
+            db.addUser(user(i));
+            if (i % 10 == 0) db.logLoginAttempt(new LoginAttempt("user" + i, i % 20 == 0));
+            if (i >= UPDATE_EVERY && i % UPDATE_EVERY == 0) {
+                int earlier = i - UPDATE_EVERY;
+                db.updateContacts(db.findByUsername("user" + earlier), updatedMobile(earlier), "user" + earlier + "@example.org");
+            }
+        }
+        if (close) {
+            // Races the close against a checkpoint that may already be running.
+            db.close();
+        }
+        // Not interrupted: that would close the snapshot file under a running checkpoint.
+        populating.set(false);
+        checkpoints.join();
+        if (checkpointFailure.get() != null) throw new AssertionError("Checkpoint failed", checkpointFailure.get());
+    }
+
+    private static void verify(Path directory) throws IOException {
+        UserDatabase db = UserDatabase.open(directory);
+        Check.equal(USERS, db.getUserCount(), "recovered users");
+        for (int i = 0; i < USERS; i++) {
+            User user = db.findByUsername("user" + i);
+            Check.that(user != null, "user" + i + " lost");
+            Check.equal(String.format("%012d", i), user.getNic(), "NIC of user" + i);
+            boolean updated = i % UPDATE_EVERY == 0 && i + UPDATE_EVERY < USERS;
+            Check.equal(updated ? updatedMobile(i) : mobile(i), user.getMobile(), "mobile of user" + i);
+            Check.equal(user.getUsername(), db.findByMobile(user.getMobile()) == null ? null
+                    : db.findByMobile(user.getMobile()).getUsername(), "owner of mobile " + user.getMobile());
+            if (i % 10 == 0) {
+                Check.equal(1, db.getRecentLoginAttempts("user" + i, 5).size(), "login attempts of user" + i);
+            }
+        }
+    }
+
+    private static void run(String mode, Path directory) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RecoveryCheck.class.getName(), mode, directory.toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        if (process.waitFor() != 0) throw new AssertionError(mode + " failed");
+    }
+
+    private static User user(int i) {
+        User user = new User();
+        user.setUsername("user" + i);
+        user.setNic(String.format("%012d", i));
+        user.setAccountNumber("ACC" + i);
+        user.setPassword("password" + i);
+        user.setDisplayName("User " + i);
+        user.setStatus(UserStatus.INITIATED);
+        user.setMobile(mobile(i));
+        user.setEmail("user" + i + "@example.com");
+        return user;
+    }
+
+    private static String mobile(int i) {
+        return String.format("07%08d", i);
+    }
+
+    private static String updatedMobile(int i) {
+        return String.format("07%08d", 50_000_000 + i);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
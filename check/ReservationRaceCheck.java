@@ -0,0 +1,153 @@
+package check;
+
+import metrics.MetricsRegistry;
+import model.User;
+import model.UserStatus;
+import repository.PartitionedUserDatabase;
+import repository.UserRepository;
+import reservation.Reservation;
+import reservation.ReservationService;
+import util.Clock;
+import util.ManualClock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Reservations under contention: of many onboardings racing for one key exactly one gets it; onboardings
+// that reserve before they register never collide at the insert, however small the key pools; and a hold
+// lasts exactly as long as it is renewed, through sweeps, after which another reservation may take it.
+//
+// Usage: ReservationRaceCheck [threads]
+public class ReservationRaceCheck {
+    private static final long HOLD_MILLIS = 60_000;
+    private static final int ROUNDS = 500;
+    private static final int ONBOARDINGS_PER_THREAD = 300;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        oneHolderPerKey(threads);
+        noCollisionsAtCommit(threads);
+        holdsFollowRenewals();
+    }
+
+    private static void oneHolderPerKey(int threads) throws InterruptedException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        ReservationService reservations =
+                new ReservationService(new PartitionedUserDatabase(1, metrics), Clock.system(), HOLD_MILLIS, metrics);
+        for (int round = 0; round < ROUNDS; round++) {
+            String key = "contested" + round;
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger winners = new AtomicInteger();
+            Thread[] racers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                racers[t] = new Thread(() -> {
+                    Reservation reservation = reservations.open();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // Mixed case: usernames are held case-insensitively.
+                    String spelling = ThreadLocalRandom.current().nextBoolean() ? key : key.toUpperCase();
+                    if (reservations.hold(reservation, ReservationService.Kind.USERNAME, spelling)) winners.incrementAndGet();
+                });
+                racers[t].start();
+            }
+            start.countDown();
+            for (Thread racer : racers) racer.join();
+            Check.equal(1, winners.get(), "reservations holding " + key);
+        }
+        System.out.printf("one holder per key: ok (%d rounds of %d threads)%n", ROUNDS, threads);
+    }
+
+    private static void noCollisionsAtCommit(int threads) throws InterruptedException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        UserRepository db = new PartitionedUserDatabase(4, metrics);
+        ReservationService reservations = new ReservationService(db, Clock.system(), HOLD_MILLIS, metrics);
+        AtomicInteger registered = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < ONBOARDINGS_PER_THREAD && failure.get() == null; i++) {
+                    User user = user("user" + random.nextInt(500), "nic" + random.nextInt(1_000), "ACC" + random.nextInt(1_000));
+                    Reservation reservation = reservations.open();
+                    if (!reservations.hold(reservation, ReservationService.Kind.NIC, user.getNic())
+                            || !reservations.hold(reservation, ReservationService.Kind.ACCOUNT, user.getAccountNumber())
+                            || !reservations.hold(reservation, ReservationService.Kind.USERNAME, user.getUsername())) {
+                        reservations.release(reservation);
+                        continue;
+                    }
+                    // The rest of the onboarding, during which others try for the same keys.
+                    LockSupport.parkNanos(50_000);
+                    try {
+                        reservations.commit(reservation, user);
+                        registered.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        if (failure.get() != null) throw new AssertionError("Reserved onboarding collided at commit", failure.get());
+        Check.equal(registered.get(), db.getUserCount(), "registered users");
+        Check.equal((long) registered.get(), metrics.snapshot().getCounter("reservation_commits_total"), "commits counted");
+        Check.equal(0, reservations.getHoldCount(), "holds left after every reservation ended");
+        System.out.printf("no collisions at commit: ok (%d registered)%n", registered.get());
+    }
+
+    private static void holdsFollowRenewals() {
+        ManualClock clock = new ManualClock(1_700_000_000_000L);
+        MetricsRegistry metrics = new MetricsRegistry();
+        UserRepository db = new PartitionedUserDatabase(1, metrics);
+        ReservationService reservations = new ReservationService(db, clock, HOLD_MILLIS, metrics);
+        Reservation first = reservations.open();
+        Check.that(reservations.hold(first, ReservationService.Kind.USERNAME, "alice"), "alice not held");
+
+        // Renewed every half hold across many sweeps, so it must never lapse.
+        for (int step = 0; step < 100; step++) {
+            clock.advance(HOLD_MILLIS / 2);
+            reservations.expire();
+            Check.that(reservations.renew(first), "renewed reservation expired at step " + step);
+            Check.that(reservations.isHeld(ReservationService.Kind.USERNAME, "alice"), "alice released at step " + step);
+            Reservation rival = reservations.open();
+            Check.that(!reservations.hold(rival, ReservationService.Kind.USERNAME, "ALICE"), "alice taken over at step " + step);
+            reservations.release(rival);
+        }
+
+        clock.advance(HOLD_MILLIS + 1);
+        Check.that(!reservations.renew(first), "lapsed reservation renewed");
+        Reservation second = reservations.open();
+        Check.that(reservations.hold(second, ReservationService.Kind.USERNAME, "alice"), "lapsed hold not taken over");
+        try {
+            reservations.commit(first, user("alice", "nic-alice", "ACC000001"));
+            throw new AssertionError("Lapsed reservation committed");
+        } catch (IllegalArgumentException expected) {
+            // Its holds belong to someone else now.
+        }
+        Check.that(!db.isUsernameTaken("alice"), "alice registered through a lapsed reservation");
+        reservations.release(second);
+        reservations.expire();
+        Check.equal(0, reservations.getHoldCount(), "holds left after expiry");
+        System.out.println("holds follow renewals: ok");
+    }
+
+    private static User user(String username, String nic, String account) {
+        User user = new User();
+        user.setUsername(username);
+        user.setNic(nic);
+        user.setAccountNumber(account);
+        user.setPassword("password");
+        user.setDisplayName(username);
+        user.setStatus(UserStatus.ACTIVE);
+        user.setMobile("");
+        user.setEmail("");
+        return user;
+    }
+}
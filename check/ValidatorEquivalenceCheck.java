@@ -0,0 +1,89 @@
+package check;
+
+import validation.InputValidators;
+
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+// Every hand-written validator must agree with the regex it replaced on a large set of generated and
+// mutated inputs; the first disagreement fails the check with the offending input.
+//
+// Usage: ValidatorEquivalenceCheck [inputs per validator]
+public class ValidatorEquivalenceCheck {
+    public static final String NIC = "^(?:\\d{12}|\\d{9}[Vv]|(?:[Pp]|[Oo][Ll]|[Dd])\\d{7})$";
+    public static final String ACCOUNT = "ACC\\d{6}";
+    public static final String MOBILE = "(^$|\\d{10})";
+    public static final String EMAIL = "(^$|\\S+@\\S+\\.\\S+)";
+    public static final String OTP = "\\d{6}";
+    public static final String PASSWORD = "^(?=.*[A-Za-z])(?=.*\\d).{8,}$";
+    public static final String USERNAME = "\\w{4,12}";
+
+    private static final int DIFFERENTIAL_INPUTS = 2_000_000;
+    private static final String[] ALPHABET = {
+            "0", "1", "5", "9", "a", "z", "A", "Z", "V", "v", "P", "p", "O", "o", "L", "l", "D", "d", "C", "_",
+            "@", ".", "-", " ", "\t", "\n", "\r", "\u000B", "\u0085", "\u2028", "\u00A0", "\uD83D\uDE00", "\uD83D"};
+    private static final String[] SEEDS = {
+            "123456789012", "123456789V", "123456789v", "P1234567", "OL1234567", "ol1234567", "D1234567",
+            "ACC123456", "0771234567", "user@example.com", "a@b.c", "@b.c", "a@.c", "a@b.", "123456",
+            "password1", "Secr3tPassw0rd", "john_doe", "abc", "abcdefghijklm", ""};
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DIFFERENTIAL_INPUTS;
+        check("nic", NIC, InputValidators::isValidNic, count);
+        check("account", ACCOUNT, InputValidators::isValidAccountNumber, count);
+        check("mobile", MOBILE, InputValidators::isValidMobile, count);
+        check("email", EMAIL, InputValidators::isValidEmail, count);
+        check("otp", OTP, InputValidators::isValidOtp, count);
+        check("password", PASSWORD, InputValidators::isValidPassword, count);
+        check("username", USERNAME, InputValidators::isValidUsername, count);
+    }
+
+    private static void check(String name, String regex, Predicate<String> validator, int count) {
+        Pattern pattern = Pattern.compile(regex);
+        String[] inputs = inputs(new Random(name.hashCode()), count);
+        int accepted = 0;
+        for (String input : inputs) {
+            boolean expected = pattern.matcher(input).matches();
+            if (validator.test(input) != expected) {
+                throw new AssertionError(name + " disagrees with its regex on \"" + escape(input) + "\" (regex says " + expected + ")");
+            }
+            if (expected) accepted++;
+        }
+        System.out.printf("%-10s identical on %,d inputs (%,d accepted)%n", name, inputs.length, accepted);
+    }
+
+    // Half random strings over a hostile alphabet, half single or double mutations of plausible inputs.
+    public static String[] inputs(Random random, int count) {
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder s = new StringBuilder();
+            if ((i & 1) == 0) {
+                int length = random.nextInt(16);
+                for (int j = 0; j < length; j++) s.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            } else {
+                s.append(SEEDS[random.nextInt(SEEDS.length)]);
+                for (int m = random.nextInt(3); m > 0; m--) {
+                    int at = s.length() == 0 ? 0 : random.nextInt(s.length() + 1);
+                    String c = ALPHABET[random.nextInt(ALPHABET.length)];
+                    switch (random.nextInt(3)) {
+                        case 0 -> s.insert(at, c);
+                        case 1 -> { if (at < s.length()) s.deleteCharAt(at); }
+                        default -> { if (at < s.length()) s.replace(at, at + 1, c); }
+                    }
+                }
+            }
+            inputs[i] = s.toString();
+        }
+        return inputs;
+    }
+
+    private static String escape(String input) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : input.toCharArray()) {
+            if (c < 0x20 || c > 0x7e) escaped.append(String.format("\\u%04X", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
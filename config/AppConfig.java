@@ -3,7 +3,60 @@ package config;
 public class AppConfig {
     public static final String TERMS_CONDITIONS_URL = "http://serendibank.lk/terms";
     public static final int OTP_VALIDITY_SECONDS = 30;
+    public static final int OTP_DIGITS = 6;
     public static final int OTP_ATTEMPTS_LIMIT = 3;
     public static final int OTP_LOCK_DURATION_HOURS = 3;
+    // Repeat lockouts double from OTP_LOCK_DURATION_HOURS up to this; strikes are forgotten after the memory.
+    public static final int LOCKOUT_MAX_HOURS = 48;
+    public static final int LOCKOUT_STRIKE_MEMORY_HOURS = 24;
+    public static final int LOCKOUT_MAX_KEYS = 1_000_000;
+    public static final int LOCKOUT_SWEEP_SECONDS = 60;
+    public static final String LOCKOUT_DIRECTORY = "lockouts";
     public static final int RESET_TOKEN_VALIDITY_MINUTES = 5;
+    public static final int RESET_TOKEN_DIGITS = 6;
+    public static final int CODE_STORE_SWEEP_SECONDS = 1;
+    public static final int LOGIN_AUDIT_CAPACITY = 100_000;
+    public static final int OTP_QUEUE_CAPACITY = 10_000;
+    public static final int OTP_BATCH_SIZE = 100;
+    public static final long OTP_BATCH_LINGER_MILLIS = 5;
+    public static final int OTP_DELIVERY_RETRIES = 3;
+    public static final long OTP_GATEWAY_DEADLINE_MILLIS = 2_000;
+    public static final int OTP_BREAKER_FAILURES = 5;
+    public static final long OTP_BREAKER_OPEN_MILLIS = 15_000;
+    // Gateway calls per channel that overran their deadline and have not returned yet, beyond which the
+    // channel gets no new calls.
+    public static final int OTP_MAX_STUCK_CALLS = 32;
+    public static final String DATA_DIRECTORY = "data";
+    public static final int SNAPSHOT_INTERVAL_SECONDS = 300;
+    public static final long PASSWORD_HASH_TARGET_MILLIS = 50;
+    public static final int PASSWORD_HASH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static final int PASSWORD_HASH_QUEUE_CAPACITY = 1_000;
+    public static final int SESSION_IDLE_TIMEOUT_MINUTES = 15;
+    // Renewed on every onboarding answer, so only sessions idle past their timeout lose their holds.
+    public static final int RESERVATION_HOLD_SECONDS = SESSION_IDLE_TIMEOUT_MINUTES * 60;
+    public static final int IMPORT_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final int IMPORT_CHUNK_SIZE = 1_000;
+    public static final long RATE_LIMIT_WINDOW_MILLIS = 15 * 60_000L;
+    public static final int LOGIN_ATTEMPTS_PER_WINDOW = 10;
+    public static final int OTP_VALIDATIONS_PER_WINDOW = 10;
+    public static final int SOURCE_ATTEMPTS_PER_WINDOW = 100;
+    public static final int RATE_LIMIT_MAX_KEYS = 1_000_000;
+    public static final long CLOCK_TICK_MILLIS = 10;
+    public static final int METRICS_PORT = 9464;
+    public static final int PORTFOLIO_CACHE_CAPACITY = 100_000;
+    public static final String OTP_STORE_FILE = "otp-store.bin";
+    public static final int OTP_STORE_BUCKETS = 8_192;
+    public static final long ANALYTICS_BUCKET_MILLIS = 60_000;
+    public static final int ANALYTICS_WINDOW_BUCKETS = 15;
+    public static final int ANALYTICS_MAX_KEYS = 1_000_000;
+    public static final int ANALYTICS_USER_MIN_ATTEMPTS = 5;
+    public static final double ANALYTICS_USER_FAILURE_RATIO = 0.8;
+    public static final int ANALYTICS_GLOBAL_MIN_ATTEMPTS = 100;
+    public static final double ANALYTICS_GLOBAL_FAILURE_RATIO = 0.5;
+    public static final int ANALYTICS_SOURCE_USERNAME_BURST = 20;
+    public static final int ANALYTICS_GLOBAL_USERNAME_BURST = 1_000;
+    public static final int ANALYTICS_HOUR_MIN_LOGINS = 20;
+    public static final double ANALYTICS_RARE_HOUR_SHARE = 0.02;
+    public static final int ANALYTICS_MAX_PROFILES = 1_000_000;
+    public static final int ANALYTICS_PROFILE_IDLE_DAYS = 90;
 }
@@ -1,46 +1,47 @@
 package factory;
 
 import model.User;
+import model.UserStatus;
 import repository.UserDatabase;
+import repository.UserRepository;
+import security.PasswordHasher;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class UserFactory {
+    private final PasswordHasher passwordHasher;
+    private final UserRepository userRepository;
+
+    public UserFactory(PasswordHasher passwordHasher) {
+        this(passwordHasher, UserDatabase.getInstance());
+    }
+
+    public UserFactory(PasswordHasher passwordHasher, UserRepository userRepository) {
+        this.passwordHasher = passwordHasher;
+        this.userRepository = userRepository;
+    }
+
     public User createUser(String nic, String accountNumber, String username, String password, String displayName) {
-        UserDatabase db = UserDatabase.getInstance();
-        if (db.findByUsername(username) != null)
+        if (userRepository.findByUsername(username) != null)
             throw new IllegalArgumentException("Username taken");
 
         User user = new User();
         user.setNic(nic);
         user.setAccountNumber(accountNumber);
         user.setUsername(username);
-        user.setPassword(password);
+        user.setPassword(passwordHasher.hash(password).join());
         user.setDisplayName(displayName);
-        user.setStatus("INITIATED");
+        user.setStatus(UserStatus.INITIATED);
         return user;
     }
 
     public String suggestUsername(String base) {
-        List<String> suggestions = new ArrayList<>();
-        int suffix = 1;
-        UserDatabase db = UserDatabase.getInstance();
-
-        while (suggestions.size() < 3) {
-            String potential = base + suffix;
-
-            if (db.findByUsername(potential) == null) {
-                suggestions.add(potential);
-            }
-            suffix++;
-        }
+        List<String> suggestions = userRepository.suggestUsernames(base, 3);
         return String.join(", ", suggestions);
     }
 
     public String createSuggestedUsername(String base) {
-        UserDatabase db = UserDatabase.getInstance();
-        if (db.findByUsername(base) == null) return base;
+        if (!userRepository.isUsernameTaken(base)) return base;
         throw new IllegalArgumentException("Username taken");
     }
 }
@@ -0,0 +1,351 @@
+package importer;
+
+import config.AppConfig;
+import factory.UserFactory;
+import model.User;
+import repository.UserDatabase;
+import repository.UserRepository;
+import security.PasswordHasher;
+import service.BankingService;
+import service.OTPService;
+import validation.InputValidators;
+import validation.OnboardingRecord;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Streams a CSV of branch customers (nic,account,username,password,displayName,mobile,email) into the
+// user database. Lines are read incrementally and handed out in chunks to a worker pool, with a cap on
+// chunks in flight so memory stays flat regardless of file size. Uniqueness of NIC, account number and
+// username is enforced by the reservations BankingService.onboardUser takes, so rows never collide with
+// customers onboarding interactively at the same time.
+//
+// Rejected lines go to an error report. A checkpoint file records the highest line up to which every
+// chunk has finished and its rejections have been flushed to the report, so an interrupted import resumes
+// there; rows that were already imported before the interruption are recognised and counted as skipped
+// rather than rejected. Rejections already in the report for lines past the checkpoint are dropped before
+// resuming, since those lines are read again. A row that fails unexpectedly is rejected with the exception as its reason; if the
+// report or the checkpoint itself cannot be written, the import stops and importFile throws.
+public class BulkOnboardingImporter {
+    private static final int COLUMNS = 7;
+
+    private final BankingService bankingService;
+    private final UserRepository userDatabase;
+    private final int threads;
+    private final int chunkSize;
+
+    public static final class Result {
+        private final long imported;
+        private final long rejected;
+        private final long skipped;
+        private final long elapsedMillis;
+
+        Result(long imported, long rejected, long skipped, long elapsedMillis) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.skipped = skipped;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public long getSkipped() { return skipped; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : (imported + rejected + skipped) * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("imported=%d rejected=%d skipped=%d in %.1fs (%.0f rows/s)",
+                    imported, rejected, skipped, elapsedMillis / 1000.0, getRowsPerSecond());
+        }
+    }
+
+    public BulkOnboardingImporter(BankingService bankingService, UserRepository userDatabase) {
+        this(bankingService, userDatabase, AppConfig.IMPORT_THREADS, AppConfig.IMPORT_CHUNK_SIZE);
+    }
+
+    public BulkOnboardingImporter(BankingService bankingService, UserRepository userDatabase, int threads, int chunkSize) {
+        this.bankingService = bankingService;
+        this.userDatabase = userDatabase;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    // Usage: BulkOnboardingImporter <customers.csv> [error-report.csv] [checkpoint-file]
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: BulkOnboardingImporter <customers.csv> [error-report.csv] [checkpoint-file]");
+            return;
+        }
+        Path input = Path.of(args[0]);
+        Path errorReport = Path.of(args.length > 1 ? args[1] : args[0] + ".errors.csv");
+        Path checkpoint = Path.of(args.length > 2 ? args[2] : args[0] + ".checkpoint");
+
+        UserDatabase db = UserDatabase.open(Path.of(AppConfig.DATA_DIRECTORY));
+        PasswordHasher passwordHasher = new PasswordHasher();
+        BankingService bankingService = new BankingService(new UserFactory(passwordHasher), db, new OTPService());
+        try {
+            Result result = new BulkOnboardingImporter(bankingService, db).importFile(input, errorReport, checkpoint);
+            System.out.println("[Import] " + result);
+        } finally {
+            passwordHasher.close();
+            db.close();
+        }
+    }
+
+    public Result importFile(Path input, Path errorReport, Path checkpoint) throws IOException, InterruptedException {
+        long resumeAfter = readCheckpoint(checkpoint);
+        dropRejectionsAfter(errorReport, resumeAfter);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 2);
+        long start = System.currentTimeMillis();
+        Progress progress;
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter errors = Files.newBufferedWriter(errorReport, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            ErrorReport report = new ErrorReport(errors);
+            progress = new Progress(checkpoint, resumeAfter, report);
+            List<String> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 0;
+            long chunkFirstLine = 0;
+            int chunkIndex = 0;
+            String line;
+            while ((line = reader.readLine()) != null && progress.failure == null) {
+                lineNumber++;
+                // Lines up to the checkpoint were handled by an earlier run.
+                if (lineNumber <= resumeAfter || (lineNumber == 1 && line.startsWith("nic,"))) continue;
+                if (chunk.isEmpty()) chunkFirstLine = lineNumber;
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    submit(workers, inFlight, progress, report, chunkIndex++, chunkFirstLine, chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) submit(workers, inFlight, progress, report, chunkIndex, chunkFirstLine, chunk);
+
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            report.flush();
+        } finally {
+            workers.shutdownNow();
+        }
+        if (progress.failure != null) {
+            throw new IOException("Import stopped; resume from line " + (progress.watermark + 1), progress.failure);
+        }
+        return new Result(progress.imported.sum(), progress.rejected.sum(), progress.skipped.sum(),
+                System.currentTimeMillis() - start);
+    }
+
+    private void submit(ExecutorService workers, Semaphore inFlight, Progress progress, ErrorReport report,
+                        int chunkIndex, long firstLine, List<String> lines) throws InterruptedException {
+        inFlight.acquire();
+        workers.execute(() -> {
+            try {
+                for (int i = 0; i < lines.size() && progress.failure == null; i++) {
+                    long lineNumber = firstLine + i;
+                    try {
+                        importLine(lineNumber, lines.get(i), progress, report);
+                    } catch (RuntimeException e) {
+                        report.reject(lineNumber, e.getClass().getSimpleName() + ": " + e.getMessage());
+                        progress.rejected.increment();
+                    }
+                }
+                // A chunk cut short by a failure elsewhere never completes, so the checkpoint stays before it.
+                if (progress.failure == null) progress.chunkDone(chunkIndex, firstLine + lines.size() - 1);
+            } catch (RuntimeException e) {
+                progress.fail(e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void importLine(long lineNumber, String line, Progress progress, ErrorReport report) {
+        List<String> fields = parseCsvLine(line);
+        if (fields == null || fields.size() != COLUMNS) {
+            report.reject(lineNumber, "Expected " + COLUMNS + " columns");
+            progress.rejected.increment();
+            return;
+        }
+        OnboardingRecord record = new OnboardingRecord(fields.get(0).trim(), fields.get(1).trim(), fields.get(5).trim(),
+                fields.get(6).trim(), fields.get(2).trim(), fields.get(3), fields.get(4).trim());
+        int errors = InputValidators.validate(record);
+        if (errors != 0) {
+            report.reject(lineNumber, InputValidators.describe(errors));
+            progress.rejected.increment();
+            return;
+        }
+
+        try {
+            bankingService.onboardUser(record);
+            progress.imported.increment();
+        } catch (IllegalArgumentException e) {
+            User existing = userDatabase.findByNic(record.getNic());
+            if (existing != null && existing.getUsername().equalsIgnoreCase(record.getUsername())
+                    && existing.getAccountNumber().equals(record.getAccountNumber())) {
+                progress.skipped.increment();
+            } else {
+                report.reject(lineNumber, e.getMessage());
+                progress.rejected.increment();
+            }
+        }
+    }
+
+    // Comma separated, with optional double-quoted fields ("" escapes a quote). Returns null if a quote is unterminated.
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(COLUMNS);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) return null;
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static long readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) return 0;
+        String content = Files.readString(checkpoint, StandardCharsets.UTF_8).trim();
+        return content.isEmpty() ? 0 : Long.parseLong(content);
+    }
+
+    // Rewrites the report without the rejections of lines after lastLine. Chunks past the checkpoint may
+    // have had rejections flushed before the run stopped; left in place they would be reported twice.
+    private static void dropRejectionsAfter(Path errorReport, long lastLine) throws IOException {
+        if (!Files.exists(errorReport)) return;
+        Path temporary = errorReport.resolveSibling(errorReport.getFileName() + ".tmp");
+        try (BufferedReader reader = Files.newBufferedReader(errorReport, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma > 0 && Long.parseLong(line.substring(0, comma)) > lastLine) continue;
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, errorReport, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class ErrorReport {
+        private final BufferedWriter writer;
+
+        ErrorReport(BufferedWriter writer) {
+            this.writer = writer;
+        }
+
+        synchronized void reject(long lineNumber, String reason) {
+            try {
+                writer.write(lineNumber + "," + reason.replace(',', ';'));
+                writer.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            writer.flush();
+        }
+    }
+
+    // Chunks finish out of order; the checkpoint only moves past a chunk once every earlier one is done.
+    private static final class Progress {
+        private final Path checkpoint;
+        private final ErrorReport report;
+        private final BitSet doneChunks = new BitSet();
+        private final List<Long> lastLineOfChunk = new ArrayList<>();
+        private int nextPending;
+        private final LongAdder imported = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long watermark;
+        private long lastReportAt = startedAt;
+        // The first error that stopped the import: the report or the checkpoint could not be written.
+        private volatile RuntimeException failure;
+
+        Progress(Path checkpoint, long resumeAfter, ErrorReport report) {
+            this.checkpoint = checkpoint;
+            this.watermark = resumeAfter;
+            this.report = report;
+        }
+
+        synchronized void chunkDone(int chunkIndex, long lastLine) {
+            while (lastLineOfChunk.size() <= chunkIndex) lastLineOfChunk.add(0L);
+            lastLineOfChunk.set(chunkIndex, lastLine);
+            doneChunks.set(chunkIndex);
+
+            int pending = nextPending;
+            while (doneChunks.get(pending)) pending++;
+            if (pending == nextPending) return;
+            nextPending = pending;
+            // Rejections of the lines the checkpoint moves past must be on disk before it does, or a resumed
+            // import would never report them.
+            try {
+                report.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            writeCheckpoint(lastLineOfChunk.get(pending - 1));
+
+            long now = System.currentTimeMillis();
+            if (now - lastReportAt >= 5_000) {
+                lastReportAt = now;
+                long rows = imported.sum() + rejected.sum() + skipped.sum();
+                System.out.printf("[Import] line %d, %d rows, %.0f rows/s%n", watermark, rows, rows * 1000.0 / (now - startedAt));
+            }
+        }
+
+        synchronized void fail(RuntimeException e) {
+            if (failure == null) failure = e;
+        }
+
+        private void writeCheckpoint(long line) {
+            try {
+                Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+                Files.writeString(temporary, Long.toString(line), StandardCharsets.UTF_8);
+                Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                watermark = line;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
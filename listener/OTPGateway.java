@@ -0,0 +1,8 @@
+package listener;
+
+import java.util.List;
+
+// Delivers a batch of OTPs for one channel in a single call. Throwing fails the whole batch.
+public interface OTPGateway {
+    void deliver(String channel, List<OTPMessage> batch) throws Exception;
+}
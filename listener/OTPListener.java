@@ -1,5 +1,17 @@
 package listener;
 
+import java.util.List;
+
 public interface OTPListener {
     void sendOTP(String userId, String otp, String channel);
+
+    // fallbackChannel, if not null, may be used instead when channel is down or slow.
+    default void sendOTP(String userId, String otp, String channel, String fallbackChannel) {
+        sendOTP(userId, otp, channel);
+    }
+
+    // Sends the same code over every channel; implementations may deliver them in parallel.
+    default void sendOTPToAll(String userId, String otp, List<String> channels) {
+        for (String channel : channels) sendOTP(userId, otp, channel);
+    }
 }
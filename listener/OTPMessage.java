@@ -0,0 +1,41 @@
+package listener;
+
+public class OTPMessage {
+    private final String userId;
+    private final String otp;
+    private final String channel;
+    // Where the code may go instead if channel is down or slow; null when there is no other contact.
+    private final String fallbackChannel;
+    private final long enqueuedAtNanos;
+    private int attempts;
+
+    public OTPMessage(String userId, String otp, String channel) {
+        this(userId, otp, channel, null);
+    }
+
+    public OTPMessage(String userId, String otp, String channel, String fallbackChannel) {
+        this(userId, otp, channel, fallbackChannel, System.nanoTime());
+    }
+
+    private OTPMessage(String userId, String otp, String channel, String fallbackChannel, long enqueuedAtNanos) {
+        this.userId = userId;
+        this.otp = otp;
+        this.channel = channel;
+        this.fallbackChannel = fallbackChannel;
+        this.enqueuedAtNanos = enqueuedAtNanos;
+    }
+
+    // The same code sent to its fallback channel instead, with no further fallback. It keeps the original
+    // enqueue time, so delivery latency counts the time lost on the first channel.
+    public OTPMessage toFallback() {
+        return new OTPMessage(userId, otp, fallbackChannel, null, enqueuedAtNanos);
+    }
+
+    public String getUserId() { return userId; }
+    public String getOtp() { return otp; }
+    public String getChannel() { return channel; }
+    public String getFallbackChannel() { return fallbackChannel; }
+    public long getEnqueuedAtNanos() { return enqueuedAtNanos; }
+    public int getAttempts() { return attempts; }
+    public void incrementAttempts() { this.attempts++; }
+}
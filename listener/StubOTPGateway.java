@@ -0,0 +1,39 @@
+package listener;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// In-process stand-in for the SMS/email gateways with configurable per-call latency and failure rate.
+public class StubOTPGateway implements OTPGateway {
+    private final long latencyMillis;
+    private final double failureRate;
+    private final Consumer<OTPMessage> sink;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    public StubOTPGateway(long latencyMillis) {
+        this(latencyMillis, 0.0, message -> {});
+    }
+
+    public StubOTPGateway(long latencyMillis, double failureRate, Consumer<OTPMessage> sink) {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.sink = sink;
+    }
+
+    @Override
+    public void deliver(String channel, List<OTPMessage> batch) throws Exception {
+        calls.incrementAndGet();
+        if (latencyMillis > 0) Thread.sleep(latencyMillis);
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new IllegalStateException("Gateway unavailable for " + channel);
+        }
+        for (OTPMessage message : batch) sink.accept(message);
+        delivered.addAndGet(batch.size());
+    }
+
+    public long getCalls() { return calls.get(); }
+    public long getDelivered() { return delivered.get(); }
+}
@@ -0,0 +1,29 @@
+package loadtest;
+
+import listener.OTPListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps the last code sent to each user instead of delivering it, so scripted customers can read their
+// OTPs and reset tokens back. Codes are keyed like the OTP store: by NIC while onboarding, else username.
+public class CapturingOTPListener implements OTPListener {
+    private final Map<String, String> codes = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+
+    @Override
+    public void sendOTP(String userId, String otp, String channel) {
+        codes.put(userId, otp);
+        sent.increment();
+    }
+
+    // The code last sent to userId, or null; each code is handed out once.
+    public String take(String userId) {
+        return codes.remove(userId);
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+}
@@ -0,0 +1,172 @@
+package loadtest;
+
+import session.Prompt;
+import session.SessionEngine;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// One simulated customer on its own thread: picks a journey from the mix, answers every question the way
+// a person would, pausing for think time between answers, and repeats until the run stops. Logins and
+// resets use the customer's own seeded account, so concurrent customers never change each other's
+// passwords; every onboarding registers a fresh identity.
+class Customer implements Runnable {
+    // Thrown when a journey leaves its script; the reason is what the customer was shown.
+    private static final class JourneyFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        JourneyFailed(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    private final SessionEngine engine;
+    private final CapturingOTPListener otps;
+    private final LoadReport report;
+    private final WorkloadMix mix;
+    private final long thinkMillis;
+    private final AtomicBoolean running;
+    private final AtomicLong identities;
+    private final Random random;
+    private final String source;
+    private final String username;
+    private String password;
+    private int passwordChanges;
+    private String sessionId;
+
+    Customer(int index, String username, String password, SessionEngine engine, CapturingOTPListener otps,
+             LoadReport report, WorkloadMix mix, long thinkMillis, AtomicBoolean running, AtomicLong identities) {
+        this.engine = engine;
+        this.otps = otps;
+        this.report = report;
+        this.mix = mix;
+        this.thinkMillis = thinkMillis;
+        this.running = running;
+        this.identities = identities;
+        this.random = new Random(index);
+        this.source = "10." + (index >>> 16 & 0xFF) + "." + (index >>> 8 & 0xFF) + "." + (index & 0xFF);
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Spread the first requests out instead of starting every customer at once.
+            if (thinkMillis > 0) Thread.sleep((long) (random.nextDouble() * thinkMillis * 2));
+            while (running.get()) {
+                Journey journey = mix.pick(random);
+                try {
+                    switch (journey) {
+                        case ONBOARDING -> onboard();
+                        case LOGIN -> login();
+                        case PASSWORD_RESET -> resetPassword();
+                    }
+                    report.completed(journey);
+                } catch (JourneyFailed e) {
+                    report.failed(journey, e.getMessage());
+                } catch (RuntimeException e) {
+                    report.failed(journey, e.getClass().getSimpleName());
+                } finally {
+                    if (sessionId != null) engine.cancel(sessionId);
+                    sessionId = null;
+                }
+                think();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onboard() throws InterruptedException {
+        long n = identities.incrementAndGet();
+        String nic = String.format("%012d", 200_000_000_000L + n);
+        String account = String.format("ACC%06d", n % 1_000_000);
+        String newUsername = String.format("ob%06d", n);
+        String mobile = String.format("07%08d", n % 100_000_000);
+
+        start("onboarding.start", () -> engine.startOnboarding(source), "Choose language");
+        answer("onboarding.language", "1", "Enter NIC");
+        answer("onboarding.nic", nic, "Enter CASA");
+        answer("onboarding.account", account, "Do you accept");
+        answer("onboarding.terms", "Y", "Enter mobile");
+        answer("onboarding.mobile", mobile, "Enter email");
+        answer("onboarding.email", newUsername + "@example.com", "Enter OTP");
+        answer("onboarding.otp", code(nic), "Select");
+        answer("onboarding.verification", "1", "Create username");
+        answer("onboarding.username", newUsername, "Create password");
+        answer("onboarding.password", "Welcome" + n, "Confirm password");
+        answer("onboarding.confirm", "Welcome" + n, "Enter display name");
+        // Registration hands over to the login prompt.
+        answer("onboarding.register", "Customer " + n, "Username");
+    }
+
+    private void login() throws InterruptedException {
+        start("login.start", () -> engine.startLogin(source), "Username");
+        answer("login.username", username, "Select");
+        answer("login.option", "1", "Password");
+        answer("login.password", password, "Choice");
+        answer("login.channel", "1", "Enter OTP");
+        answer("login.otp", code(username), "\nPress Enter");
+        finishWith("login.logout", "");
+    }
+
+    private void resetPassword() throws InterruptedException {
+        start("reset.start", () -> engine.startLogin(source), "Username");
+        answer("reset.username", username, "Select");
+        answer("reset.option", "2", "Enter reset token");
+        String next = "Reset" + (++passwordChanges) + "x" + username;
+        answer("reset.token", code(username), "Create password");
+        answer("reset.password", next, "Confirm password");
+        finishWith("reset.confirm", next);
+        password = next;
+    }
+
+    private void start(String step, Supplier<Prompt> starter, String expected) {
+        long start = System.nanoTime();
+        Prompt prompt = starter.get();
+        report.recordStep(step, System.nanoTime() - start);
+        sessionId = prompt.getSessionId();
+        expect(step, prompt, expected);
+    }
+
+    // Times the submit (the think time before it is not counted) and checks the next question.
+    private void answer(String step, String input, String expected) throws InterruptedException {
+        expect(step, submit(step, input), expected);
+    }
+
+    private void finishWith(String step, String input) throws InterruptedException {
+        Prompt prompt = submit(step, input);
+        if (!prompt.isFinished()) throw new JourneyFailed(step + ": did not finish");
+        sessionId = null;
+    }
+
+    private Prompt submit(String step, String input) throws InterruptedException {
+        think();
+        long start = System.nanoTime();
+        Prompt prompt = engine.submit(sessionId, input);
+        report.recordStep(step, System.nanoTime() - start);
+        return prompt;
+    }
+
+    private void expect(String step, Prompt prompt, String expected) {
+        if (prompt.getQuestion() != null && prompt.getQuestion().startsWith(expected)) return;
+        if (prompt.isFinished()) sessionId = null;
+        throw new JourneyFailed(step + ": " + (prompt.getMessages().isEmpty() ? "unexpected question " + prompt.getQuestion()
+                : prompt.getMessages().get(prompt.getMessages().size() - 1).trim()));
+    }
+
+    private String code(String userId) {
+        String code = otps.take(userId);
+        if (code == null) throw new JourneyFailed("no code delivered to " + userId);
+        return code;
+    }
+
+    // Exponentially distributed pauses with the configured mean, like independent people typing.
+    private void think() throws InterruptedException {
+        if (thinkMillis <= 0) return;
+        Thread.sleep((long) (-Math.log(1 - random.nextDouble()) * thinkMillis));
+    }
+}
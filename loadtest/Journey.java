@@ -0,0 +1,23 @@
+package loadtest;
+
+// The customer journeys the load generator scripts end to end through SessionEngine.
+public enum Journey {
+    ONBOARDING("onboarding"),
+    LOGIN("login"),
+    PASSWORD_RESET("reset");
+
+    private final String label;
+
+    Journey(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() { return label; }
+
+    public static Journey of(String label) {
+        for (Journey journey : values()) {
+            if (journey.label.equalsIgnoreCase(label)) return journey;
+        }
+        throw new IllegalArgumentException("Unknown journey " + label);
+    }
+}
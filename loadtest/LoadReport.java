@@ -0,0 +1,102 @@
+package loadtest;
+
+import metrics.HistogramSnapshot;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-step latency and per-journey outcomes of one load test. Latencies live in a registry of their own,
+// so the services' metrics in the global registry are left as they are.
+public class LoadReport {
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final Map<String, LatencyHistogram> steps = new ConcurrentHashMap<>();
+    // Step names ("journey.step") in the order they were first seen, which is the order of the scripts.
+    private final List<String> stepOrder = new ArrayList<>();
+    private final Map<Journey, LongAdder> completed = new EnumMap<>(Journey.class);
+    private final Map<Journey, LongAdder> failed = new EnumMap<>(Journey.class);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public LoadReport() {
+        for (Journey journey : Journey.values()) {
+            completed.put(journey, new LongAdder());
+            failed.put(journey, new LongAdder());
+        }
+    }
+
+    public void recordStep(String step, long nanos) {
+        LatencyHistogram histogram = steps.get(step);
+        if (histogram == null) {
+            synchronized (stepOrder) {
+                histogram = steps.get(step);
+                if (histogram == null) {
+                    histogram = registry.histogram("loadtest_step_seconds", "step", step);
+                    steps.put(step, histogram);
+                    stepOrder.add(step);
+                }
+            }
+        }
+        histogram.record(nanos);
+    }
+
+    public void completed(Journey journey) {
+        completed.get(journey).increment();
+    }
+
+    public void failed(Journey journey, String reason) {
+        failed.get(journey).increment();
+        errors.computeIfAbsent(journey.getLabel() + " " + reason, k -> new LongAdder()).increment();
+    }
+
+    public long getCompleted() {
+        long total = 0;
+        for (LongAdder count : completed.values()) total += count.sum();
+        return total;
+    }
+
+    public long getFailed() {
+        long total = 0;
+        for (LongAdder count : failed.values()) total += count.sum();
+        return total;
+    }
+
+    public void print(double elapsedSeconds) {
+        System.out.printf("%n%-28s %10s %10s %9s %9s %9s %9s%n", "step", "count", "per sec", "p50 ms", "p99 ms",
+                "p99.9 ms", "max ms");
+        List<String> names;
+        synchronized (stepOrder) {
+            names = new ArrayList<>(stepOrder);
+        }
+        // Grouped by journey; the sort is stable, so each journey's steps stay in script order.
+        names.sort(Comparator.comparingInt(name -> Journey.of(name.substring(0, name.indexOf('.'))).ordinal()));
+        for (String name : names) {
+            HistogramSnapshot latency = steps.get(name).snapshot();
+            System.out.printf("%-28s %,10d %,10.1f %9.2f %9.2f %9.2f %9.2f%n", name, latency.getCount(),
+                    latency.getCount() / elapsedSeconds, latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6,
+                    latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6);
+        }
+
+        System.out.printf("%n%-28s %10s %10s %10s %9s%n", "journey", "completed", "failed", "per sec", "error %");
+        for (Journey journey : Journey.values()) {
+            long ok = completed.get(journey).sum();
+            long bad = failed.get(journey).sum();
+            if (ok + bad == 0) continue;
+            System.out.printf("%-28s %,10d %,10d %,10.1f %9.2f%n", journey.getLabel(), ok, bad, ok / elapsedSeconds,
+                    100.0 * bad / (ok + bad));
+        }
+
+        if (errors.isEmpty()) return;
+        System.out.println("\nerrors:");
+        List<Map.Entry<String, LongAdder>> sorted = new ArrayList<>(errors.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+        for (Map.Entry<String, LongAdder> error : sorted.subList(0, Math.min(10, sorted.size()))) {
+            System.out.printf("%,10d  %s%n", error.getValue().sum(), error.getKey());
+        }
+    }
+}
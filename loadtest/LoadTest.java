@@ -0,0 +1,117 @@
+package loadtest;
+
+import config.AppConfig;
+import factory.UserFactory;
+import model.User;
+import model.UserStatus;
+import portfolio.StubCoreBankingSource;
+import repository.PartitionedUserDatabase;
+import repository.UserRepository;
+import security.PasswordHasher;
+import service.AuthService;
+import service.BankingService;
+import service.OTPService;
+import session.SessionEngine;
+import util.VirtualThreads;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drives onboarding, login-with-OTP and password-reset journeys through an in-process SessionEngine with
+// many concurrent customers, one thread each (virtual threads on Java 21+), and reports throughput,
+// per-step latency and errors. OTPs and reset tokens are read back through a CapturingOTPListener; no rate
+// limiter is installed, since every customer logs into the same account over and over.
+//
+// Each customer owns one pre-registered account. The hash cost defaults to the production target, which
+// usually bounds login and onboarding throughput; pass a smaller one to load the rest of the path.
+//
+// Usage: LoadTest [customers] [seconds] [mean think millis] [mix] [hash millis] [core banking millis]
+//   e.g. LoadTest 100000 120 2000 login=80,onboarding=15,reset=5 50 20
+public class LoadTest {
+    private static final String SEED_PASSWORD = "Seeded123";
+    private static final long PROGRESS_MILLIS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long thinkMillis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        WorkloadMix mix = WorkloadMix.parse(args.length > 3 ? args[3] : "login=80,onboarding=15,reset=5");
+        long hashMillis = args.length > 4 ? Long.parseLong(args[4]) : AppConfig.PASSWORD_HASH_TARGET_MILLIS;
+        long coreBankingMillis = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+        PasswordHasher passwordHasher = new PasswordHasher(hashMillis, AppConfig.PASSWORD_HASH_THREADS,
+                Math.max(AppConfig.PASSWORD_HASH_QUEUE_CAPACITY, customers));
+        UserRepository userDatabase = new PartitionedUserDatabase(Runtime.getRuntime().availableProcessors());
+        CapturingOTPListener otps = new CapturingOTPListener();
+        OTPService otpService = new OTPService();
+        otpService.setOtpListener(otps);
+        BankingService bankingService = new BankingService(new UserFactory(passwordHasher, userDatabase), userDatabase,
+                otpService, new StubCoreBankingSource(coreBankingMillis));
+        AuthService authService = new AuthService(userDatabase, passwordHasher);
+        authService.setResetTokenListener(otps);
+        SessionEngine engine = new SessionEngine(bankingService, otpService, authService, userDatabase);
+
+        System.out.printf("seeding %,d customers (hash %d ms, %d iterations)%n", customers, hashMillis,
+                passwordHasher.getIterations());
+        // One hash for every seeded account; each verification still costs a full hash.
+        String seedHash = passwordHasher.hash(SEED_PASSWORD).join();
+        for (int i = 0; i < customers; i++) userDatabase.addUser(seededUser(i, seedHash));
+
+        System.out.printf("running %,d customers for %d s, mean think %d ms, mix %s%n", customers, seconds,
+                thinkMillis, mix);
+        LoadReport report = new LoadReport();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong identities = new AtomicLong();
+        ThreadFactory threads = VirtualThreads.factory("customer-");
+        Thread[] workers = new Thread[customers];
+        long start = System.nanoTime();
+        for (int i = 0; i < customers; i++) {
+            workers[i] = threads.newThread(new Customer(i, username(i), SEED_PASSWORD, engine, otps, report, mix,
+                    thinkMillis, running, identities));
+            workers[i].start();
+        }
+
+        long deadline = start + seconds * 1_000_000_000L;
+        long lastCompleted = 0;
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(PROGRESS_MILLIS, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+            long completed = report.getCompleted();
+            System.out.printf("%5.0f s  journeys %,d (+%,d)  failed %,d  active sessions %,d  hash queue %,d%n",
+                    (System.nanoTime() - start) / 1e9, completed, completed - lastCompleted, report.getFailed(),
+                    engine.getActiveSessions(), passwordHasher.getQueueDepth());
+            lastCompleted = completed;
+        }
+        running.set(false);
+        // Journeys in flight are allowed to finish, but not to hold the report up for long.
+        long drainUntil = System.nanoTime() + Math.max(10_000, thinkMillis * 20) * 1_000_000L;
+        for (Thread worker : workers) {
+            long left = (drainUntil - System.nanoTime()) / 1_000_000;
+            if (left <= 0) break;
+            worker.join(left);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        report.print(elapsed);
+        System.out.printf("%ncodes captured %,d, users %,d, elapsed %.1f s%n", otps.getSent(),
+                userDatabase.getUserCount(), elapsed);
+        passwordHasher.close();
+    }
+
+    private static String username(int index) {
+        return "lt" + index;
+    }
+
+    private static User seededUser(int index, String passwordHash) {
+        User user = new User();
+        user.setUsername(username(index));
+        user.setNic(String.format("%012d", 100_000_000_000L + index));
+        user.setAccountNumber(String.format("ACC%06d", 999_999 - index % 1_000_000));
+        user.setPassword(passwordHash);
+        user.setDisplayName("Customer " + index);
+        user.setMobile(String.format("07%08d", index));
+        user.setEmail(username(index) + "@example.com");
+        user.setStatus(UserStatus.ACTIVE);
+        return user;
+    }
+}
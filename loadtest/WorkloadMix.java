@@ -0,0 +1,55 @@
+package loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+// Relative weights of the journeys customers pick, e.g. "login=80,onboarding=15,reset=5".
+public final class WorkloadMix {
+    private final Map<Journey, Integer> weights;
+    private final Journey[] journeys;
+    private final int[] cumulative;
+
+    public WorkloadMix(Map<Journey, Integer> weights) {
+        this.weights = new EnumMap<>(weights);
+        int total = 0;
+        journeys = new Journey[this.weights.size()];
+        cumulative = new int[this.weights.size()];
+        int i = 0;
+        for (Map.Entry<Journey, Integer> entry : this.weights.entrySet()) {
+            if (entry.getValue() < 0) throw new IllegalArgumentException("Negative weight for " + entry.getKey().getLabel());
+            total += entry.getValue();
+            journeys[i] = entry.getKey();
+            cumulative[i++] = total;
+        }
+        if (total == 0) throw new IllegalArgumentException("Workload mix has no journeys");
+    }
+
+    public static WorkloadMix parse(String spec) {
+        Map<Journey, Integer> weights = new EnumMap<>(Journey.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) throw new IllegalArgumentException("Expected journey=weight, got " + part);
+            weights.merge(Journey.of(pair[0].trim()), Integer.parseInt(pair[1].trim()), Integer::sum);
+        }
+        return new WorkloadMix(weights);
+    }
+
+    public Journey pick(Random random) {
+        int ticket = random.nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (ticket < cumulative[i]) return journeys[i];
+        }
+        return journeys[journeys.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        weights.forEach((journey, weight) -> {
+            if (text.length() > 0) text.append(',');
+            text.append(journey.getLabel()).append('=').append(weight);
+        });
+        return text.toString();
+    }
+}
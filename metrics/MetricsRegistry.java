@@ -0,0 +1,62 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+// Named counters, gauges and latency histograms. Services look their metrics up once, when they are
+// constructed, and keep the returned objects; only snapshots walk the registry.
+//
+// Labels are given as name/value pairs: counter("otp_validations_total", "result", "expired").
+public class MetricsRegistry {
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(key(name, labels), k -> new Counter());
+    }
+
+    // Histogram names should end in _seconds; values are recorded in nanoseconds and exposed in seconds.
+    public LatencyHistogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(key(name, labels), k -> new LatencyHistogram());
+    }
+
+    // Registering the same gauge again replaces its source, e.g. when a component is recreated.
+    public void gauge(String name, LongSupplier value, String... labels) {
+        gauges.put(key(name, labels), value);
+    }
+
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((key, counter) -> counterValues.put(key, counter.get()));
+        Map<String, Long> gaugeValues = new TreeMap<>();
+        gauges.forEach((key, gauge) -> gaugeValues.put(key, gauge.getAsLong()));
+        Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+        histograms.forEach((key, histogram) -> histogramValues.put(key, histogram.snapshot()));
+        return new MetricsSnapshot(counterValues, gaugeValues, histogramValues);
+    }
+
+    // Current values in the Prometheus text exposition format.
+    public String scrape() {
+        return snapshot().toText();
+    }
+
+    private static String key(String name, String... labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be name/value pairs");
+        if (labels.length == 0) return name;
+        StringBuilder key = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) key.append(',');
+            key.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return key.append('}').toString();
+    }
+}
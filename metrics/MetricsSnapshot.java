@@ -0,0 +1,84 @@
+package metrics;
+
+import java.util.Map;
+
+// Values of every registered metric at one moment, keyed by name plus labels, e.g. otp_sent_total{channel="email"}.
+public final class MetricsSnapshot {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    MetricsSnapshot(Map<String, Long> counters, Map<String, Long> gauges, Map<String, HistogramSnapshot> histograms) {
+        this.counters = counters;
+        this.gauges = gauges;
+        this.histograms = histograms;
+    }
+
+    public Map<String, Long> getCounters() { return counters; }
+    public Map<String, Long> getGauges() { return gauges; }
+    public Map<String, HistogramSnapshot> getHistograms() { return histograms; }
+
+    public long getCounter(String key) {
+        return counters.getOrDefault(key, 0L);
+    }
+
+    public HistogramSnapshot getHistogram(String key) {
+        return histograms.get(key);
+    }
+
+    // Histograms are exposed as summaries: quantiles plus _sum and _count, in seconds.
+    public String toText() {
+        StringBuilder out = new StringBuilder();
+        String type = null;
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            type = typeLine(out, type, entry.getKey(), "counter");
+            out.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        type = null;
+        for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+            type = typeLine(out, type, entry.getKey(), "gauge");
+            out.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        type = null;
+        for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+            type = typeLine(out, type, entry.getKey(), "summary");
+            String key = entry.getKey();
+            HistogramSnapshot histogram = entry.getValue();
+            for (double quantile : QUANTILES) {
+                out.append(withLabel(key, "quantile=\"" + quantile + "\"")).append(' ')
+                        .append(seconds(histogram.getPercentile(quantile * 100))).append('\n');
+            }
+            out.append(suffixed(key, "_sum")).append(' ').append(seconds(histogram.getSum())).append('\n');
+            out.append(suffixed(key, "_count")).append(' ').append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // One TYPE line per metric name, however many label sets it has; keys are sorted so they are adjacent.
+    private static String typeLine(StringBuilder out, String previous, String key, String type) {
+        String name = nameOf(key);
+        if (!name.equals(previous)) out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return name;
+    }
+
+    private static String nameOf(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static String withLabel(String key, String label) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key + "{" + label + "}" : key.substring(0, key.length() - 1) + "," + label + "}";
+    }
+
+    private static String suffixed(String key, String suffix) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key + suffix : key.substring(0, brace) + suffix + key.substring(brace);
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
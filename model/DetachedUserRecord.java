@@ -0,0 +1,24 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+// Plain fields for a User that has not been registered yet. There is only one record, so ids are ignored.
+final class DetachedUserRecord implements UserRecords {
+    private static final AtomicIntegerFieldUpdater<DetachedUserRecord> LOGIN_ATTEMPTS =
+            AtomicIntegerFieldUpdater.newUpdater(DetachedUserRecord.class, "loginAttempts");
+
+    private final String[] strings = {null, null, null, null, null, "", ""};
+    private UserStatus status;
+    private OTPChannel preferredChannel = OTPChannel.MOBILE;
+    private volatile int loginAttempts;
+
+    @Override public String getString(int id, int field) { return strings[field]; }
+    @Override public void setString(int id, int field, String value) { strings[field] = value; }
+    @Override public UserStatus getStatus(int id) { return status; }
+    @Override public void setStatus(int id, UserStatus status) { this.status = status; }
+    @Override public OTPChannel getPreferredChannel(int id) { return preferredChannel; }
+    @Override public void setPreferredChannel(int id, OTPChannel channel) { this.preferredChannel = channel; }
+    @Override public int getLoginAttempts(int id) { return loginAttempts; }
+    @Override public int incrementLoginAttempts(int id) { return LOGIN_ATTEMPTS.incrementAndGet(this); }
+    @Override public void resetLoginAttempts(int id) { loginAttempts = 0; }
+}
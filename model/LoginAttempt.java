@@ -1,19 +1,26 @@
 package model;
 
+import util.Clock;
+
 import java.time.LocalDateTime;
 
 public class LoginAttempt {
     private String username;
-    private LocalDateTime timestamp;
+    private long timestampMillis;
     private boolean success;
 
     public LoginAttempt(String username, boolean success) {
+        this(username, Clock.cached().currentTimeMillis(), success);
+    }
+
+    public LoginAttempt(String username, long timestampMillis, boolean success) {
         this.username = username;
-        this.timestamp = LocalDateTime.now();
+        this.timestampMillis = timestampMillis;
         this.success = success;
     }
 
     public String getUsername() { return username; }
-    public LocalDateTime getTimestamp() { return timestamp; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public LocalDateTime getTimestamp() { return Clock.toLocalDateTime(timestampMillis); }
     public boolean isSuccess() { return success; }
 }
@@ -0,0 +1,21 @@
+package model;
+
+public enum OTPChannel {
+    MOBILE("mobile"), EMAIL("email");
+
+    private final String name;
+
+    OTPChannel(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Accepts a channel name or a raw contact; anything that looks like an email address means EMAIL.
+    public static OTPChannel of(String value) {
+        if (value != null && (value.equalsIgnoreCase("email") || value.indexOf('@') >= 0)) return EMAIL;
+        return MOBILE;
+    }
+}
@@ -1,58 +1,69 @@
 package model;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
-
+// A customer. Registered users are lightweight views (a storage reference and an id) over the
+// repository's packed columns; a new User() holds its own fields until it is registered. A view is a
+// small object of its own, so every lookup that finds a user allocates one.
 public class User {
-    private String username;
-    private String password;
-    private String displayName;
-    private String accountNumber;
-    private String nic;
-    private String status;
-    private String mobile = "";
-    private String email = "";
-    private LocalDateTime lockExpiry;
-    private String preferredOTPChannel = "Mobile";
-    private int loginAttempts = 0;
-    private LocalDateTime lockedUntil;
-    private Map<String, Double> accounts = new HashMap<>();
-    private Map<String, Double> loans = new HashMap<>();
-    private Map<String, Double> creditCards = new HashMap<>();
-
-    public String getUsername() { return username; }
-    public void setUsername(String username) { this.username = username; }
-    public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
-    public String getDisplayName() { return displayName; }
-    public void setDisplayName(String displayName) { this.displayName = displayName; }
-    public String getAccountNumber() { return accountNumber; }
-    public void setAccountNumber(String accountNumber) { this.accountNumber = accountNumber; }
-    public String getNic() { return nic; }
-    public void setNic(String nic) { this.nic = nic; }
-    public String getStatus() { return status; }
-    public void setStatus(String status) { this.status = status; }
-    public String getMobile() { return mobile; }
-    public void setMobile(String mobile) { this.mobile = mobile; }
-    public String getEmail() { return email; }
-    public void setEmail(String email) { this.email = email; }
-    public LocalDateTime getLockExpiry() { return lockExpiry; }
-    public void setLockExpiry(LocalDateTime lockExpiry) { this.lockExpiry = lockExpiry; }
-    public String getPreferredOTPChannel() { return preferredOTPChannel; }
-    public void setPreferredOTPChannel(String channel) { this.preferredOTPChannel = channel; }
-    public int getLoginAttempts() { return loginAttempts; }
-    public void resetLoginAttempts() { this.loginAttempts = 0; }
-    public void incrementLoginAttempts() { this.loginAttempts++; }
-    public LocalDateTime getLockedUntil() { return lockedUntil; }
-    public void setLockedUntil(LocalDateTime lockedUntil) { this.lockedUntil = lockedUntil; }
-    public void initializeSampleData() {
-        accounts.put("Savings", 15000.0);
-        loans.put("Personal Loan", 5000.0);
-        creditCards.put("Visa Platinum", 2500.0);
+    private UserRecords records;
+    private int id;
+
+    public User() {
+        this.records = new DetachedUserRecord();
+    }
+
+    private User(UserRecords records, int id) {
+        this.records = records;
+        this.id = id;
     }
 
-    public Map<String, Double> getAccounts() { return accounts; }
-    public Map<String, Double> getLoans() { return loans; }
-    public Map<String, Double> getCreditCards() { return creditCards; }
+    // For the repository: a view of a stored record.
+    public static User view(UserRecords records, int id) {
+        return new User(records, id);
+    }
+
+    // For the repository: moves this user onto stored columns once its fields have been copied there.
+    public void attach(UserRecords records, int id) {
+        if (isAttached()) throw new IllegalStateException("User is already registered");
+        this.records = records;
+        this.id = id;
+    }
+
+    public boolean isAttached() { return !(records instanceof DetachedUserRecord); }
+    public UserRecords getRecords() { return records; }
+    public int getId() { return id; }
+
+    public String getUsername() { return records.getString(id, UserRecords.USERNAME); }
+    public void setUsername(String username) { records.setString(id, UserRecords.USERNAME, username); }
+    public String getPassword() { return records.getString(id, UserRecords.PASSWORD); }
+    public void setPassword(String password) { records.setString(id, UserRecords.PASSWORD, password); }
+    public String getDisplayName() { return records.getString(id, UserRecords.DISPLAY_NAME); }
+    public void setDisplayName(String displayName) { records.setString(id, UserRecords.DISPLAY_NAME, displayName); }
+    public String getAccountNumber() { return records.getString(id, UserRecords.ACCOUNT_NUMBER); }
+    public void setAccountNumber(String accountNumber) { records.setString(id, UserRecords.ACCOUNT_NUMBER, accountNumber); }
+    public String getNic() { return records.getString(id, UserRecords.NIC); }
+    public void setNic(String nic) { records.setString(id, UserRecords.NIC, nic); }
+    public UserStatus getStatus() { return records.getStatus(id); }
+    public void setStatus(UserStatus status) { records.setStatus(id, status); }
+    public String getMobile() { return records.getString(id, UserRecords.MOBILE); }
+    public void setMobile(String mobile) { records.setString(id, UserRecords.MOBILE, mobile); }
+    public String getEmail() { return records.getString(id, UserRecords.EMAIL); }
+    public void setEmail(String email) { records.setString(id, UserRecords.EMAIL, email); }
+    public OTPChannel getPreferredChannel() { return records.getPreferredChannel(id); }
+    public String getPreferredOTPChannel() { return records.getPreferredChannel(id).getName(); }
+    // Also accepts a raw mobile number or email address and keeps the matching channel.
+    public void setPreferredOTPChannel(String channel) { records.setPreferredChannel(id, OTPChannel.of(channel)); }
+    public int getLoginAttempts() { return records.getLoginAttempts(id); }
+    public void resetLoginAttempts() { records.resetLoginAttempts(id); }
+    public int incrementLoginAttempts() { return records.incrementLoginAttempts(id); }
+
+    // Two views of the same stored record are the same user.
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof User && ((User) other).records == records && ((User) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(records) * 31 + id;
+    }
 }
@@ -0,0 +1,24 @@
+package model;
+
+// Storage behind User views. A User created with new User() keeps its own record until the repository
+// registers it; from then on it reads and writes the repository's columns under the id it was given.
+public interface UserRecords {
+    int USERNAME = 0;
+    int NIC = 1;
+    int ACCOUNT_NUMBER = 2;
+    int PASSWORD = 3;
+    int DISPLAY_NAME = 4;
+    int MOBILE = 5;
+    int EMAIL = 6;
+    int STRING_FIELDS = 7;
+
+    String getString(int id, int field);
+    void setString(int id, int field, String value);
+    UserStatus getStatus(int id);
+    void setStatus(int id, UserStatus status);
+    OTPChannel getPreferredChannel(int id);
+    void setPreferredChannel(int id, OTPChannel channel);
+    int getLoginAttempts(int id);
+    int incrementLoginAttempts(int id);
+    void resetLoginAttempts(int id);
+}
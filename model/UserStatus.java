@@ -0,0 +1,3 @@
+package model;
+
+public enum UserStatus { INITIATED, ACTIVE }
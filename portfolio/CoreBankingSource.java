@@ -0,0 +1,7 @@
+package portfolio;
+
+// The core-banking system that owns customers' products. Calls may be slow or remote, so results are
+// cached by PortfolioCache and only fetched again after invalidation or eviction.
+public interface CoreBankingSource {
+    Portfolio loadPortfolio(String accountNumber) throws Exception;
+}
@@ -0,0 +1,45 @@
+package portfolio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The dashboard for one customer, rendered once when the portfolio is loaded and reused until invalidated.
+public final class DashboardSnapshot {
+    private final Portfolio portfolio;
+    private final List<String> lines;
+    private final long loadedAtMillis;
+
+    public DashboardSnapshot(Portfolio portfolio, long loadedAtMillis) {
+        this.portfolio = portfolio;
+        this.loadedAtMillis = loadedAtMillis;
+        List<String> rendered = new ArrayList<>();
+        rendered.add("\n=== Financial Dashboard ===");
+        rendered.add("Account Balances:");
+        render(rendered, Portfolio.Kind.ACCOUNT, "");
+        rendered.add("\nActive Loans:");
+        render(rendered, Portfolio.Kind.LOAN, "");
+        rendered.add("\nCredit Cards:");
+        render(rendered, Portfolio.Kind.CREDIT_CARD, " available");
+        this.lines = Collections.unmodifiableList(rendered);
+    }
+
+    public Portfolio getPortfolio() { return portfolio; }
+    public List<String> getLines() { return lines; }
+    public long getLoadedAtMillis() { return loadedAtMillis; }
+
+    private void render(List<String> out, Portfolio.Kind kind, String suffix) {
+        for (int i = 0; i < portfolio.size(); i++) {
+            if (portfolio.getKind(i) == kind) {
+                out.add("- " + portfolio.getName(i) + ": $" + formatCents(portfolio.getAmountCents(i)) + suffix);
+            }
+        }
+    }
+
+    static String formatCents(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return sign + abs / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+}
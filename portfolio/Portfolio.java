@@ -0,0 +1,58 @@
+package portfolio;
+
+import java.util.Arrays;
+
+// A customer's products as parallel primitive columns: one name and one amount in cents per product,
+// grouped by kind. Immutable once built.
+public final class Portfolio {
+    public enum Kind { ACCOUNT, LOAN, CREDIT_CARD }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final String[] names;
+    private final long[] amountCents;
+    private final byte[] kinds;
+
+    private Portfolio(String[] names, long[] amountCents, byte[] kinds) {
+        this.names = names;
+        this.amountCents = amountCents;
+        this.kinds = kinds;
+    }
+
+    public int size() { return names.length; }
+    public String getName(int index) { return names[index]; }
+    public long getAmountCents(int index) { return amountCents[index]; }
+    public Kind getKind(int index) { return KINDS[kinds[index]]; }
+
+    public long totalCents(Kind kind) {
+        long total = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] == kind.ordinal()) total += amountCents[i];
+        }
+        return total;
+    }
+
+    public static final class Builder {
+        private String[] names = new String[4];
+        private long[] amountCents = new long[4];
+        private byte[] kinds = new byte[4];
+        private int size;
+
+        public Builder add(Kind kind, String name, long cents) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                amountCents = Arrays.copyOf(amountCents, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+            }
+            names[size] = name;
+            amountCents[size] = cents;
+            kinds[size] = (byte) kind.ordinal();
+            size++;
+            return this;
+        }
+
+        public Portfolio build() {
+            return new Portfolio(Arrays.copyOf(names, size), Arrays.copyOf(amountCents, size), Arrays.copyOf(kinds, size));
+        }
+    }
+}
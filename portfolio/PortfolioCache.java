@@ -0,0 +1,111 @@
+package portfolio;
+
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import util.Clock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Size-bounded cache of dashboard snapshots keyed by username. Entries are spread over 16 segments, each an
+// access-ordered LinkedHashMap holding capacity / 16 entries that evicts its least recently used entry once
+// full, so one lock never covers the whole cache. Misses call the core-banking source outside any lock.
+public class PortfolioCache {
+    private static final int SEGMENTS = 16;
+
+    private final CoreBankingSource source;
+    private final Clock clock;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Counter hits;
+    private final Counter misses;
+
+    private static final class Segment extends LinkedHashMap<String, DashboardSnapshot> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        // Bumped by every invalidation, so a load that raced with one does not re-cache stale data.
+        private long generation;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DashboardSnapshot> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    public PortfolioCache(CoreBankingSource source, int capacity, Clock clock) {
+        this(source, capacity, clock, MetricsRegistry.getInstance());
+    }
+
+    public PortfolioCache(CoreBankingSource source, int capacity, Clock clock, MetricsRegistry metrics) {
+        if (capacity < SEGMENTS) throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS);
+        this.source = source;
+        this.clock = clock;
+        this.hits = metrics.counter("portfolio_cache_total", "result", "hit");
+        this.misses = metrics.counter("portfolio_cache_total", "result", "miss");
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(capacity / SEGMENTS);
+    }
+
+    public DashboardSnapshot get(String username, String accountNumber) {
+        Segment segment = segmentFor(username);
+        long generation;
+        synchronized (segment) {
+            DashboardSnapshot cached = segment.get(username);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            generation = segment.generation;
+        }
+
+        misses.increment();
+        Portfolio portfolio;
+        try {
+            portfolio = source.loadPortfolio(accountNumber);
+        } catch (Exception e) {
+            throw new IllegalStateException("Core banking unavailable: " + e.getMessage(), e);
+        }
+        DashboardSnapshot snapshot = new DashboardSnapshot(portfolio, clock.currentTimeMillis());
+        synchronized (segment) {
+            if (segment.generation == generation) segment.put(username, snapshot);
+        }
+        return snapshot;
+    }
+
+    // Call when the customer's products change, e.g. after a payment or a new account.
+    public void invalidate(String username) {
+        Segment segment = segmentFor(username);
+        synchronized (segment) {
+            segment.remove(username);
+            segment.generation++;
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.generation++;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String username) {
+        int h = username.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+}
@@ -0,0 +1,29 @@
+package portfolio;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Stands in for the core-banking system: every customer holds the same sample products, returned after
+// a simulated round trip.
+public class StubCoreBankingSource implements CoreBankingSource {
+    private final long latencyMillis;
+    private final LongAdder calls = new LongAdder();
+
+    public StubCoreBankingSource(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Portfolio loadPortfolio(String accountNumber) throws InterruptedException {
+        calls.increment();
+        if (latencyMillis > 0) Thread.sleep(latencyMillis);
+        return new Portfolio.Builder()
+                .add(Portfolio.Kind.ACCOUNT, "Savings", 1_500_000)
+                .add(Portfolio.Kind.LOAN, "Personal Loan", 500_000)
+                .add(Portfolio.Kind.CREDIT_CARD, "Visa Platinum", 250_000)
+                .build();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+}
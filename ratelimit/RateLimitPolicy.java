@@ -0,0 +1,19 @@
+package ratelimit;
+
+// At most `limit` attempts per key within any sliding window of `windowMillis`.
+public class RateLimitPolicy {
+    private final int limit;
+    private final long windowMillis;
+
+    public RateLimitPolicy(int limit, long windowMillis) {
+        if (limit <= 0 || limit > SlidingWindowRateLimiter.MAX_COUNT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + SlidingWindowRateLimiter.MAX_COUNT);
+        }
+        if (windowMillis <= 0) throw new IllegalArgumentException("Window must be positive");
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+    }
+
+    public int getLimit() { return limit; }
+    public long getWindowMillis() { return windowMillis; }
+}
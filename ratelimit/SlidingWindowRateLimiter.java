@@ -0,0 +1,150 @@
+package ratelimit;
+
+import config.AppConfig;
+import util.Clock;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Sliding-window attempt limiter keyed by username, NIC or request source. Password and login OTP
+// attempts against a username have separate budgets, so a customer who logs in successfully spends one
+// attempt of each rather than two of one. Each key's state is one
+// packed long updated by CAS: [window index:32][previous window count:16][current window count:16].
+// The sliding count is the current window plus the overlapping share of the previous one.
+//
+// Each dimension tracks at most maxKeysPerDimension keys exactly. Beyond that budget, new keys share a
+// fixed table of hashed counters: collisions can only over-count, so a flood of distinct keys costs no
+// extra memory and still cannot slip past a limit.
+public class SlidingWindowRateLimiter {
+    public enum Dimension { USERNAME, OTP, NIC, SOURCE }
+
+    static final int MAX_COUNT = 0xFFFF;
+    private static final int OVERFLOW_SLOTS = 1 << 16;
+
+    private volatile Map<Dimension, RateLimitPolicy> policies = new EnumMap<>(Dimension.class);
+    private final Map<Dimension, Map<String, AtomicLong>> counters = new EnumMap<>(Dimension.class);
+    private final Map<Dimension, AtomicLongArray> overflow = new EnumMap<>(Dimension.class);
+    private final int maxKeysPerDimension;
+    private final Clock clock;
+    private volatile long lastEvictionMillis;
+
+    public SlidingWindowRateLimiter() {
+        this(AppConfig.RATE_LIMIT_MAX_KEYS, Clock.cached());
+        setPolicy(Dimension.USERNAME, new RateLimitPolicy(AppConfig.LOGIN_ATTEMPTS_PER_WINDOW, AppConfig.RATE_LIMIT_WINDOW_MILLIS));
+        setPolicy(Dimension.OTP, new RateLimitPolicy(AppConfig.OTP_VALIDATIONS_PER_WINDOW, AppConfig.RATE_LIMIT_WINDOW_MILLIS));
+        setPolicy(Dimension.NIC, new RateLimitPolicy(AppConfig.OTP_VALIDATIONS_PER_WINDOW, AppConfig.RATE_LIMIT_WINDOW_MILLIS));
+        setPolicy(Dimension.SOURCE, new RateLimitPolicy(AppConfig.SOURCE_ATTEMPTS_PER_WINDOW, AppConfig.RATE_LIMIT_WINDOW_MILLIS));
+    }
+
+    public SlidingWindowRateLimiter(int maxKeysPerDimension) {
+        this(maxKeysPerDimension, Clock.cached());
+    }
+
+    public SlidingWindowRateLimiter(int maxKeysPerDimension, Clock clock) {
+        this.maxKeysPerDimension = maxKeysPerDimension;
+        this.clock = clock;
+        for (Dimension dimension : Dimension.values()) {
+            counters.put(dimension, new ConcurrentHashMap<>());
+            overflow.put(dimension, new AtomicLongArray(OVERFLOW_SLOTS));
+        }
+    }
+
+    // Dimensions without a policy are not limited.
+    public synchronized void setPolicy(Dimension dimension, RateLimitPolicy policy) {
+        Map<Dimension, RateLimitPolicy> updated = new EnumMap<>(policies);
+        updated.put(dimension, policy);
+        policies = updated;
+    }
+
+    // Records an attempt and returns true, or returns false without recording if the key is over its limit.
+    public boolean tryAcquire(Dimension dimension, String key) {
+        RateLimitPolicy policy = policies.get(dimension);
+        if (policy == null || key == null) return true;
+
+        long now = clock.currentTimeMillis();
+        AtomicLong counter = counters.get(dimension).get(key);
+        if (counter == null) counter = counterFor(dimension, key, now, policy);
+        if (counter != null) {
+            while (true) {
+                long state = counter.get();
+                long next = acquire(state, now, policy);
+                if (next == state) return false;
+                if (counter.compareAndSet(state, next)) return true;
+            }
+        }
+
+        AtomicLongArray slots = overflow.get(dimension);
+        int slot = spread(key.hashCode()) & (OVERFLOW_SLOTS - 1);
+        while (true) {
+            long state = slots.get(slot);
+            long next = acquire(state, now, policy);
+            if (next == state) return false;
+            if (slots.compareAndSet(slot, state, next)) return true;
+        }
+    }
+
+    public void reset(Dimension dimension, String key) {
+        counters.get(dimension).remove(key);
+    }
+
+    public int trackedKeys(Dimension dimension) {
+        return counters.get(dimension).size();
+    }
+
+    // Drops keys whose windows have fully slid past, so they no longer count against the key budget.
+    public void evictIdle() {
+        long now = clock.currentTimeMillis();
+        for (Dimension dimension : Dimension.values()) {
+            RateLimitPolicy policy = policies.get(dimension);
+            if (policy == null) continue;
+            long currentWindow = now / policy.getWindowMillis();
+            counters.get(dimension).values().removeIf(counter -> windowOf(counter.get()) < ((currentWindow - 1) & 0xFFFFFFFFL));
+        }
+    }
+
+    private AtomicLong counterFor(Dimension dimension, String key, long now, RateLimitPolicy policy) {
+        Map<String, AtomicLong> keys = counters.get(dimension);
+        if (keys.size() >= maxKeysPerDimension) {
+            // Sweeping is O(keys); while the budget stays exhausted, sweep at most once a second.
+            if (now - lastEvictionMillis >= 1_000) {
+                lastEvictionMillis = now;
+                evictIdle();
+            }
+            if (keys.size() >= maxKeysPerDimension) return null;
+        }
+        return keys.computeIfAbsent(key, k -> new AtomicLong(pack(now / policy.getWindowMillis(), 0, 0)));
+    }
+
+    // Returns the state after one more attempt, or the same state if the attempt must be refused.
+    private static long acquire(long state, long now, RateLimitPolicy policy) {
+        long window = now / policy.getWindowMillis();
+        long storedWindow = windowOf(state);
+        int previous = (int) (state >>> 16) & MAX_COUNT;
+        int current = (int) state & MAX_COUNT;
+
+        long windowIndex = window & 0xFFFFFFFFL;
+        if (storedWindow != windowIndex) {
+            previous = storedWindow == ((window - 1) & 0xFFFFFFFFL) ? current : 0;
+            current = 0;
+        }
+        long elapsedInWindow = now - window * policy.getWindowMillis();
+        double weight = (double) (policy.getWindowMillis() - elapsedInWindow) / policy.getWindowMillis();
+        if (previous * weight + current >= policy.getLimit()) return state;
+        return pack(window, previous, current + 1);
+    }
+
+    private static long pack(long window, int previous, int current) {
+        return ((window & 0xFFFFFFFFL) << 32) | ((long) previous << 16) | current;
+    }
+
+    private static long windowOf(long state) {
+        return state >>> 32;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,147 @@
+package repository;
+
+import util.CaseFolding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Open-addressing hash index from one string column of UserColumns to user ids. The table holds only
+// ints (id + 1, 0 for empty); keys are compared against the packed column, so there are no per-entry
+// objects and no key copies. Lookups take no locks. Inserts claim a slot with CAS and may run
+// concurrently. Over a unique column the caller guarantees a key is inserted once; over a column such as
+// a mobile number several ids may share a key, and findFirst picks among them. Growing the table blocks
+// inserts only.
+// Removed entries leave a tombstone that lookups probe past and the next insert along the same probe run
+// reuses. When occupied slots pass half the table it is rebuilt without tombstones: at twice the size if
+// live entries need it, otherwise at the same size, so remove/insert churn does not grow the table.
+final class ColumnIndex {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int TOMBSTONE = -1;
+
+    private final UserColumns columns;
+    private final int field;
+    private final boolean ignoreCase;
+    // Live entries, and occupied slots (live entries plus tombstones). Both change under the read side of
+    // resizeLock, so a rebuild, which holds the write side, sees them settled.
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger usedSlots = new AtomicInteger();
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private volatile int[] table = new int[1 << 10];
+
+    ColumnIndex(UserColumns columns, int field, boolean ignoreCase) {
+        this.columns = columns;
+        this.field = field;
+        this.ignoreCase = ignoreCase;
+    }
+
+    // Hash of a key as this index sees it; matches UserColumns.hash for the stored value.
+    static int hash(String key, boolean ignoreCase) {
+        return ignoreCase ? CaseFolding.hash(key) : key.hashCode();
+    }
+
+    // Returns the id stored under key, or -1.
+    int find(String key) {
+        int[] slots = table;
+        int mask = slots.length - 1;
+        for (int i = spread(hash(key, ignoreCase)) & mask; ; i = (i + 1) & mask) {
+            int entry = (int) SLOTS.getAcquire(slots, i);
+            if (entry == 0) return -1;
+            if (entry != TOMBSTONE && columns.matches(entry - 1, field, key, ignoreCase)) return entry - 1;
+        }
+    }
+
+    // Returns the lowest id stored under key, or -1. Walks the whole probe run, since equal keys need not
+    // sit in id order.
+    int findFirst(String key) {
+        int[] slots = table;
+        int mask = slots.length - 1;
+        int first = -1;
+        for (int i = spread(hash(key, ignoreCase)) & mask; ; i = (i + 1) & mask) {
+            int entry = (int) SLOTS.getAcquire(slots, i);
+            if (entry == 0) return first;
+            int id = entry - 1;
+            if (entry != TOMBSTONE && (first < 0 || id < first) && columns.matches(id, field, key, ignoreCase)) first = id;
+        }
+    }
+
+    void insert(int id) {
+        int h = spread(columns.hash(id, field, ignoreCase));
+        int used;
+        resizeLock.readLock().lock();
+        try {
+            int[] slots = table;
+            int mask = slots.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                int entry = (int) SLOTS.getAcquire(slots, i);
+                if (entry != 0 && entry != TOMBSTONE) continue;
+                if (SLOTS.compareAndSet(slots, i, entry, id + 1)) {
+                    used = entry == 0 ? usedSlots.incrementAndGet() : usedSlots.get();
+                    size.incrementAndGet();
+                    break;
+                }
+                // Lost the slot to a concurrent insert; look at it again, it may have been a tombstone.
+                i = (i - 1) & mask;
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+        // Kept at most half occupied so probe sequences stay short.
+        if (used * 2 > table.length) rebuild();
+    }
+
+    void remove(int id) {
+        int h = spread(columns.hash(id, field, ignoreCase));
+        resizeLock.readLock().lock();
+        try {
+            int[] slots = table;
+            int mask = slots.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                int entry = (int) SLOTS.getAcquire(slots, i);
+                if (entry == 0) return;
+                if (entry == id + 1 && SLOTS.compareAndSet(slots, i, entry, TOMBSTONE)) {
+                    size.decrementAndGet();
+                    return;
+                }
+            }
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    // Live entries.
+    int size() {
+        return size.get();
+    }
+
+    // Doubles the table while live entries fill more than a quarter of it; below that the tombstones make
+    // up at least half of the occupied slots, and dropping them at the same size frees as much room.
+    private void rebuild() {
+        resizeLock.writeLock().lock();
+        try {
+            int[] old = table;
+            if (usedSlots.get() * 2 <= old.length) return;
+            int[] rebuilt = new int[size.get() * 4 > old.length ? old.length * 2 : old.length];
+            int mask = rebuilt.length - 1;
+            int live = 0;
+            for (int entry : old) {
+                if (entry == 0 || entry == TOMBSTONE) continue;
+                int i = spread(columns.hash(entry - 1, field, ignoreCase)) & mask;
+                while (rebuilt[i] != 0) i = (i + 1) & mask;
+                rebuilt[i] = entry;
+                live++;
+            }
+            size.set(live);
+            usedSlots.set(live);
+            table = rebuilt;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,246 @@
+package repository;
+
+import config.AppConfig;
+import util.Clock;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One-time codes keyed by user. Lookups go straight to the map; expiry is driven by a hierarchical
+// timer wheel so each entry is scheduled, cascaded and evicted in O(1) without scanning the map.
+// Advancing the wheel skips straight past ticks where no slot fires, so the first call after an idle
+// hour costs no more than one after a busy second. One daemon thread expires every store each
+// CODE_STORE_SWEEP_SECONDS, so codes leave memory even while no new ones are issued; it holds stores
+// weakly and stops sweeping one that is no longer referenced.
+public class ExpiringCodeStore implements OTPStore {
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "code-store-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Entry[][] wheel = new Entry[LEVELS][WHEEL_SIZE];
+    private final Clock clock;
+    private final long tickMillis;
+    private final int maxAttempts;
+    private long currentTick;
+
+    private static final class Entry {
+        final String key;
+        final String code;
+        final long expiresAt;
+        final long expiryTick;
+        final AtomicInteger failedAttempts = new AtomicInteger();
+        Entry previous;
+        Entry next;
+        int level = -1;
+        int slot;
+
+        Entry(String key, String code, long expiresAt, long expiryTick) {
+            this.key = key;
+            this.code = code;
+            this.expiresAt = expiresAt;
+            this.expiryTick = expiryTick;
+        }
+    }
+
+    public ExpiringCodeStore() {
+        this(Clock.cached(), 100);
+    }
+
+    public ExpiringCodeStore(Clock clock) {
+        this(clock, 100);
+    }
+
+    public ExpiringCodeStore(Clock clock, long tickMillis) {
+        this(clock, tickMillis, Integer.MAX_VALUE);
+    }
+
+    public ExpiringCodeStore(Clock clock, long tickMillis, int maxAttempts) {
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.maxAttempts = maxAttempts;
+        this.currentTick = clock.currentTimeMillis() / tickMillis;
+        scheduleSweep(this);
+    }
+
+    // Static, so the scheduled task refers to the store only through the weak reference.
+    private static void scheduleSweep(ExpiringCodeStore store) {
+        WeakReference<ExpiringCodeStore> target = new WeakReference<>(store);
+        ScheduledFuture<?>[] task = new ScheduledFuture<?>[1];
+        synchronized (task) {
+            task[0] = SWEEPER.scheduleWithFixedDelay(() -> {
+                ExpiringCodeStore live = target.get();
+                if (live != null) {
+                    live.expire();
+                    return;
+                }
+                synchronized (task) {
+                    task[0].cancel(false);
+                }
+            }, AppConfig.CODE_STORE_SWEEP_SECONDS, AppConfig.CODE_STORE_SWEEP_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void put(String key, String code, long ttlMillis) {
+        long now = clock.currentTimeMillis();
+        long expiresAt = now + ttlMillis;
+        Entry entry = new Entry(key, code, expiresAt, (expiresAt + tickMillis - 1) / tickMillis);
+        synchronized (wheel) {
+            advance(now);
+            Entry replaced = entries.put(key, entry);
+            if (replaced != null) unlink(replaced);
+            schedule(entry);
+        }
+    }
+
+    @Override
+    public boolean matches(String key, String code) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.code.equals(code);
+    }
+
+    @Override
+    public boolean isExpired(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || clock.currentTimeMillis() > entry.expiresAt;
+    }
+
+    @Override
+    public boolean consume(String key, String code) {
+        Entry entry = entries.get(key);
+        if (entry == null || clock.currentTimeMillis() > entry.expiresAt) return false;
+        if (!entry.code.equals(code)) {
+            if (entry.failedAttempts.incrementAndGet() >= maxAttempts) discard(key, entry);
+            return false;
+        }
+        return discard(key, entry);
+    }
+
+    @Override
+    public int getFailedAttempts(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.failedAttempts.get();
+    }
+
+    @Override
+    public void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) return;
+        synchronized (wheel) {
+            unlink(entry);
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void expire() {
+        synchronized (wheel) {
+            advance(clock.currentTimeMillis());
+        }
+    }
+
+    private boolean discard(String key, Entry entry) {
+        if (!entries.remove(key, entry)) return false;
+        synchronized (wheel) {
+            unlink(entry);
+        }
+        return true;
+    }
+
+    private void advance(long now) {
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick = nextBusyTick(targetTick);
+            // When a lower level wraps, the next slot of the level above is due: redistribute it.
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) break;
+                int slot = (int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+                Entry e = detach(level, slot);
+                while (e != null) {
+                    Entry next = e.next;
+                    schedule(e);
+                    e = next;
+                }
+            }
+
+            Entry e = detach(0, (int) currentTick & WHEEL_MASK);
+            while (e != null) {
+                Entry next = e.next;
+                if (e.expiryTick <= currentTick) entries.remove(e.key, e);
+                else schedule(e);
+                e = next;
+            }
+        }
+    }
+
+    // The first tick after currentTick, and no later than limit, at which a level 0 slot holds entries
+    // or a non-empty slot of a higher level is due to cascade. Ticks before it would find nothing to do.
+    private long nextBusyTick(long limit) {
+        long next = limit;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            long tick = ((currentTick >>> shift) + 1) << shift;
+            for (int i = 0; i < WHEEL_SIZE && tick < next; i++, tick += 1L << shift) {
+                if (wheel[level][(int) (tick >>> shift) & WHEEL_MASK] != null) {
+                    next = tick;
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    private void schedule(Entry e) {
+        long tick = Math.max(e.expiryTick, currentTick + 1);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) level++;
+        if (level == LEVELS - 1 && delta >= 1L << (WHEEL_BITS * LEVELS)) {
+            // Beyond the wheel's horizon: park in the furthest slot and cascade again later.
+            tick = currentTick + (1L << (WHEEL_BITS * LEVELS)) - 1;
+        }
+        int slot = (int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+
+        e.level = level;
+        e.slot = slot;
+        e.previous = null;
+        e.next = wheel[level][slot];
+        if (e.next != null) e.next.previous = e;
+        wheel[level][slot] = e;
+    }
+
+    private void unlink(Entry e) {
+        if (e.level < 0) return;
+        if (e.previous != null) e.previous.next = e.next;
+        else wheel[e.level][e.slot] = e.next;
+        if (e.next != null) e.next.previous = e.previous;
+        e.previous = null;
+        e.next = null;
+        e.level = -1;
+    }
+
+    private Entry detach(int level, int slot) {
+        Entry head = wheel[level][slot];
+        wheel[level][slot] = null;
+        for (Entry e = head; e != null; e = e.next) e.level = -1;
+        return head;
+    }
+}
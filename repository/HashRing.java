@@ -0,0 +1,46 @@
+package repository;
+
+import java.util.Arrays;
+
+// Consistent-hash ring over shard numbers. Each shard owns VIRTUAL_NODES points derived only from its
+// own number, and a username belongs to the first point at or after its hash, so going from N to N + 1
+// shards moves roughly 1 / (N + 1) of the users and leaves the rest where they are. Usernames hash
+// case-insensitively, the same way the username index compares them.
+final class HashRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final int[] points;
+    private final int[] owners;
+
+    HashRing(int shards) {
+        long[] packed = new long[shards * VIRTUAL_NODES];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                int point = mix(shard * VIRTUAL_NODES + node + 1);
+                packed[shard * VIRTUAL_NODES + node] = (long) point << 32 | shard;
+            }
+        }
+        Arrays.sort(packed);
+        points = new int[packed.length];
+        owners = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            points[i] = (int) (packed[i] >> 32);
+            owners[i] = (int) packed[i];
+        }
+    }
+
+    int shardFor(String username) {
+        int i = Arrays.binarySearch(points, mix(ColumnIndex.hash(username, true)));
+        if (i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    // Murmur3 finalizer: spreads the polynomial string hash over the whole ring.
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,191 @@
+package repository;
+
+import model.LoginAttempt;
+import util.CaseFolding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Fixed-capacity ring of login attempts kept as primitive columns. Each slot links to the previous
+// slot of the same user, so per-user queries walk only that user's entries, newest first.
+// Usernames are matched case-insensitively through an open-addressing table of ids, hashed and compared
+// by folding one char at a time, so neither appends nor queries allocate for a known user.
+public class LoginAuditLog {
+    private static final long NONE = -1;
+    // User id of a slot whose entry was forgotten.
+    private static final int FORGOTTEN = -1;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final int[] userIds;
+    private final long[] successBits;
+    private final long[] previousSeqForUser;
+    private long nextSeq = 0;
+
+    // id + 1 per slot, 0 for empty; kept at most half full.
+    private int[] idTable = new int[32];
+    private int idTableSize = 0;
+    private String[] usernames = new String[16];
+    private long[] latestSeqForUser = new long[16];
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+    private int nextId = 0;
+
+    public LoginAuditLog(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.userIds = new int[capacity];
+        this.successBits = new long[(capacity + 63) >>> 6];
+        this.previousSeqForUser = new long[capacity];
+    }
+
+    public synchronized void append(String username, long epochMillis, boolean success) {
+        int userId = idFor(username);
+        int slot = (int) (nextSeq % capacity);
+
+        timestamps[slot] = epochMillis;
+        userIds[slot] = userId;
+        if (success) successBits[slot >>> 6] |= 1L << slot;
+        else successBits[slot >>> 6] &= ~(1L << slot);
+        previousSeqForUser[slot] = latestSeqForUser[userId];
+        latestSeqForUser[userId] = nextSeq;
+        nextSeq++;
+    }
+
+    // Drops the retained entries of username, e.g. once the user has moved to another shard. Their slots stay
+    // in the ring until overwritten, but no query reports them again.
+    public synchronized void forget(String username) {
+        int userId = findId(username);
+        if (userId < 0) return;
+        for (long seq = latestSeqForUser[userId]; seq != NONE && isRetained(seq);
+             seq = previousSeqForUser[(int) (seq % capacity)]) {
+            userIds[(int) (seq % capacity)] = FORGOTTEN;
+        }
+        latestSeqForUser[userId] = NONE;
+    }
+
+    public synchronized List<LoginAttempt> lastAttempts(String username, int limit) {
+        List<LoginAttempt> attempts = new ArrayList<>(Math.min(limit, 16));
+        int userId = findId(username);
+        if (userId < 0) return attempts;
+
+        for (long seq = latestSeqForUser[userId]; seq != NONE && isRetained(seq) && attempts.size() < limit;
+             seq = previousSeqForUser[(int) (seq % capacity)]) {
+            attempts.add(toAttempt((int) (seq % capacity)));
+        }
+        return attempts;
+    }
+
+    public synchronized int countFailuresSince(String username, long sinceEpochMillis) {
+        int userId = findId(username);
+        if (userId < 0) return 0;
+
+        int failures = 0;
+        for (long seq = latestSeqForUser[userId]; seq != NONE && isRetained(seq);
+             seq = previousSeqForUser[(int) (seq % capacity)]) {
+            int slot = (int) (seq % capacity);
+            if (timestamps[slot] < sinceEpochMillis) break;
+            if (!isSuccess(slot)) failures++;
+        }
+        return failures;
+    }
+
+    // Oldest first, at most capacity entries.
+    public synchronized List<LoginAttempt> snapshot() {
+        long first = Math.max(0, nextSeq - capacity);
+        List<LoginAttempt> attempts = new ArrayList<>((int) (nextSeq - first));
+        for (long seq = first; seq < nextSeq; seq++) {
+            int slot = (int) (seq % capacity);
+            if (userIds[slot] != FORGOTTEN) attempts.add(toAttempt(slot));
+        }
+        return attempts;
+    }
+
+    // Slots in use, forgotten entries included.
+    public synchronized int size() {
+        return (int) Math.min(nextSeq, capacity);
+    }
+
+    private boolean isRetained(long seq) {
+        return seq >= nextSeq - capacity;
+    }
+
+    private boolean isSuccess(int slot) {
+        return (successBits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private LoginAttempt toAttempt(int slot) {
+        return new LoginAttempt(usernames[userIds[slot]], timestamps[slot], isSuccess(slot));
+    }
+
+    private int idFor(String username) {
+        int existing = findId(username);
+        if (existing >= 0) return existing;
+
+        // The dictionary only needs to cover users that still have entries in the ring.
+        if (freeCount == 0 && nextId >= 2 * capacity) releaseEvictedUsers();
+
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = nextId++;
+            if (id == usernames.length) {
+                usernames = Arrays.copyOf(usernames, id * 2);
+                latestSeqForUser = Arrays.copyOf(latestSeqForUser, id * 2);
+            }
+        }
+        usernames[id] = CaseFolding.fold(username);
+        latestSeqForUser[id] = NONE;
+        placeId(idTable, id);
+        if (++idTableSize * 2 > idTable.length) rebuildIdTable(idTable.length * 2);
+        return id;
+    }
+
+    private int findId(String username) {
+        int mask = idTable.length - 1;
+        for (int i = spread(CaseFolding.hash(username)) & mask; ; i = (i + 1) & mask) {
+            int entry = idTable[i];
+            if (entry == 0) return -1;
+            if (CaseFolding.equals(usernames[entry - 1], username)) return entry - 1;
+        }
+    }
+
+    // Stored names are folded, so String.hashCode agrees with CaseFolding.hash of any spelling.
+    private void placeId(int[] table, int id) {
+        int mask = table.length - 1;
+        int i = spread(usernames[id].hashCode()) & mask;
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = id + 1;
+    }
+
+    private void rebuildIdTable(int length) {
+        int[] table = new int[length];
+        int live = 0;
+        for (int id = 0; id < nextId; id++) {
+            if (usernames[id] == null) continue;
+            placeId(table, id);
+            live++;
+        }
+        idTable = table;
+        idTableSize = live;
+    }
+
+    private void releaseEvictedUsers() {
+        for (int id = 0; id < nextId; id++) {
+            if (usernames[id] != null && !isRetained(latestSeqForUser[id])) {
+                usernames[id] = null;
+                if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+                freeIds[freeCount++] = id;
+            }
+        }
+        rebuildIdTable(idTable.length);
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,340 @@
+package repository;
+
+import util.Clock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// One-time codes in a memory-mapped file, so every JVM on the host that opens the same file sees the same
+// codes and failed-attempt counts. The file is a fixed hash table: a key hashes to one bucket of
+// SLOTS_PER_BUCKET slots and lives only there. When a bucket is full, a new code replaces the one that
+// expires soonest.
+//
+// Each bucket starts with a 64-bit word that is both its writer lock and a sequence lock for readers:
+// writers CAS it from even to odd, update the slots and release it at the next even value; readers copy
+// what they need and retry if the word was odd or changed meanwhile. A JVM that dies holding a bucket
+// cannot wedge it: a word that stays odd for STALE_LOCK_MILLIS is taken over, by a writer that then
+// holds it or by a reader that releases it at once. A slot is marked empty
+// before its key and code are rewritten and gets its expiry last, so a torn write leaves an empty slot.
+//
+// File layout, native byte order: a HEADER_BYTES header (magic, layout version, bucket count), then the
+// buckets. A bucket is a 64-byte line holding the lock word, then SLOTS_PER_BUCKET 64-byte slots of
+// expiry (0 when empty), failed attempts, key length, code length, the code as Latin-1 bytes and the key
+// as UTF-16 chars. Keys and codes are compared in place, so lookups do not allocate.
+public class MappedOTPStore implements OTPStore, Closeable {
+    private static final int MAGIC = 0x4F545053;
+    private static final int LAYOUT_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOTS_PER_BUCKET = 8;
+    private static final int SLOT_BYTES = 64;
+    private static final int BUCKET_BYTES = 64 + SLOTS_PER_BUCKET * SLOT_BYTES;
+    private static final int EXPIRES_AT = 0;
+    private static final int FAILED_ATTEMPTS = 8;
+    private static final int KEY_LENGTH = 12;
+    private static final int CODE_LENGTH = 13;
+    private static final int CODE = 14;
+    private static final int KEY = 32;
+    private static final int MAX_CODE_LENGTH = KEY - CODE;
+    private static final int MAX_KEY_LENGTH = (SLOT_BYTES - KEY) / 2;
+    private static final long STALE_LOCK_MILLIS = 1_000;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int buckets;
+    private final int maxAttempts;
+    private final Clock clock;
+
+    // Opens the table at file, creating it with the given number of buckets if it does not exist yet.
+    public MappedOTPStore(Path file, int buckets, int maxAttempts, Clock clock) throws IOException {
+        if (buckets < 1) throw new IllegalArgumentException("At least one bucket is required");
+        this.buckets = buckets;
+        this.maxAttempts = maxAttempts;
+        this.clock = clock;
+        long size = HEADER_BYTES + (long) buckets * BUCKET_BYTES;
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many buckets for one mapping");
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // The file lock only serialises initialisation between JVMs; the table itself is lock-free.
+            FileLock initialising = channel.lock();
+            try {
+                boolean created = channel.size() == 0;
+                if (!created && channel.size() != size) {
+                    throw new IOException("OTP store " + file + " was created with a different size");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.nativeOrder());
+                if (created) {
+                    buffer.putInt(4, LAYOUT_VERSION);
+                    buffer.putInt(8, buckets);
+                    buffer.putInt(0, MAGIC);
+                    buffer.force();
+                } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != LAYOUT_VERSION || buffer.getInt(8) != buckets) {
+                    throw new IOException("OTP store " + file + " has an incompatible layout");
+                }
+            } finally {
+                initialising.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(String key, String code, long ttlMillis) {
+        checkKey(key);
+        checkCode(code);
+        long now = clock.currentTimeMillis();
+        int bucket = bucketFor(key);
+        long held = lock(bucket);
+        try {
+            int slot = find(bucket, key);
+            if (slot < 0) slot = victim(bucket, now);
+            int offset = slotOffset(bucket, slot);
+            LONGS.setVolatile(buffer, offset + EXPIRES_AT, 0L);
+            INTS.setVolatile(buffer, offset + FAILED_ATTEMPTS, 0);
+            buffer.put(offset + KEY_LENGTH, (byte) key.length());
+            buffer.put(offset + CODE_LENGTH, (byte) code.length());
+            for (int i = 0; i < code.length(); i++) buffer.put(offset + CODE + i, (byte) code.charAt(i));
+            for (int i = 0; i < key.length(); i++) buffer.putChar(offset + KEY + 2 * i, key.charAt(i));
+            LONGS.setRelease(buffer, offset + EXPIRES_AT, now + ttlMillis);
+        } finally {
+            unlock(bucket, held);
+        }
+    }
+
+    @Override
+    public boolean matches(String key, String code) {
+        checkKey(key);
+        int bucket = bucketFor(key);
+        while (true) {
+            long version = readBegin(bucket);
+            int slot = find(bucket, key);
+            boolean matches = slot >= 0 && codeEquals(slotOffset(bucket, slot), code);
+            if (readValidate(bucket, version)) return matches;
+        }
+    }
+
+    @Override
+    public boolean isExpired(String key) {
+        checkKey(key);
+        int bucket = bucketFor(key);
+        while (true) {
+            long version = readBegin(bucket);
+            int slot = find(bucket, key);
+            long expiresAt = slot < 0 ? 0 : (long) LONGS.getAcquire(buffer, slotOffset(bucket, slot) + EXPIRES_AT);
+            if (readValidate(bucket, version)) return slot < 0 || clock.currentTimeMillis() > expiresAt;
+        }
+    }
+
+    @Override
+    public boolean consume(String key, String code) {
+        checkKey(key);
+        int bucket = bucketFor(key);
+        long held = lock(bucket);
+        try {
+            int slot = find(bucket, key);
+            if (slot < 0) return false;
+            int offset = slotOffset(bucket, slot);
+            if (clock.currentTimeMillis() > (long) LONGS.getAcquire(buffer, offset + EXPIRES_AT)) return false;
+            if (codeEquals(offset, code)) {
+                LONGS.setRelease(buffer, offset + EXPIRES_AT, 0L);
+                return true;
+            }
+            int failed = (int) INTS.getVolatile(buffer, offset + FAILED_ATTEMPTS) + 1;
+            INTS.setRelease(buffer, offset + FAILED_ATTEMPTS, failed);
+            if (failed >= maxAttempts) LONGS.setRelease(buffer, offset + EXPIRES_AT, 0L);
+            return false;
+        } finally {
+            unlock(bucket, held);
+        }
+    }
+
+    @Override
+    public int getFailedAttempts(String key) {
+        checkKey(key);
+        int bucket = bucketFor(key);
+        while (true) {
+            long version = readBegin(bucket);
+            int slot = find(bucket, key);
+            int failed = slot < 0 ? 0 : (int) INTS.getAcquire(buffer, slotOffset(bucket, slot) + FAILED_ATTEMPTS);
+            if (readValidate(bucket, version)) return failed;
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        checkKey(key);
+        int bucket = bucketFor(key);
+        long held = lock(bucket);
+        try {
+            int slot = find(bucket, key);
+            if (slot >= 0) LONGS.setRelease(buffer, slotOffset(bucket, slot) + EXPIRES_AT, 0L);
+        } finally {
+            unlock(bucket, held);
+        }
+    }
+
+    // Live codes across the whole table; a full scan, meant for monitoring rather than the request path.
+    @Override
+    public int size() {
+        long now = clock.currentTimeMillis();
+        int live = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+                if ((long) LONGS.getAcquire(buffer, slotOffset(bucket, slot) + EXPIRES_AT) >= now) live++;
+            }
+        }
+        return live;
+    }
+
+    // Expired slots are reused by put without a sweep; this only clears them so the file holds no stale codes.
+    @Override
+    public void expire() {
+        long now = clock.currentTimeMillis();
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long held = lock(bucket);
+            try {
+                for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+                    int offset = slotOffset(bucket, slot);
+                    long expiresAt = (long) LONGS.getAcquire(buffer, offset + EXPIRES_AT);
+                    if (expiresAt != 0 && expiresAt < now) LONGS.setRelease(buffer, offset + EXPIRES_AT, 0L);
+                }
+            } finally {
+                unlock(bucket, held);
+            }
+        }
+    }
+
+    // The mapping itself stays valid until it is garbage collected; other JVMs are unaffected.
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // Slot holding key, or -1. Empty slots keep their old key bytes, so the expiry is checked first.
+    private int find(int bucket, String key) {
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            int offset = slotOffset(bucket, slot);
+            if ((long) LONGS.getAcquire(buffer, offset + EXPIRES_AT) == 0) continue;
+            if (buffer.get(offset + KEY_LENGTH) != key.length()) continue;
+            boolean equal = true;
+            for (int i = 0; i < key.length() && equal; i++) equal = buffer.getChar(offset + KEY + 2 * i) == key.charAt(i);
+            if (equal) return slot;
+        }
+        return -1;
+    }
+
+    // An empty or expired slot if there is one, otherwise the slot that expires soonest.
+    private int victim(int bucket, long now) {
+        int soonest = 0;
+        long soonestExpiry = Long.MAX_VALUE;
+        for (int slot = 0; slot < SLOTS_PER_BUCKET; slot++) {
+            long expiresAt = (long) LONGS.getAcquire(buffer, slotOffset(bucket, slot) + EXPIRES_AT);
+            if (expiresAt < now) return slot;
+            if (expiresAt < soonestExpiry) {
+                soonest = slot;
+                soonestExpiry = expiresAt;
+            }
+        }
+        return soonest;
+    }
+
+    private boolean codeEquals(int offset, String code) {
+        if (buffer.get(offset + CODE_LENGTH) != code.length()) return false;
+        // Every char is compared so the time taken does not reveal how much of the code was right.
+        int difference = 0;
+        for (int i = 0; i < code.length(); i++) difference |= (buffer.get(offset + CODE + i) & 0xFF) ^ code.charAt(i);
+        return difference == 0;
+    }
+
+    private long lock(int bucket) {
+        int offset = bucketOffset(bucket);
+        long observed = -1;
+        long observedSince = 0;
+        while (true) {
+            long word = (long) LONGS.getVolatile(buffer, offset);
+            if ((word & 1) == 0) {
+                if (LONGS.compareAndSet(buffer, offset, word, word + 1)) return word + 1;
+                continue;
+            }
+            if (word != observed) {
+                observed = word;
+                observedSince = System.nanoTime();
+            } else if (System.nanoTime() - observedSince > STALE_LOCK_MILLIS * 1_000_000) {
+                // The holder has not moved on in that time and is presumed dead: take the bucket over.
+                if (LONGS.compareAndSet(buffer, offset, word, word + 2)) return word + 2;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // A CAS rather than a plain store, so a holder whose lock was taken over cannot release the new owner's.
+    private void unlock(int bucket, long held) {
+        LONGS.compareAndSet(buffer, bucketOffset(bucket), held, held + 1);
+    }
+
+    // Waits out a writer like lock does. A reader that finds a dead holder releases the bucket on its
+    // behalf, rather than waiting for the next writer to take it over; a torn slot reads as empty.
+    private long readBegin(int bucket) {
+        int offset = bucketOffset(bucket);
+        long observed = -1;
+        long observedSince = 0;
+        while (true) {
+            long word = (long) LONGS.getAcquire(buffer, offset);
+            if ((word & 1) == 0) return word;
+            if (word != observed) {
+                observed = word;
+                observedSince = System.nanoTime();
+            } else if (System.nanoTime() - observedSince > STALE_LOCK_MILLIS * 1_000_000) {
+                LONGS.compareAndSet(buffer, offset, word, word + 1);
+                continue;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private boolean readValidate(int bucket, long version) {
+        VarHandle.acquireFence();
+        return (long) LONGS.getVolatile(buffer, bucketOffset(bucket)) == version;
+    }
+
+    private int bucketFor(String key) {
+        // String.hashCode is specified by the JLS, so every JVM picks the same bucket.
+        int h = key.hashCode() * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % buckets;
+    }
+
+    private static int bucketOffset(int bucket) {
+        return HEADER_BYTES + bucket * BUCKET_BYTES;
+    }
+
+    private static int slotOffset(int bucket, int slot) {
+        return bucketOffset(bucket) + 64 + slot * SLOT_BYTES;
+    }
+
+    // Usernames and NICs are at most 12 characters.
+    private static void checkKey(String key) {
+        if (key.length() > MAX_KEY_LENGTH) throw new IllegalArgumentException("OTP keys are limited to " + MAX_KEY_LENGTH + " characters");
+    }
+
+    private static void checkCode(String code) {
+        if (code.length() > MAX_CODE_LENGTH) throw new IllegalArgumentException("Codes are limited to " + MAX_CODE_LENGTH + " characters");
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) > 0xFF) throw new IllegalArgumentException("Codes must be Latin-1 text");
+        }
+    }
+}
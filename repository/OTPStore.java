@@ -0,0 +1,25 @@
+package repository;
+
+// Storage for issued one-time codes and the failed attempts against them. ExpiringCodeStore keeps them in
+// this process; MappedOTPStore shares them with every JVM on the host that maps the same file.
+public interface OTPStore {
+    // Replaces any code already issued for key and resets its failed attempts.
+    void put(String key, String code, long ttlMillis);
+
+    boolean matches(String key, String code);
+
+    boolean isExpired(String key);
+
+    // Removes the code if it matches and is still valid, so it can only be used once. A wrong code counts
+    // as a failed attempt, and the code is discarded once the store's attempt limit is reached.
+    boolean consume(String key, String code);
+
+    int getFailedAttempts(String key);
+
+    void remove(String key);
+
+    int size();
+
+    // Evicts codes that are past their expiry.
+    void expire();
+}
@@ -0,0 +1,306 @@
+package repository;
+
+import config.AppConfig;
+import metrics.MetricsRegistry;
+import model.LoginAttempt;
+import model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+// Users spread across in-memory UserDatabase shards by consistent hashing of the username, so each shard
+// has its own columns, indexes, stripe locks and audit log. NIC and account number are routed through
+// global indexes that map them to the owning username; they also keep both unique across shards.
+// Contacts are not unique, so lookups by mobile or email ask every shard.
+//
+// rebalance(n) changes the shard count while the repository stays in use. It first publishes a migrating
+// topology: writes go to the new owner, reads try the new owner and fall back to the previous one. It
+// then copies every user whose owner changed, publishes the final topology and drops the copies left
+// behind. A lookup that raced with a topology change is retried, so a registered user is never missed.
+public class PartitionedUserDatabase implements UserRepository {
+    private static final class Topology {
+        final UserDatabase[] shards;
+        final HashRing ring;
+        // Set while users are being copied to their new shards.
+        final Topology previous;
+
+        Topology(UserDatabase[] shards, Topology previous) {
+            this.shards = shards;
+            this.ring = new HashRing(shards.length);
+            this.previous = previous;
+        }
+
+        UserDatabase shardFor(String username) {
+            return shards[ring.shardFor(username)];
+        }
+    }
+
+    private final Map<String, String> usernamesByNic = new ConcurrentHashMap<>();
+    private final Map<String, String> usernamesByAccount = new ConcurrentHashMap<>();
+    private final UsernameSuggestionIndex usernameSuggestions = new UsernameSuggestionIndex();
+    // Writers hold the read side for the whole change; rebalance takes the write side only to swap topologies.
+    private final ReadWriteLock topologyLock = new ReentrantReadWriteLock();
+    private volatile Topology topology;
+    private final MetricsRegistry metrics;
+
+    public PartitionedUserDatabase(int shardCount) {
+        this(shardCount, MetricsRegistry.getInstance());
+    }
+
+    // Every shard, including those added by rebalance, registers its metrics in metrics.
+    public PartitionedUserDatabase(int shardCount, MetricsRegistry metrics) {
+        if (shardCount < 1) throw new IllegalArgumentException("At least one shard is required");
+        this.metrics = metrics;
+        UserDatabase[] shards = new UserDatabase[shardCount];
+        for (int i = 0; i < shardCount; i++) shards[i] = UserDatabase.inMemory(metrics);
+        topology = new Topology(shards, null);
+    }
+
+    public int getShardCount() {
+        return topology.shards.length;
+    }
+
+    // Users held by each shard, in shard order.
+    public int[] getShardSizes() {
+        UserDatabase[] shards = topology.shards;
+        int[] sizes = new int[shards.length];
+        for (int i = 0; i < shards.length; i++) sizes[i] = shards[i].getUserCount();
+        return sizes;
+    }
+
+    // NIC and account number are claimed in the global indexes before the shard insert and released again
+    // if it fails, so two shards can never register the same NIC or account.
+    @Override
+    public void addUser(User user) {
+        if (user.isAttached()) throw new IllegalArgumentException("User already registered");
+        String username = user.getUsername();
+        String nic = user.getNic();
+        String account = user.getAccountNumber();
+
+        topologyLock.readLock().lock();
+        try {
+            if (isUsernameTaken(username)) throw new IllegalArgumentException("Username taken");
+            if (usernamesByNic.putIfAbsent(nic, username) != null) throw new IllegalArgumentException("NIC already registered");
+            if (usernamesByAccount.putIfAbsent(account, username) != null) {
+                usernamesByNic.remove(nic, username);
+                throw new IllegalArgumentException("Account already registered");
+            }
+            try {
+                topology.shardFor(username).addUser(user);
+            } catch (RuntimeException e) {
+                usernamesByNic.remove(nic, username);
+                usernamesByAccount.remove(account, username);
+                throw e;
+            }
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+        usernameSuggestions.add(username);
+    }
+
+    // A view obtained before the user moved still points at the old shard; its changes are copied to the
+    // current owner here.
+    @Override
+    public void saveUser(User user) {
+        topologyLock.readLock().lock();
+        try {
+            UserDatabase owner = topology.shardFor(user.getUsername());
+            if (!owner.holds(user)) owner.upsert(user);
+            owner.saveUser(user);
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User findByUsername(String username) {
+        return lookup(username, username, UserDatabase::findByUsername);
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) {
+        return findByUsername(username) != null;
+    }
+
+    @Override
+    public List<String> suggestUsernames(String base, int count) {
+        return usernameSuggestions.suggest(base, count, this::isUsernameTaken);
+    }
+
+    @Override
+    public User findByNic(String nic) {
+        String username = usernamesByNic.get(nic);
+        return username == null ? null : lookup(username, nic, UserDatabase::findByNic);
+    }
+
+    @Override
+    public User findByAccount(String accountNumber) {
+        String username = usernamesByAccount.get(accountNumber);
+        return username == null ? null : lookup(username, accountNumber, UserDatabase::findByAccount);
+    }
+
+    @Override
+    public User findByMobile(String mobile) {
+        return scatter(mobile, UserDatabase::findByMobile);
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        return scatter(email, UserDatabase::findByEmail);
+    }
+
+    // While a rebalance is copying users, the previous owner is updated first: the copy made from it
+    // then carries the new contacts, and an already made copy is updated after it.
+    @Override
+    public void updateContacts(User user, String mobile, String email) {
+        String username = user.getUsername();
+        topologyLock.readLock().lock();
+        try {
+            Topology current = topology;
+            UserDatabase owner = current.shardFor(username);
+            boolean updated = false;
+            if (current.previous != null) {
+                UserDatabase previousOwner = current.previous.shardFor(username);
+                if (previousOwner != owner) updated = previousOwner.replaceContacts(username, mobile, email);
+            }
+            updated |= owner.replaceContacts(username, mobile, email);
+            if (!updated) throw new IllegalArgumentException("User not registered");
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getUserCount() {
+        return usernamesByNic.size();
+    }
+
+    @Override
+    public void logLoginAttempt(LoginAttempt attempt) {
+        topologyLock.readLock().lock();
+        try {
+            topology.shardFor(attempt.getUsername()).logLoginAttempt(attempt);
+        } finally {
+            topologyLock.readLock().unlock();
+        }
+    }
+
+    // Merged from every shard, keeping each attempt only from the shard that currently owns its user, since
+    // a moving user's entries stay on the old shard until the rebalance drops them. Bounded to AppConfig.LOGIN_AUDIT_CAPACITY attempts.
+    @Override
+    public List<LoginAttempt> getLoginHistory() {
+        Topology current = topology;
+        List<LoginAttempt> history = new ArrayList<>();
+        for (int i = 0; i < current.shards.length; i++) {
+            for (LoginAttempt attempt : current.shards[i].getLoginHistory()) {
+                if (current.ring.shardFor(attempt.getUsername()) == i) history.add(attempt);
+            }
+        }
+        history.sort(Comparator.comparingLong(LoginAttempt::getTimestampMillis));
+        int excess = history.size() - AppConfig.LOGIN_AUDIT_CAPACITY;
+        return excess > 0 ? new ArrayList<>(history.subList(excess, history.size())) : history;
+    }
+
+    @Override
+    public List<LoginAttempt> getRecentLoginAttempts(String username, int limit) {
+        return topology.shardFor(username).getRecentLoginAttempts(username, limit);
+    }
+
+    @Override
+    public int countLoginFailuresSince(String username, long sinceMillis) {
+        return topology.shardFor(username).countLoginFailuresSince(username, sinceMillis);
+    }
+
+    // Changes the number of shards online and returns how many users moved. Existing shards keep their
+    // numbers, so with consistent hashing only the users whose ring segment changed hands are copied.
+    public synchronized int rebalance(int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("At least one shard is required");
+        Topology current = topology;
+        if (shardCount == current.shards.length) return 0;
+        long start = System.nanoTime();
+
+        UserDatabase[] shards = Arrays.copyOf(current.shards, shardCount);
+        for (int i = current.shards.length; i < shardCount; i++) shards[i] = UserDatabase.inMemory(metrics);
+        Topology migrating = new Topology(shards, current);
+        publish(migrating);
+
+        int[] moved = new int[1];
+        for (int i = 0; i < current.shards.length; i++) {
+            int from = i;
+            current.shards[i].forEachUser(user -> {
+                String username = user.getUsername();
+                int to = migrating.ring.shardFor(username);
+                if (to == from) return;
+                UserDatabase target = shards[to];
+                target.upsert(user);
+                // Oldest first, so the new shard's audit log keeps the original order.
+                List<LoginAttempt> attempts = current.shards[from].getRecentLoginAttempts(username, Integer.MAX_VALUE);
+                for (int a = attempts.size() - 1; a >= 0; a--) target.logLoginAttempt(attempts.get(a));
+                moved[0]++;
+            });
+        }
+
+        Topology settled = new Topology(shards, null);
+        publish(settled);
+        for (int i = 0; i < Math.min(current.shards.length, shardCount); i++) {
+            int shard = i;
+            UserDatabase source = shards[i];
+            List<String> departed = new ArrayList<>();
+            source.forEachUser(user -> {
+                String username = user.getUsername();
+                if (settled.ring.shardFor(username) != shard) departed.add(username);
+            });
+            for (String username : departed) source.removeUser(username);
+        }
+
+        System.out.println("[System] Rebalanced users from " + current.shards.length + " to " + shardCount
+                + " shards: " + moved[0] + " moved in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return moved[0];
+    }
+
+    private void publish(Topology next) {
+        topologyLock.writeLock().lock();
+        try {
+            topology = next;
+        } finally {
+            topologyLock.writeLock().unlock();
+        }
+    }
+
+    // First hit in shard order. A user being moved may be found in either shard, so every shard of both
+    // topologies is asked; a miss that raced with a topology change is repeated.
+    private User scatter(String key, BiFunction<UserDatabase, String, User> query) {
+        while (true) {
+            Topology current = topology;
+            for (UserDatabase shard : current.shards) {
+                User user = query.apply(shard, key);
+                if (user != null) return user;
+            }
+            if (current.previous != null) {
+                for (UserDatabase shard : current.previous.shards) {
+                    User user = query.apply(shard, key);
+                    if (user != null) return user;
+                }
+            }
+            if (topology == current) return null;
+        }
+    }
+
+    // Queries the shard that owns username, falling back to its previous owner while a rebalance is
+    // copying users. If the topology changed underneath a miss, the lookup is repeated against the new one.
+    private User lookup(String username, String key, BiFunction<UserDatabase, String, User> query) {
+        while (true) {
+            Topology current = topology;
+            User user = query.apply(current.shardFor(username), key);
+            if (user == null && current.previous != null) user = query.apply(current.previous.shardFor(username), key);
+            if (user != null || topology == current) return user;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package repository;
+
+import model.OTPChannel;
+import model.User;
+import model.UserRecords;
+import model.UserStatus;
+import util.CaseFolding;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Registered users stored as columns in fixed-size pages, indexed by a dense int id. All of a user's
+// strings are packed into one byte[] (Latin-1 where possible, UTF-16 otherwise, each behind a varint
+// header), status and OTP channel are enum ordinals in byte columns, and login attempts are a primitive
+// column. Pages are never moved, so growing the store copies only the page directory.
+//
+// A packed record is never modified in place: updates build a new array and swap it in with CAS, so
+// readers always see a complete record. Username, NIC and account number are index keys and cannot
+// change once stored; mobile and email are indexed too and change only through replaceContacts, which
+// the repository calls with their index entries held back.
+final class UserColumns implements UserRecords {
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int LATIN1 = 0;
+    private static final int UTF16 = 1;
+
+    private static final VarHandle RECORDS = MethodHandles.arrayElementVarHandle(byte[][].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final UserStatus[] STATUSES = UserStatus.values();
+    private static final OTPChannel[] CHANNELS = OTPChannel.values();
+
+    private static final class Page {
+        final byte[][] records = new byte[PAGE_SIZE][];
+        // Ordinal + 1, so 0 can mean "not set".
+        final byte[] statuses = new byte[PAGE_SIZE];
+        final byte[] channels = new byte[PAGE_SIZE];
+        final int[] loginAttempts = new int[PAGE_SIZE];
+    }
+
+    private volatile Page[] pages = new Page[16];
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Copies a detached user's fields into a new slot and returns its id.
+    int append(User user) {
+        int id = size.getAndIncrement();
+        Page[] directory = pages;
+        int index = id >>> PAGE_BITS;
+        Page page = index < directory.length ? directory[index] : null;
+        if (page == null) page = allocatePage(index);
+        write(page, id & PAGE_MASK, user);
+        return id;
+    }
+
+    // Replaces every field of a stored user, e.g. when recovery replays a newer version of it.
+    void overwrite(int id, User user) {
+        write(page(id), id & PAGE_MASK, user);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    // False for an id whose append has not finished writing yet.
+    boolean contains(int id) {
+        Page[] directory = pages;
+        int index = id >>> PAGE_BITS;
+        Page page = index < directory.length ? directory[index] : null;
+        return page != null && RECORDS.getAcquire(page.records, id & PAGE_MASK) != null;
+    }
+
+    @Override
+    public String getString(int id, int field) {
+        return decode(record(id), field);
+    }
+
+    @Override
+    public void setString(int id, int field, String value) {
+        if (field == USERNAME || field == NIC || field == ACCOUNT_NUMBER) {
+            throw new IllegalStateException("Username, NIC and account number cannot change once registered");
+        }
+        if (field == MOBILE || field == EMAIL) {
+            throw new IllegalStateException("Contacts of a registered user change through UserRepository.updateContacts");
+        }
+        replace(id, field, value, -1, null);
+    }
+
+    // Swaps both contacts in one record update, so a reader never sees one old and one new.
+    void replaceContacts(int id, String mobile, String email) {
+        replace(id, MOBILE, mobile, EMAIL, email);
+    }
+
+    @Override
+    public UserStatus getStatus(int id) {
+        int ordinal = page(id).statuses[id & PAGE_MASK];
+        return ordinal == 0 ? null : STATUSES[ordinal - 1];
+    }
+
+    @Override
+    public void setStatus(int id, UserStatus status) {
+        page(id).statuses[id & PAGE_MASK] = (byte) (status == null ? 0 : status.ordinal() + 1);
+    }
+
+    @Override
+    public OTPChannel getPreferredChannel(int id) {
+        int ordinal = page(id).channels[id & PAGE_MASK];
+        return ordinal == 0 ? OTPChannel.MOBILE : CHANNELS[ordinal - 1];
+    }
+
+    @Override
+    public void setPreferredChannel(int id, OTPChannel channel) {
+        page(id).channels[id & PAGE_MASK] = (byte) (channel == null ? 0 : channel.ordinal() + 1);
+    }
+
+    @Override
+    public int getLoginAttempts(int id) {
+        return (int) INTS.getVolatile(page(id).loginAttempts, id & PAGE_MASK);
+    }
+
+    @Override
+    public int incrementLoginAttempts(int id) {
+        return (int) INTS.getAndAdd(page(id).loginAttempts, id & PAGE_MASK, 1) + 1;
+    }
+
+    @Override
+    public void resetLoginAttempts(int id) {
+        INTS.setVolatile(page(id).loginAttempts, id & PAGE_MASK, 0);
+    }
+
+    // True for a field holding null or the empty string.
+    boolean isEmpty(int id, int field) {
+        byte[] record = record(id);
+        return readVarint(record, seek(record, field)) >>> 1 <= 1;
+    }
+
+    // Compares a stored string field with key without decoding it; ignoreCase folds both sides per char.
+    boolean matches(int id, int field, String key, boolean ignoreCase) {
+        byte[] record = record(id);
+        int position = seek(record, field);
+        int header = readVarint(record, position);
+        if (header == 0) return false;
+        position += varintLength(header);
+        int length = (header >>> 1) - 1;
+        if (length != key.length()) return false;
+        boolean utf16 = (header & 1) == UTF16;
+        for (int i = 0; i < length; i++) {
+            char stored = charAt(record, position, i, utf16);
+            char wanted = key.charAt(i);
+            if (stored != wanted && (!ignoreCase || CaseFolding.fold(stored) != CaseFolding.fold(wanted))) return false;
+        }
+        return true;
+    }
+
+    // Same value as ColumnIndex.hash(key, ignoreCase) for the stored string.
+    int hash(int id, int field, boolean ignoreCase) {
+        byte[] record = record(id);
+        int position = seek(record, field);
+        int header = readVarint(record, position);
+        if (header == 0) return 0;
+        position += varintLength(header);
+        int length = (header >>> 1) - 1;
+        boolean utf16 = (header & 1) == UTF16;
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            char c = charAt(record, position, i, utf16);
+            h = 31 * h + (ignoreCase ? CaseFolding.fold(c) : c);
+        }
+        return h;
+    }
+
+    private void replace(int id, int field, String value, int otherField, String otherValue) {
+        Page page = page(id);
+        int slot = id & PAGE_MASK;
+        while (true) {
+            byte[] current = (byte[]) RECORDS.getAcquire(page.records, slot);
+            String[] values = new String[STRING_FIELDS];
+            for (int i = 0; i < STRING_FIELDS; i++) values[i] = decode(current, i);
+            values[field] = value;
+            if (otherField >= 0) values[otherField] = otherValue;
+            if (RECORDS.compareAndSet(page.records, slot, current, encode(values))) return;
+        }
+    }
+
+    private void write(Page page, int slot, User user) {
+        String[] values = new String[STRING_FIELDS];
+        values[USERNAME] = user.getUsername();
+        values[NIC] = user.getNic();
+        values[ACCOUNT_NUMBER] = user.getAccountNumber();
+        values[PASSWORD] = user.getPassword();
+        values[DISPLAY_NAME] = user.getDisplayName();
+        values[MOBILE] = user.getMobile();
+        values[EMAIL] = user.getEmail();
+        UserStatus status = user.getStatus();
+        page.statuses[slot] = (byte) (status == null ? 0 : status.ordinal() + 1);
+        page.channels[slot] = (byte) (user.getPreferredChannel().ordinal() + 1);
+        INTS.setVolatile(page.loginAttempts, slot, user.getLoginAttempts());
+        // Published last, with release semantics, so a reader that sees the record sees the columns too.
+        RECORDS.setRelease(page.records, slot, encode(values));
+    }
+
+    private Page page(int id) {
+        return pages[id >>> PAGE_BITS];
+    }
+
+    private byte[] record(int id) {
+        return (byte[]) RECORDS.getAcquire(page(id).records, id & PAGE_MASK);
+    }
+
+    private synchronized Page allocatePage(int index) {
+        Page[] current = pages;
+        if (index < current.length && current[index] != null) return current[index];
+        Page[] grown = index < current.length ? current.clone() : Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+        Page page = new Page();
+        grown[index] = page;
+        pages = grown;
+        return page;
+    }
+
+    private static byte[] encode(String[] values) {
+        int size = 0;
+        for (String value : values) size += encodedLength(value);
+        byte[] record = new byte[size];
+        int position = 0;
+        for (String value : values) {
+            if (value == null) {
+                record[position++] = 0;
+                continue;
+            }
+            boolean latin1 = isLatin1(value);
+            int header = (value.length() + 1) << 1 | (latin1 ? LATIN1 : UTF16);
+            position = writeVarint(record, position, header);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (latin1) {
+                    record[position++] = (byte) c;
+                } else {
+                    record[position++] = (byte) (c >>> 8);
+                    record[position++] = (byte) c;
+                }
+            }
+        }
+        return record;
+    }
+
+    private static int encodedLength(String value) {
+        if (value == null) return 1;
+        int header = (value.length() + 1) << 1;
+        return varintLength(header) + (isLatin1(value) ? value.length() : value.length() * 2);
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    private static String decode(byte[] record, int field) {
+        int position = seek(record, field);
+        int header = readVarint(record, position);
+        if (header == 0) return null;
+        position += varintLength(header);
+        int length = (header >>> 1) - 1;
+        if ((header & 1) == LATIN1) return new String(record, position, length, StandardCharsets.ISO_8859_1);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = charAt(record, position, i, true);
+        return new String(chars);
+    }
+
+    // Offset of the given field's header, skipping the fields before it.
+    private static int seek(byte[] record, int field) {
+        int position = 0;
+        for (int i = 0; i < field; i++) {
+            int header = readVarint(record, position);
+            position += varintLength(header);
+            if (header != 0) {
+                int length = (header >>> 1) - 1;
+                position += (header & 1) == UTF16 ? length * 2 : length;
+            }
+        }
+        return position;
+    }
+
+    private static char charAt(byte[] record, int position, int index, boolean utf16) {
+        if (!utf16) return (char) (record[position + index] & 0xFF);
+        int offset = position + index * 2;
+        return (char) ((record[offset] & 0xFF) << 8 | (record[offset + 1] & 0xFF));
+    }
+
+    private static int readVarint(byte[] bytes, int position) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static int writeVarint(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+}
@@ -1,46 +1,452 @@
 package repository;
 
+import config.AppConfig;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 import model.LoginAttempt;
 import model.User;
+import model.UserRecords;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class UserDatabase implements UserRepository {
+    private static final int LOCK_STRIPES = 64;
 
-public class UserDatabase {
     private static UserDatabase instance;
-    private Map<String, User> usersByUsername = new HashMap<>();
-    private Map<String, User> usersByNic = new HashMap<>();
-    private Map<String, User> usersByAccount = new HashMap<>();
-    private List<LoginAttempt> loginHistory = new ArrayList<>();
+    // Users live in packed columns. Probing an index allocates nothing, but a lookup that finds a user
+    // returns a new User view over them.
+    private final UserColumns users = new UserColumns();
+    private final ColumnIndex usersByUsername = new ColumnIndex(users, UserRecords.USERNAME, true);
+    private final ColumnIndex usersByNic = new ColumnIndex(users, UserRecords.NIC, false);
+    private final ColumnIndex usersByAccount = new ColumnIndex(users, UserRecords.ACCOUNT_NUMBER, false);
+    // Contacts are not unique; users without one are left out of its index.
+    private final ColumnIndex usersByMobile = new ColumnIndex(users, UserRecords.MOBILE, false);
+    private final ColumnIndex usersByEmail = new ColumnIndex(users, UserRecords.EMAIL, true);
+    private final UsernameSuggestionIndex usernameSuggestions = new UsernameSuggestionIndex();
+    private final LoginAuditLog loginHistory = new LoginAuditLog(AppConfig.LOGIN_AUDIT_CAPACITY);
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicInteger removedUsers = new AtomicInteger();
+
+    private final LatencyHistogram addUserLatency;
+    private final Counter usernameHits;
+    private final Counter usernameMisses;
+    private final Counter nicHits;
+    private final Counter nicMisses;
+    private final Counter accountHits;
+    private final Counter accountMisses;
+    private final Counter mobileHits;
+    private final Counter mobileMisses;
+    private final Counter emailHits;
+    private final Counter emailMisses;
 
-    private UserDatabase() {}
+    // Mutations hold the read side while they apply a change and queue its log record; a checkpoint holds
+    // the write side just long enough to rotate the log and capture what the snapshot must contain.
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final AtomicLong changesSinceCheckpoint = new AtomicLong();
+    // One checkpoint at a time: two would share the temporary snapshot file, and the older one could
+    // delete log segments the newer snapshot does not cover.
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private volatile UserPersistence persistence;
+    private ScheduledExecutorService checkpointScheduler;
+
+    private UserDatabase(MetricsRegistry metrics) {
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new ReentrantLock();
+        this.addUserLatency = metrics.histogram("db_add_user_seconds");
+        this.usernameHits = metrics.counter("db_lookups_total", "index", "username", "result", "hit");
+        this.usernameMisses = metrics.counter("db_lookups_total", "index", "username", "result", "miss");
+        this.nicHits = metrics.counter("db_lookups_total", "index", "nic", "result", "hit");
+        this.nicMisses = metrics.counter("db_lookups_total", "index", "nic", "result", "miss");
+        this.accountHits = metrics.counter("db_lookups_total", "index", "account", "result", "hit");
+        this.accountMisses = metrics.counter("db_lookups_total", "index", "account", "result", "miss");
+        this.mobileHits = metrics.counter("db_lookups_total", "index", "mobile", "result", "hit");
+        this.mobileMisses = metrics.counter("db_lookups_total", "index", "mobile", "result", "miss");
+        this.emailHits = metrics.counter("db_lookups_total", "index", "email", "result", "hit");
+        this.emailMisses = metrics.counter("db_lookups_total", "index", "email", "result", "miss");
+    }
 
     public static synchronized UserDatabase getInstance() {
-        if (instance == null) instance = new UserDatabase();
+        if (instance == null) instance = new UserDatabase(MetricsRegistry.getInstance());
         return instance;
     }
 
+    // A standalone in-memory instance, used as one shard of a PartitionedUserDatabase. Shards of one
+    // database share its registry, so their lookups add up to the database's.
+    static UserDatabase inMemory(MetricsRegistry metrics) {
+        return new UserDatabase(metrics);
+    }
+
+    // Creates the singleton backed by the given data directory, recovering whatever it already holds.
+    public static synchronized UserDatabase open(Path directory) throws IOException {
+        if (instance != null) throw new IllegalStateException("UserDatabase is already initialised");
+        UserDatabase db = new UserDatabase(MetricsRegistry.getInstance());
+        db.persistence = UserPersistence.open(directory, new UserPersistence.Sink() {
+            @Override
+            public void restoreUser(User user) {
+                int id = db.usersByUsername.find(user.getUsername());
+                if (id >= 0) db.overwrite(id, user);
+                else db.index(user);
+            }
+
+            @Override
+            public void restoreLoginAttempt(String username, long epochMillis, boolean success) {
+                db.loginHistory.append(username, epochMillis, success);
+            }
+        });
+        db.checkpointScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "user-db-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        db.checkpointScheduler.scheduleWithFixedDelay(db::checkpointIfChanged, AppConfig.SNAPSHOT_INTERVAL_SECONDS,
+                AppConfig.SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        instance = db;
+        return db;
+    }
+
+    // Username, NIC and account number are claimed together under their stripe locks, so a
+    // concurrent insert can never take one of them while this user holds the other two.
+    @Override
     public void addUser(User user) {
-        usersByUsername.put(user.getUsername().toLowerCase(), user);
-        usersByNic.put(user.getNic(), user);
-        usersByAccount.put(user.getAccountNumber(), user);
+        long start = System.nanoTime();
+        if (user.isAttached()) throw new IllegalArgumentException("User already registered");
+        String username = user.getUsername();
+        String nic = user.getNic();
+        String account = user.getAccountNumber();
+        if (username == null || nic == null || account == null) {
+            throw new IllegalArgumentException("Username, NIC and account number are required");
+        }
+        // Hashed before any lock is taken, so nothing between the locks and their try can throw.
+        int usernameHash = ColumnIndex.hash(username, true);
+        int nicHash = nic.hashCode();
+        int accountHash = account.hashCode();
+
+        CompletableFuture<Long> logged = null;
+        checkpointLock.readLock().lock();
+        try {
+            int[] held = lockStripes(usernameHash, nicHash, accountHash);
+            try {
+                if (usersByUsername.find(username) >= 0) throw new IllegalArgumentException("Username taken");
+                if (usersByNic.find(nic) >= 0) throw new IllegalArgumentException("NIC already registered");
+                if (usersByAccount.find(account) >= 0) throw new IllegalArgumentException("Account already registered");
+
+                index(user);
+                if (persistence != null) logged = persistence.logUser(user);
+            } finally {
+                unlockStripes(held);
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logged);
+        addUserLatency.recordSince(start);
+    }
+
+    @Override
+    public void saveUser(User user) {
+        if (persistence == null) return;
+        CompletableFuture<Long> logged;
+        checkpointLock.readLock().lock();
+        try {
+            logged = persistence.logUser(user);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logged);
     }
 
+    @Override
     public User findByUsername(String username) {
-        return usersByUsername.get(username.toLowerCase());
+        return counted(usersByUsername.find(username), usernameHits, usernameMisses);
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) {
+        return findByUsername(username) != null;
+    }
+
+    @Override
+    public List<String> suggestUsernames(String base, int count) {
+        return usernameSuggestions.suggest(base, count, this::isUsernameTaken);
     }
 
+    @Override
     public User findByNic(String nic) {
-        return usersByNic.get(nic);
+        return counted(usersByNic.find(nic), nicHits, nicMisses);
+    }
+
+    @Override
+    public User findByAccount(String accountNumber) {
+        return counted(usersByAccount.find(accountNumber), accountHits, accountMisses);
+    }
+
+    // The earliest registered user with this mobile number, or null.
+    @Override
+    public User findByMobile(String mobile) {
+        return counted(usersByMobile.findFirst(mobile), mobileHits, mobileMisses);
+    }
+
+    // The earliest registered user with this email address, compared ignoring case, or null.
+    @Override
+    public User findByEmail(String email) {
+        return counted(usersByEmail.findFirst(email), emailHits, emailMisses);
+    }
+
+    // The old contacts leave their indexes before the record changes and the new ones are indexed after,
+    // so a concurrent lookup by either contact may briefly miss this user but never finds stale values.
+    @Override
+    public void updateContacts(User user, String mobile, String email) {
+        CompletableFuture<Long> logged = null;
+        checkpointLock.readLock().lock();
+        try {
+            if (!replaceContacts(user.getUsername(), mobile, email)) throw new IllegalArgumentException("User not registered");
+            if (persistence != null) logged = persistence.logUser(findByUsername(user.getUsername()));
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logged);
+    }
+
+    @Override
+    public int getUserCount() {
+        return users.size() - removedUsers.get();
+    }
+
+    // True when user is a view over this instance's columns rather than a copy held elsewhere.
+    boolean holds(User user) {
+        return user.getRecords() == users;
+    }
+
+    // Stores a copy of a user that lives in another store: overwrites this instance's copy of the same
+    // username, or indexes a new one. Used to move users between shards.
+    void upsert(User user) {
+        String username = user.getUsername();
+        int usernameHash = ColumnIndex.hash(username, true);
+        int nicHash = user.getNic().hashCode();
+        int accountHash = user.getAccountNumber().hashCode();
+        int[] held = lockStripes(usernameHash, nicHash, accountHash);
+        try {
+            int id = usersByUsername.find(username);
+            if (id >= 0) overwrite(id, user);
+            else insert(user);
+        } finally {
+            unlockStripes(held);
+        }
+    }
+
+    // Changes the contacts of the user stored under username; false when there is none.
+    boolean replaceContacts(String username, String mobile, String email) {
+        int usernameHash = ColumnIndex.hash(username, true);
+        int[] held = lockStripes(usernameHash);
+        try {
+            int id = usersByUsername.find(username);
+            if (id < 0) return false;
+            unindexContacts(id);
+            users.replaceContacts(id, mobile, email);
+            indexContacts(id);
+            return true;
+        } finally {
+            unlockStripes(held);
+        }
+    }
+
+    // Drops a user that has moved to another shard from the indexes. Its column slot is not reused, so a
+    // User view still held elsewhere keeps reading the last values it had here.
+    void removeUser(String username) {
+        if (persistence != null) throw new IllegalStateException("Users cannot be removed from a persistent database");
+        int id = usersByUsername.find(username);
+        if (id < 0) return;
+        int usernameHash = ColumnIndex.hash(username, true);
+        int nicHash = users.getString(id, UserRecords.NIC).hashCode();
+        int accountHash = users.getString(id, UserRecords.ACCOUNT_NUMBER).hashCode();
+        int[] held = lockStripes(usernameHash, nicHash, accountHash);
+        try {
+            if (usersByUsername.find(username) != id) return;
+            // Username first, so a concurrent lookup by username never finds a half-removed user.
+            usersByUsername.remove(id);
+            usersByNic.remove(id);
+            usersByAccount.remove(id);
+            unindexContacts(id);
+            // Otherwise the entries would be reported twice if the user ever moved back to this shard.
+            loginHistory.forget(username);
+            removedUsers.incrementAndGet();
+        } finally {
+            unlockStripes(held);
+        }
+    }
+
+    // Visits every indexed user, skipping removed ones and appends still in progress.
+    void forEachUser(Consumer<User> action) {
+        int count = users.size();
+        for (int id = 0; id < count; id++) {
+            if (!users.contains(id)) continue;
+            User user = User.view(users, id);
+            if (usersByUsername.find(user.getUsername()) == id) action.accept(user);
+        }
+    }
+
+    private User counted(int id, Counter hits, Counter misses) {
+        if (id < 0) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return User.view(users, id);
     }
 
+    @Override
     public void logLoginAttempt(LoginAttempt attempt) {
-        loginHistory.add(attempt);
+        long epochMillis = attempt.getTimestampMillis();
+        CompletableFuture<Long> logged = null;
+        checkpointLock.readLock().lock();
+        try {
+            loginHistory.append(attempt.getUsername(), epochMillis, attempt.isSuccess());
+            if (persistence != null) logged = persistence.logLoginAttempt(attempt.getUsername(), epochMillis, attempt.isSuccess());
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logged);
     }
 
+    // Bounded to the most recent AppConfig.LOGIN_AUDIT_CAPACITY attempts.
+    @Override
     public List<LoginAttempt> getLoginHistory() {
-        return new ArrayList<>(loginHistory);
+        return loginHistory.snapshot();
+    }
+
+    @Override
+    public List<LoginAttempt> getRecentLoginAttempts(String username, int limit) {
+        return loginHistory.lastAttempts(username, limit);
+    }
+
+    @Override
+    public int countLoginFailuresSince(String username, long sinceMillis) {
+        return loginHistory.countFailuresSince(username, sinceMillis);
+    }
+
+    public void checkpoint() throws IOException {
+        snapshotLock.lock();
+        try {
+            UserPersistence current = persistence;
+            if (current == null) return;
+            long firstSegment;
+            int userCount;
+            List<LoginAttempt> attempts;
+            checkpointLock.writeLock().lock();
+            try {
+                firstSegment = current.rotate();
+                // Ids are dense, so the users in this snapshot are exactly those below the current count.
+                userCount = users.size();
+                attempts = loginHistory.snapshot();
+                changesSinceCheckpoint.set(0);
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+            current.writeSnapshot(firstSegment, userCount, id -> User.view(users, id), attempts);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    public synchronized void close() throws IOException, InterruptedException {
+        if (persistence == null) return;
+        // Not shutdownNow: interrupting a scheduled checkpoint would close its snapshot file mid-write.
+        checkpointScheduler.shutdown();
+        checkpointScheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        snapshotLock.lock();
+        try {
+            checkpoint();
+            persistence.close();
+            persistence = null;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void checkpointIfChanged() {
+        try {
+            if (changesSinceCheckpoint.get() > 0) checkpoint();
+        } catch (IOException e) {
+            System.out.println("[System] Snapshot failed: " + e.getMessage());
+        }
+    }
+
+    private void index(User user) {
+        int id = insert(user);
+        usernameSuggestions.add(user.getUsername());
+        user.attach(users, id);
+    }
+
+    private int insert(User user) {
+        int id = users.append(user);
+        usersByNic.insert(id);
+        usersByAccount.insert(id);
+        indexContacts(id);
+        // Published last: a reader that finds the username also finds the NIC and account.
+        usersByUsername.insert(id);
+        return id;
+    }
+
+    private void overwrite(int id, User user) {
+        unindexContacts(id);
+        users.overwrite(id, user);
+        indexContacts(id);
+    }
+
+    private void indexContacts(int id) {
+        if (!users.isEmpty(id, UserRecords.MOBILE)) usersByMobile.insert(id);
+        if (!users.isEmpty(id, UserRecords.EMAIL)) usersByEmail.insert(id);
+    }
+
+    private void unindexContacts(int id) {
+        if (!users.isEmpty(id, UserRecords.MOBILE)) usersByMobile.remove(id);
+        if (!users.isEmpty(id, UserRecords.EMAIL)) usersByEmail.remove(id);
+    }
+
+    private void awaitDurable(CompletableFuture<Long> logged) {
+        if (logged == null) return;
+        changesSinceCheckpoint.incrementAndGet();
+        try {
+            logged.join();
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Failed to persist change", e));
+        }
+    }
+
+    // Locks are always taken in ascending stripe order to rule out deadlock between writers.
+    private int[] lockStripes(int... keyHashes) {
+        int[] indexes = new int[keyHashes.length];
+        for (int i = 0; i < keyHashes.length; i++) indexes[i] = stripeFor(keyHashes[i]);
+        Arrays.sort(indexes);
+
+        int distinct = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) indexes[distinct++] = indexes[i];
+        }
+        int[] held = Arrays.copyOf(indexes, distinct);
+        for (int index : held) stripes[index].lock();
+        return held;
+    }
+
+    private void unlockStripes(int[] held) {
+        for (int i = held.length - 1; i >= 0; i--) stripes[held[i]].unlock();
+    }
+
+    private static int stripeFor(int h) {
+        return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
     }
 }
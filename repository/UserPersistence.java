@@ -0,0 +1,181 @@
+package repository;
+
+import model.LoginAttempt;
+import model.User;
+import model.UserStatus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+// Durable side of UserDatabase. Every user upsert and login attempt goes to the write-ahead log; a
+// checkpoint writes a compact snapshot and drops the log segments it covers. Recovery maps the snapshot
+// and replays the segments written after it. User records carry the full user, so replay is idempotent.
+class UserPersistence implements AutoCloseable {
+    interface Sink {
+        void restoreUser(User user);
+        void restoreLoginAttempt(String username, long epochMillis, boolean success);
+    }
+
+    private static final byte USER_RECORD = 1;
+    private static final byte LOGIN_RECORD = 2;
+    private static final int SNAPSHOT_MAGIC = 0x43415341;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "users.snapshot";
+
+    private final Path directory;
+    private final WriteAheadLog wal;
+
+    private UserPersistence(Path directory, WriteAheadLog wal) {
+        this.directory = directory;
+        this.wal = wal;
+    }
+
+    static UserPersistence open(Path directory, Sink sink) throws IOException {
+        Files.createDirectories(directory);
+        long firstSegment = loadSnapshot(directory.resolve(SNAPSHOT_FILE), sink);
+        WriteAheadLog.replay(directory, firstSegment, (type, payload) -> {
+            if (type == USER_RECORD) sink.restoreUser(readUser(payload));
+            else if (type == LOGIN_RECORD) sink.restoreLoginAttempt(readString(payload), payload.getLong(), payload.get() != 0);
+        });
+        return new UserPersistence(directory, new WriteAheadLog(directory));
+    }
+
+    CompletableFuture<Long> logUser(User user) {
+        return wal.append(USER_RECORD, encode(out -> writeUser(out, user)));
+    }
+
+    CompletableFuture<Long> logLoginAttempt(String username, long epochMillis, boolean success) {
+        return wal.append(LOGIN_RECORD, encode(out -> {
+            writeString(out, username);
+            out.writeLong(epochMillis);
+            out.writeBoolean(success);
+        }));
+    }
+
+    // Starts a new log segment; the snapshot taken next must be replayed from that segment onwards.
+    long rotate() {
+        return wal.rotate();
+    }
+
+    void writeSnapshot(long firstSegment, int userCount, IntFunction<User> users, List<LoginAttempt> attempts) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(firstSegment);
+            out.writeInt(userCount);
+            for (int id = 0; id < userCount; id++) writeUser(out, users.apply(id));
+            out.writeInt(attempts.size());
+            for (LoginAttempt attempt : attempts) {
+                writeString(out, attempt.getUsername());
+                out.writeLong(attempt.getTimestampMillis());
+                out.writeBoolean(attempt.isSuccess());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        wal.deleteSegmentsBefore(firstSegment);
+    }
+
+    @Override
+    public void close() throws IOException {
+        wal.close();
+    }
+
+    private static long loadSnapshot(Path file, Sink sink) throws IOException {
+        if (!Files.exists(file)) return 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognised snapshot file " + file);
+            }
+            long firstSegment = in.getLong();
+            for (int i = in.getInt(); i > 0; i--) sink.restoreUser(readUser(in));
+            for (int i = in.getInt(); i > 0; i--) sink.restoreLoginAttempt(readString(in), in.getLong(), in.get() != 0);
+            return firstSegment;
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        writeString(out, user.getUsername());
+        writeString(out, user.getPassword());
+        writeString(out, user.getDisplayName());
+        writeString(out, user.getAccountNumber());
+        writeString(out, user.getNic());
+        writeString(out, user.getStatus() == null ? null : user.getStatus().name());
+        writeString(out, user.getMobile());
+        writeString(out, user.getEmail());
+        writeString(out, user.getPreferredOTPChannel());
+        out.writeInt(user.getLoginAttempts());
+        // Were the login and OTP locks, both now kept by LockoutManager; still written so the layout is unchanged.
+        out.writeLong(0);
+        out.writeLong(0);
+    }
+
+    private static User readUser(ByteBuffer in) {
+        User user = new User();
+        user.setUsername(readString(in));
+        user.setPassword(readString(in));
+        user.setDisplayName(readString(in));
+        user.setAccountNumber(readString(in));
+        user.setNic(readString(in));
+        String status = readString(in);
+        user.setStatus(status == null ? null : UserStatus.valueOf(status));
+        user.setMobile(readString(in));
+        user.setEmail(readString(in));
+        user.setPreferredOTPChannel(readString(in));
+        for (int i = in.getInt(); i > 0; i--) user.incrementLoginAttempts();
+        in.getLong();
+        in.getLong();
+        return user;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(RecordWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            writer.write(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
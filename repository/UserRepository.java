@@ -0,0 +1,43 @@
+package repository;
+
+import model.LoginAttempt;
+import model.User;
+
+import java.util.List;
+
+// Registered users and their login history as the services see them. UserDatabase keeps everything in
+// one store; PartitionedUserDatabase spreads users across shards by username.
+public interface UserRepository {
+    void addUser(User user);
+
+    // Persists changes made to an already registered user (contacts, password, locks).
+    void saveUser(User user);
+
+    User findByUsername(String username);
+
+    boolean isUsernameTaken(String username);
+
+    List<String> suggestUsernames(String base, int count);
+
+    User findByNic(String nic);
+
+    User findByAccount(String accountNumber);
+
+    // Contacts need not be unique; when several users share one, any of them may be returned.
+    User findByMobile(String mobile);
+
+    User findByEmail(String email);
+
+    // Contacts are indexed, so they change through here rather than through the User setters.
+    void updateContacts(User user, String mobile, String email);
+
+    int getUserCount();
+
+    void logLoginAttempt(LoginAttempt attempt);
+
+    List<LoginAttempt> getLoginHistory();
+
+    List<LoginAttempt> getRecentLoginAttempts(String username, int limit);
+
+    int countLoginFailuresSince(String username, long sinceMillis);
+}
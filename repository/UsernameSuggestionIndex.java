@@ -0,0 +1,55 @@
+package repository;
+
+import util.CaseFolding;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Tracks which numeric suffixes are taken for every base name ("john" -> {1, 2, 7}), so the next free
+// suggestions come from BitSet.nextClearBit instead of probing base1, base2, ... one lookup at a time.
+// The index only skips suffixes it knows are taken: a base that itself ends in a digit ("user1" is filed
+// under "user"), leading-zero suffixes and large suffixes are not indexed, so every candidate is still
+// confirmed against the repository.
+public class UsernameSuggestionIndex {
+    // Larger suffixes are not indexed.
+    private static final int MAX_INDEXED_SUFFIX = 1_000_000;
+
+    private final Map<String, BitSet> takenSuffixesByBase = new ConcurrentHashMap<>();
+
+    public void add(String username) {
+        String name = CaseFolding.fold(username);
+        int digitsStart = name.length();
+        while (digitsStart > 0 && Character.isDigit(name.charAt(digitsStart - 1))) digitsStart--;
+        if (digitsStart == 0 || digitsStart == name.length() || name.charAt(digitsStart) == '0') return;
+        if (name.length() - digitsStart > 6) return;
+
+        int suffix = Integer.parseInt(name, digitsStart, name.length(), 10);
+        if (suffix >= MAX_INDEXED_SUFFIX) return;
+        BitSet taken = takenSuffixesByBase.computeIfAbsent(name.substring(0, digitsStart), b -> new BitSet());
+        synchronized (taken) {
+            taken.set(suffix);
+        }
+    }
+
+    public List<String> suggest(String base, int count, Predicate<String> isTaken) {
+        List<String> suggestions = new ArrayList<>(count);
+        BitSet taken = takenSuffixesByBase.get(CaseFolding.fold(base));
+        int suffix = 0;
+        while (suggestions.size() < count) {
+            if (taken == null) {
+                suffix++;
+            } else {
+                synchronized (taken) {
+                    suffix = taken.nextClearBit(suffix + 1);
+                }
+            }
+            String candidate = base + suffix;
+            if (!isTaken.test(candidate)) suggestions.add(candidate);
+        }
+        return suggestions;
+    }
+}
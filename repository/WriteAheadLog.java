@@ -0,0 +1,216 @@
+package repository;
+
+import util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only log split into numbered segment files. A single writer thread group-commits every record
+// queued since its last fsync with one gathering write and one force, then completes their futures.
+// Record layout: [int length][byte type][payload][int crc32 of type + payload].
+public class WriteAheadLog implements AutoCloseable {
+    public interface RecordHandler {
+        void handle(byte type, ByteBuffer payload);
+    }
+
+    private static final int HEADER_BYTES = 5;
+    private static final int TRAILER_BYTES = 4;
+
+    private final Path directory;
+    private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // Appends hold the read side from the closed check until their record is queued, so close() cannot
+    // slip in between and leave a record behind that the writer never sees.
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private long segment;
+    private volatile boolean closed;
+
+    private static final class Pending {
+        final ByteBuffer record;
+        final boolean rotate;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Pending(ByteBuffer record, boolean rotate) {
+            this.record = record;
+            this.rotate = rotate;
+        }
+    }
+
+    // Always starts a fresh segment after the newest existing one, so a torn tail is never appended to.
+    public WriteAheadLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Long> existing = segments(directory);
+        this.segment = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        this.channel = open(segment);
+        this.writer = VirtualThreads.start("wal-writer-", this::writeLoop);
+    }
+
+    public CompletableFuture<Long> append(byte type, byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length + TRAILER_BYTES);
+        record.putInt(1 + payload.length).put(type).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, 1 + payload.length);
+        record.putInt((int) crc.getValue()).flip();
+
+        return enqueue(new Pending(record, false));
+    }
+
+    // Closes the current segment and returns the number of the new one; later appends land there.
+    public long rotate() {
+        return enqueue(new Pending(null, true)).join();
+    }
+
+    private CompletableFuture<Long> enqueue(Pending entry) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) throw new IllegalStateException("Write-ahead log is closed");
+            pending.add(entry);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return entry.done;
+    }
+
+    public void deleteSegmentsBefore(long firstKept) throws IOException {
+        for (long number : segments(directory)) {
+            if (number < firstKept) Files.deleteIfExists(segmentPath(directory, number));
+        }
+    }
+
+    // Replays every intact record of the segments numbered firstSegment and above, in order. Replay of a
+    // segment stops at the first torn or corrupt record, which is where the previous process died.
+    public static long replay(Path directory, long firstSegment, RecordHandler handler) throws IOException {
+        long records = 0;
+        if (!Files.isDirectory(directory)) return records;
+        for (long number : segments(directory)) {
+            if (number < firstSegment) continue;
+            try (FileChannel in = FileChannel.open(segmentPath(directory, number), StandardOpenOption.READ)) {
+                ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                CRC32 crc = new CRC32();
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    if (length < 1 || length + TRAILER_BYTES > buffer.remaining()) break;
+
+                    ByteBuffer body = buffer.slice(start + 4, length);
+                    crc.reset();
+                    crc.update(body.duplicate());
+                    buffer.position(start + 4 + length);
+                    if ((int) crc.getValue() != buffer.getInt()) break;
+
+                    byte type = body.get();
+                    handler.handle(type, body.slice());
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    // Waits for the writer to drain what is queued even if interrupted, since the channel cannot be closed
+    // under it; the interrupt is passed on once the log is closed.
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            channel.close();
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    // Never interrupted: an interrupt during FileChannel I/O would close the channel.
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (!closed || !pending.isEmpty()) {
+            try {
+                Pending first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            pending.drainTo(batch);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        int from = 0;
+        try {
+            for (int i = 0; i <= batch.size(); i++) {
+                if (i < batch.size() && !batch.get(i).rotate) continue;
+                write(batch.subList(from, i));
+                if (i < batch.size()) {
+                    channel.close();
+                    channel = open(++segment);
+                    batch.get(i).done.complete(segment);
+                }
+                from = i + 1;
+            }
+        } catch (IOException e) {
+            for (int i = from; i < batch.size(); i++) batch.get(i).done.completeExceptionally(new UncheckedIOException(e));
+        }
+    }
+
+    private void write(List<Pending> records) throws IOException {
+        if (records.isEmpty()) return;
+        ByteBuffer[] buffers = new ByteBuffer[records.size()];
+        for (int i = 0; i < buffers.length; i++) buffers[i] = records.get(i).record;
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) remaining += buffer.remaining();
+        while (remaining > 0) remaining -= channel.write(buffers);
+        channel.force(false);
+        for (Pending record : records) record.done.complete(segment);
+    }
+
+    private FileChannel open(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("wal-%016d.log", number));
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith("wal-") && name.endsWith(".log"))
+                    .map(name -> Long.parseLong(name.substring(4, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package reservation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// The holds of one onboarding: at most one username, NIC and account number, released together. The
+// whole state is its deadline, so expiring, renewing and pinning for commit are single CAS steps and
+// can never interleave: a reservation is pinned only while live and expired only once past its deadline.
+public final class Reservation {
+    private static final long COMMITTING = Long.MAX_VALUE;
+    private static final long RELEASED = Long.MIN_VALUE;
+
+    // Normalised keys held, by ReservationService.Kind ordinal.
+    final String[] keys = new String[ReservationService.Kind.values().length];
+    private final AtomicLong deadline;
+    // Expiry tick this reservation was last queued under.
+    volatile long queuedTick;
+
+    Reservation(long deadlineMillis) {
+        this.deadline = new AtomicLong(deadlineMillis);
+    }
+
+    public boolean isLive(long nowMillis) {
+        return deadline.get() >= nowMillis;
+    }
+
+    long getDeadline() {
+        return deadline.get();
+    }
+
+    boolean isReleased() {
+        return deadline.get() == RELEASED;
+    }
+
+    // Moves the deadline forward; false once the reservation expired, was released or is committing.
+    boolean extend(long nowMillis, long deadlineMillis) {
+        while (true) {
+            long current = deadline.get();
+            if (current < nowMillis || current == COMMITTING) return false;
+            if (current >= deadlineMillis || deadline.compareAndSet(current, deadlineMillis)) return true;
+        }
+    }
+
+    // True when the reservation is past its deadline or released, i.e. its holds may be taken over.
+    boolean expire(long nowMillis) {
+        while (true) {
+            long current = deadline.get();
+            if (current == RELEASED) return true;
+            if (current >= nowMillis) return false;
+            if (deadline.compareAndSet(current, RELEASED)) return true;
+        }
+    }
+
+    // Freezes a live reservation for commit: it can no longer expire.
+    boolean pin(long nowMillis) {
+        while (true) {
+            long current = deadline.get();
+            if (current < nowMillis || current == COMMITTING) return false;
+            if (deadline.compareAndSet(current, COMMITTING)) return true;
+        }
+    }
+
+    void release() {
+        deadline.set(RELEASED);
+    }
+}
@@ -0,0 +1,243 @@
+package reservation;
+
+import config.AppConfig;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import model.User;
+import repository.UserRepository;
+import util.CaseFolding;
+import util.Clock;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Short-lived holds on the username, NIC and account number an onboarding is going to register, so two
+// customers cannot both be told a name is free and then collide at the final insert. A key is held by
+// at most one live reservation; commit pins the reservation, inserts the user and drops the holds.
+//
+// A hold is taken before the repository is checked, and every insert that goes through commit holds its
+// keys, so once hold returns true no other commit can register that key until this reservation ends.
+// Holds last holdMillis from the last claim or renew. An expired reservation's keys may be taken over at
+// once; the tables themselves are cleared in bulk by a timer ring of expiry ticks, swept as a side
+// effect of new reservations, so holds cost one map entry each and expiry never scans the tables.
+public class ReservationService {
+    public enum Kind { USERNAME, NIC, ACCOUNT }
+
+    private static final int TICKS_PER_HOLD = 16;
+
+    private final UserRepository userDatabase;
+    private final Clock clock;
+    private final long holdMillis;
+    private final long tickMillis;
+    private final Map<Kind, Map<String, Reservation>> holds = new EnumMap<>(Kind.class);
+    // Reservations queued under their deadline's tick; a reservation renewed into a later tick is queued
+    // again and skipped when its old tick is swept.
+    private final List<Queue<Reservation>> expiryRing;
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private volatile long sweptTick;
+
+    private final Counter claimed;
+    private final Counter conflicts;
+    private final Counter registered;
+    private final Counter committed;
+    private final Counter expired;
+
+    public ReservationService(UserRepository userDatabase) {
+        this(userDatabase, Clock.cached(), AppConfig.RESERVATION_HOLD_SECONDS * 1000L);
+    }
+
+    public ReservationService(UserRepository userDatabase, Clock clock, long holdMillis) {
+        this(userDatabase, clock, holdMillis, MetricsRegistry.getInstance());
+    }
+
+    public ReservationService(UserRepository userDatabase, Clock clock, long holdMillis, MetricsRegistry metrics) {
+        if (holdMillis <= 0) throw new IllegalArgumentException("Hold time must be positive");
+        this.userDatabase = userDatabase;
+        this.clock = clock;
+        this.holdMillis = holdMillis;
+        this.tickMillis = Math.max(1, holdMillis / TICKS_PER_HOLD);
+        for (Kind kind : Kind.values()) holds.put(kind, new ConcurrentHashMap<>());
+        // Deadlines are at most one hold ahead of now; an entry a lap ahead of a lagging sweep is put back.
+        this.expiryRing = new ArrayList<>(TICKS_PER_HOLD + 3);
+        for (int i = 0; i < TICKS_PER_HOLD + 3; i++) expiryRing.add(new ConcurrentLinkedQueue<>());
+        this.sweptTick = clock.currentTimeMillis() / tickMillis;
+        this.claimed = metrics.counter("reservation_claims_total", "result", "held");
+        this.conflicts = metrics.counter("reservation_claims_total", "result", "conflict");
+        this.registered = metrics.counter("reservation_claims_total", "result", "registered");
+        this.committed = metrics.counter("reservation_commits_total");
+        this.expired = metrics.counter("reservation_expired_total");
+        metrics.gauge("reservation_holds", this::getHoldCount);
+    }
+
+    // A new reservation holding nothing yet.
+    public Reservation open() {
+        long now = clock.currentTimeMillis();
+        sweepIfDue(now);
+        Reservation reservation = new Reservation(now + holdMillis);
+        schedule(reservation);
+        return reservation;
+    }
+
+    // Claims key for the reservation, replacing any key of the same kind it held, and renews it. False
+    // when another live reservation holds the key or it is already registered. Throws if the reservation
+    // itself has expired.
+    public boolean hold(Reservation reservation, Kind kind, String key) {
+        long now = clock.currentTimeMillis();
+        String normalised = normalise(kind, key);
+        Map<String, Reservation> table = holds.get(kind);
+        synchronized (reservation) {
+            if (!reservation.extend(now, now + holdMillis)) throw new IllegalStateException("Reservation expired");
+            schedule(reservation);
+            String previous = reservation.keys[kind.ordinal()];
+            if (normalised.equals(previous)) return true;
+
+            while (true) {
+                Reservation holder = table.putIfAbsent(normalised, reservation);
+                if (holder == null) break;
+                if (!holder.expire(now)) {
+                    conflicts.increment();
+                    return false;
+                }
+                table.remove(normalised, holder);
+            }
+            if (isRegistered(kind, key)) {
+                table.remove(normalised, reservation);
+                registered.increment();
+                return false;
+            }
+            if (previous != null) table.remove(previous, reservation);
+            reservation.keys[kind.ordinal()] = normalised;
+            claimed.increment();
+            return true;
+        }
+    }
+
+    // Pushes the deadline a full hold ahead; false if the reservation has already expired.
+    public boolean renew(Reservation reservation) {
+        long now = clock.currentTimeMillis();
+        synchronized (reservation) {
+            if (!reservation.extend(now, now + holdMillis)) return false;
+            schedule(reservation);
+            return true;
+        }
+    }
+
+    // Registers user, whose username, NIC and account number must all be held by the reservation, and
+    // releases the reservation whether or not the insert succeeds.
+    public void commit(Reservation reservation, User user) {
+        try {
+            synchronized (reservation) {
+                if (!holds(reservation, Kind.USERNAME, user.getUsername()) || !holds(reservation, Kind.NIC, user.getNic())
+                        || !holds(reservation, Kind.ACCOUNT, user.getAccountNumber())) {
+                    throw new IllegalArgumentException("Username, NIC and account number must be reserved first");
+                }
+                if (!reservation.pin(clock.currentTimeMillis())) throw new IllegalArgumentException("Reservation expired");
+            }
+            userDatabase.addUser(user);
+            committed.increment();
+        } finally {
+            release(reservation);
+        }
+    }
+
+    public void release(Reservation reservation) {
+        synchronized (reservation) {
+            reservation.release();
+            drop(reservation);
+        }
+    }
+
+    // True while a live reservation holds key.
+    public boolean isHeld(Kind kind, String key) {
+        Reservation holder = holds.get(kind).get(normalise(kind, key));
+        return holder != null && holder.isLive(clock.currentTimeMillis());
+    }
+
+    // Keys in the hold tables, including those of expired reservations not swept yet.
+    public int getHoldCount() {
+        int count = 0;
+        for (Map<String, Reservation> table : holds.values()) count += table.size();
+        return count;
+    }
+
+    // Drops the holds of every reservation whose deadline has passed.
+    public void expire() {
+        sweepLock.lock();
+        try {
+            sweep(clock.currentTimeMillis());
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        if (now / tickMillis <= sweptTick || !sweepLock.tryLock()) return;
+        try {
+            sweep(now);
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    // Drains every tick that has fully passed. After a long pause the ring is walked once, since every
+    // slot then holds only overdue or requeued entries.
+    private void sweep(long now) {
+        long target = now / tickMillis - 1;
+        long from = Math.max(sweptTick + 1, target - expiryRing.size() + 1);
+        for (long tick = from; tick <= target; tick++) {
+            Queue<Reservation> slot = expiryRing.get((int) (tick % expiryRing.size()));
+            for (int pending = slot.size(); pending > 0; pending--) {
+                Reservation reservation = slot.poll();
+                if (reservation == null) break;
+                if (reservation.queuedTick > tick) {
+                    // Renewed; still queued here only if its new tick maps to this slot.
+                    if (reservation.queuedTick % expiryRing.size() == tick % expiryRing.size()) slot.add(reservation);
+                    continue;
+                }
+                synchronized (reservation) {
+                    if (reservation.isReleased() || !reservation.expire(now)) continue;
+                    drop(reservation);
+                    expired.increment();
+                }
+            }
+        }
+        if (target > sweptTick) sweptTick = target;
+    }
+
+    // Queues the reservation under its deadline's tick unless it is already queued there.
+    private void schedule(Reservation reservation) {
+        long tick = reservation.getDeadline() / tickMillis;
+        if (tick == reservation.queuedTick) return;
+        reservation.queuedTick = tick;
+        expiryRing.get((int) (tick % expiryRing.size())).add(reservation);
+    }
+
+    private void drop(Reservation reservation) {
+        for (Kind kind : Kind.values()) {
+            String key = reservation.keys[kind.ordinal()];
+            if (key != null) holds.get(kind).remove(key, reservation);
+        }
+    }
+
+    private boolean holds(Reservation reservation, Kind kind, String key) {
+        return key != null && normalise(kind, key).equals(reservation.keys[kind.ordinal()]);
+    }
+
+    private boolean isRegistered(Kind kind, String key) {
+        return switch (kind) {
+            case USERNAME -> userDatabase.isUsernameTaken(key);
+            case NIC -> userDatabase.findByNic(key) != null;
+            case ACCOUNT -> userDatabase.findByAccount(key) != null;
+        };
+    }
+
+    private static String normalise(Kind kind, String key) {
+        return kind == Kind.USERNAME ? CaseFolding.fold(key) : key;
+    }
+}
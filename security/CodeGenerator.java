@@ -0,0 +1,112 @@
+package security;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+// Numeric one-time codes (OTPs, reset tokens) drawn from SecureRandom. Each thread keeps its own generator
+// and a buffer of random bytes, so the generator is only called once per BUFFER_BYTES / 4 codes and threads
+// never contend on a shared instance. Digits are written straight into a char[]; rejection sampling keeps
+// every code equally likely.
+public final class CodeGenerator {
+    private static final int BUFFER_BYTES = 4096;
+    private static final int MAX_DIGITS = 9;
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000,
+            10_000_000, 100_000_000, 1_000_000_000};
+
+    private static final ThreadLocal<RandomBuffer> BUFFERS = ThreadLocal.withInitial(RandomBuffer::new);
+
+    private final int digits;
+    private final int bound;
+    // Largest multiple of bound that fits in 31 bits; draws at or above it are discarded to avoid modulo bias.
+    private final int rejectionLimit;
+
+    public CodeGenerator(int digits) {
+        if (digits < 1 || digits > MAX_DIGITS) {
+            throw new IllegalArgumentException("Code length must be between 1 and " + MAX_DIGITS + " digits");
+        }
+        this.digits = digits;
+        this.bound = POWERS_OF_TEN[digits];
+        this.rejectionLimit = Integer.MAX_VALUE - (Integer.MAX_VALUE % bound);
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    public String nextCode() {
+        char[] chars = new char[digits];
+        writeDigits(nextValue(BUFFERS.get()), chars, 0);
+        return new String(chars);
+    }
+
+    // Writes one zero-padded code at dst[offset .. offset + digits) without allocating.
+    public void nextCode(char[] dst, int offset) {
+        writeDigits(nextValue(BUFFERS.get()), dst, offset);
+    }
+
+    // Pre-generates count codes, e.g. to hand out from a queue during a burst.
+    public String[] nextCodes(int count) {
+        RandomBuffer buffer = BUFFERS.get();
+        String[] codes = new String[count];
+        char[] chars = new char[digits];
+        for (int i = 0; i < count; i++) {
+            writeDigits(nextValue(buffer), chars, 0);
+            codes[i] = new String(chars);
+        }
+        return codes;
+    }
+
+    // Fills dst with back-to-back codes of getDigits() characters each; dst.length must be a multiple of it.
+    public void fill(char[] dst) {
+        if (dst.length % digits != 0) {
+            throw new IllegalArgumentException("Buffer length must be a multiple of " + digits);
+        }
+        RandomBuffer buffer = BUFFERS.get();
+        for (int offset = 0; offset < dst.length; offset += digits) {
+            writeDigits(nextValue(buffer), dst, offset);
+        }
+    }
+
+    private int nextValue(RandomBuffer buffer) {
+        int value;
+        do {
+            value = buffer.nextInt() & Integer.MAX_VALUE;
+        } while (value >= rejectionLimit);
+        return value % bound;
+    }
+
+    private void writeDigits(int value, char[] dst, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            dst[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static final class RandomBuffer {
+        private final SecureRandom random = newSecureRandom();
+        private final byte[] bytes = new byte[BUFFER_BYTES];
+        private int position = BUFFER_BYTES;
+
+        int nextInt() {
+            if (position == BUFFER_BYTES) {
+                random.nextBytes(bytes);
+                position = 0;
+            }
+            int value = (bytes[position] & 0xFF) << 24 | (bytes[position + 1] & 0xFF) << 16
+                    | (bytes[position + 2] & 0xFF) << 8 | (bytes[position + 3] & 0xFF);
+            // Consumed bytes are cleared so a heap dump does not reveal codes that were already handed out.
+            bytes[position] = bytes[position + 1] = bytes[position + 2] = bytes[position + 3] = 0;
+            position += 4;
+            return value;
+        }
+
+        // DRBG instances carry no shared lock, unlike the default NativePRNG on Linux.
+        private static SecureRandom newSecureRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
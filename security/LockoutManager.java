@@ -0,0 +1,334 @@
+package security;
+
+import config.AppConfig;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+import repository.WriteAheadLog;
+import util.CaseFolding;
+import util.Clock;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Temporary locks on onboarding NICs and login usernames. A check is one map lookup. Each lock doubles
+// the previous duration, from OTP_LOCK_DURATION_HOURS up to LOCKOUT_MAX_HOURS. The count of earlier locks
+// ("strikes") is forgotten LOCKOUT_STRIKE_MEMORY_HOURS after the last lock ends. A scheduled sweep drops
+// entries once both the lock and the strike memory are over; until then an expired lock simply reads as
+// unlocked.
+//
+// Each kind tracks at most maxKeys entries exactly. Beyond that, locks go to a fixed table of hashed
+// lock times without escalation: a collision can only lock a key longer, never unlock one, so a flood of
+// distinct keys costs no extra memory.
+//
+// When opened on a directory, every change is written to a write-ahead log before it is acknowledged.
+// The sweep compacts the log into the live entries once it has grown well past them.
+public class LockoutManager implements AutoCloseable {
+    public enum Kind { ONBOARDING, LOGIN }
+
+    private static final int OVERFLOW_SLOTS = 1 << 16;
+    private static final byte LOCK_RECORD = 1;
+    private static final Kind[] KINDS = Kind.values();
+
+    // Changed only inside the table's compute methods, which serialise changes per key and never act on an
+    // entry the sweep has already removed.
+    private static final class Entry {
+        volatile long lockedUntilMillis;
+        int strikes;
+        long forgetAtMillis;
+    }
+
+    private final Map<Kind, Map<String, Entry>> entries = new EnumMap<>(Kind.class);
+    private final Map<Kind, AtomicLongArray> overflow = new EnumMap<>(Kind.class);
+    private final int maxKeys;
+    private final long baseMillis;
+    private final long maxMillis;
+    private final long strikeMemoryMillis;
+    private final Clock clock;
+    private final ScheduledExecutorService sweeper;
+
+    // Changes hold the read side while they update an entry and queue its record; compaction holds the
+    // write side to rotate the log and queue the live entries, so no change can slip in between.
+    private final ReadWriteLock logLock = new ReentrantReadWriteLock();
+    private WriteAheadLog log;
+    private final LongAdder recordsSinceCompaction = new LongAdder();
+
+    private final Counter onboardingLocks;
+    private final Counter loginLocks;
+    private final Counter overflowLocks;
+
+    public LockoutManager(Clock clock) {
+        this(clock, MetricsRegistry.getInstance());
+    }
+
+    public LockoutManager(Clock clock, MetricsRegistry metrics) {
+        this(clock, AppConfig.LOCKOUT_MAX_KEYS, AppConfig.OTP_LOCK_DURATION_HOURS * 3_600_000L,
+                AppConfig.LOCKOUT_MAX_HOURS * 3_600_000L, AppConfig.LOCKOUT_STRIKE_MEMORY_HOURS * 3_600_000L, metrics);
+    }
+
+    public LockoutManager(Clock clock, int maxKeys, long baseMillis, long maxMillis, long strikeMemoryMillis) {
+        this(clock, maxKeys, baseMillis, maxMillis, strikeMemoryMillis, MetricsRegistry.getInstance());
+    }
+
+    public LockoutManager(Clock clock, int maxKeys, long baseMillis, long maxMillis, long strikeMemoryMillis,
+                          MetricsRegistry metrics) {
+        this.clock = clock;
+        this.maxKeys = maxKeys;
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.strikeMemoryMillis = strikeMemoryMillis;
+        this.onboardingLocks = metrics.counter("auth_lockouts_total", "kind", "onboarding");
+        this.loginLocks = metrics.counter("auth_lockouts_total", "kind", "login");
+        this.overflowLocks = metrics.counter("auth_lockouts_overflow_total");
+        for (Kind kind : KINDS) {
+            entries.put(kind, new ConcurrentHashMap<>());
+            overflow.put(kind, new AtomicLongArray(OVERFLOW_SLOTS));
+        }
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "lockout-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, AppConfig.LOCKOUT_SWEEP_SECONDS,
+                AppConfig.LOCKOUT_SWEEP_SECONDS, TimeUnit.SECONDS);
+        metrics.gauge("auth_lockout_entries", this::size);
+    }
+
+    // A manager whose locks survive restarts, recovered from the log in directory.
+    public static LockoutManager open(Path directory, Clock clock) throws IOException {
+        return open(directory, clock, MetricsRegistry.getInstance());
+    }
+
+    public static LockoutManager open(Path directory, Clock clock, MetricsRegistry metrics) throws IOException {
+        LockoutManager manager = new LockoutManager(clock, metrics);
+        long now = clock.currentTimeMillis();
+        WriteAheadLog.replay(directory, 0, (type, payload) -> manager.restore(payload, now));
+        manager.log = new WriteAheadLog(directory);
+        manager.compact();
+        return manager;
+    }
+
+    // Locks key for the next duration in its escalation and returns when the lock ends.
+    public long lock(Kind kind, String key) {
+        String normalised = normalise(kind, key);
+        long now = clock.currentTimeMillis();
+        (kind == Kind.ONBOARDING ? onboardingLocks : loginLocks).increment();
+        CompletableFuture<Long> logged = null;
+        long until;
+        logLock.readLock().lock();
+        try {
+            Map<String, Entry> table = entries.get(kind);
+            if (!table.containsKey(normalised) && table.size() >= maxKeys) {
+                until = now + baseMillis;
+                AtomicLongArray slots = overflow.get(kind);
+                slots.accumulateAndGet(slot(normalised), until, Math::max);
+                overflowLocks.increment();
+                logged = append(LOCK_RECORD, kind, "#" + slot(normalised), until, 0, until);
+            } else {
+                long[] lockedUntil = new long[1];
+                List<CompletableFuture<Long>> record = new ArrayList<>(1);
+                table.compute(normalised, (k, entry) -> {
+                    if (entry == null) entry = new Entry();
+                    if (now >= entry.forgetAtMillis) entry.strikes = 0;
+                    int strikes = ++entry.strikes;
+                    long duration = strikes > 30 ? maxMillis : Math.min(maxMillis, baseMillis << (strikes - 1));
+                    lockedUntil[0] = Math.max(entry.lockedUntilMillis, now + duration);
+                    entry.lockedUntilMillis = lockedUntil[0];
+                    entry.forgetAtMillis = lockedUntil[0] + strikeMemoryMillis;
+                    record.add(append(LOCK_RECORD, kind, normalised, lockedUntil[0], strikes, entry.forgetAtMillis));
+                    return entry;
+                });
+                until = lockedUntil[0];
+                logged = record.get(0);
+            }
+        } finally {
+            logLock.readLock().unlock();
+        }
+        awaitDurable(logged);
+        return until;
+    }
+
+    public boolean isLocked(Kind kind, String key) {
+        return getLockedUntil(kind, key) > clock.currentTimeMillis();
+    }
+
+    // When the current lock ends, or 0 if key is not locked.
+    public long getLockedUntil(Kind kind, String key) {
+        String normalised = normalise(kind, key);
+        Entry entry = entries.get(kind).get(normalised);
+        long until = entry == null ? 0 : entry.lockedUntilMillis;
+        long overflowUntil = overflow.get(kind).get(slot(normalised));
+        long latest = Math.max(until, overflowUntil);
+        return latest > clock.currentTimeMillis() ? latest : 0;
+    }
+
+    // Lifts the current lock; the strikes are kept, so the next lock still escalates.
+    public void unlock(Kind kind, String key) {
+        String normalised = normalise(kind, key);
+        List<CompletableFuture<Long>> record = new ArrayList<>(1);
+        logLock.readLock().lock();
+        try {
+            entries.get(kind).computeIfPresent(normalised, (k, entry) -> {
+                entry.lockedUntilMillis = 0;
+                record.add(append(LOCK_RECORD, kind, normalised, 0, entry.strikes, entry.forgetAtMillis));
+                return entry;
+            });
+        } finally {
+            logLock.readLock().unlock();
+        }
+        if (!record.isEmpty()) awaitDurable(record.get(0));
+    }
+
+    // Tracked entries across both kinds, locked or only remembering strikes.
+    public int size() {
+        int size = 0;
+        for (Map<String, Entry> table : entries.values()) size += table.size();
+        return size;
+    }
+
+    // Drops entries whose lock and strike memory are both over, and compacts the log if it has grown.
+    // Nothing is logged for dropped entries: replay skips records whose strike memory is over.
+    public void sweep() throws IOException {
+        long now = clock.currentTimeMillis();
+        int live = 0;
+        for (Kind kind : KINDS) {
+            Map<String, Entry> table = entries.get(kind);
+            for (String key : table.keySet()) {
+                table.computeIfPresent(key, (k, entry) -> now >= entry.forgetAtMillis ? null : entry);
+            }
+            live += table.size();
+            AtomicLongArray slots = overflow.get(kind);
+            for (int i = 0; i < OVERFLOW_SLOTS; i++) {
+                long until = slots.get(i);
+                if (until != 0 && until <= now) slots.compareAndSet(i, until, 0);
+            }
+        }
+        if (log != null && recordsSinceCompaction.sum() > Math.max(10_000, 2L * live)) compact();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // A sweep may be compacting; it must be done with the log before the log is closed. Not shutdownNow:
+        // interrupting it mid-compaction would close the log segment it is writing. For the same reason an
+        // interrupted close keeps waiting, and passes the interrupt on once the log is closed.
+        sweeper.shutdown();
+        boolean interrupted = false;
+        while (!sweeper.isTerminated()) {
+            try {
+                sweeper.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            if (log != null) log.close();
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    // Starts a new log segment holding just the live entries and deletes the older segments.
+    private void compact() throws IOException {
+        long firstSegment;
+        List<CompletableFuture<Long>> written = new ArrayList<>();
+        logLock.writeLock().lock();
+        try {
+            firstSegment = log.rotate();
+            long now = clock.currentTimeMillis();
+            for (Kind kind : KINDS) {
+                for (Map.Entry<String, Entry> e : entries.get(kind).entrySet()) {
+                    Entry entry = e.getValue();
+                    written.add(append(LOCK_RECORD, kind, e.getKey(), entry.lockedUntilMillis, entry.strikes,
+                            entry.forgetAtMillis));
+                }
+                AtomicLongArray slots = overflow.get(kind);
+                for (int i = 0; i < OVERFLOW_SLOTS; i++) {
+                    long until = slots.get(i);
+                    if (until > now) written.add(append(LOCK_RECORD, kind, "#" + i, until, 0, until));
+                }
+            }
+            recordsSinceCompaction.reset();
+            recordsSinceCompaction.add(written.size());
+        } finally {
+            logLock.writeLock().unlock();
+        }
+        for (CompletableFuture<Long> record : written) awaitDurable(record);
+        log.deleteSegmentsBefore(firstSegment);
+    }
+
+    // Later records for a key replace earlier ones. Overflow locks are logged under "#slot" with no strikes.
+    private void restore(ByteBuffer payload, long now) {
+        Kind kind = KINDS[payload.get()];
+        byte[] keyBytes = new byte[payload.getShort() & 0xFFFF];
+        payload.get(keyBytes);
+        String key = new String(keyBytes, StandardCharsets.UTF_8);
+        long until = payload.getLong();
+        int strikes = payload.getInt();
+        long forgetAt = payload.getLong();
+        Map<String, Entry> table = entries.get(kind);
+        if (forgetAt <= now) {
+            table.remove(key);
+        } else if (strikes == 0) {
+            AtomicLongArray slots = overflow.get(kind);
+            slots.accumulateAndGet(Integer.parseInt(key.substring(1)), until, Math::max);
+        } else if (table.containsKey(key) || table.size() < maxKeys) {
+            Entry entry = table.computeIfAbsent(key, k -> new Entry());
+            entry.lockedUntilMillis = until;
+            entry.strikes = strikes;
+            entry.forgetAtMillis = forgetAt;
+        } else {
+            overflow.get(kind).accumulateAndGet(slot(key), until, Math::max);
+        }
+    }
+
+    private CompletableFuture<Long> append(byte type, Kind kind, String key, long until, int strikes, long forgetAt) {
+        if (log == null) return null;
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 2 + keyBytes.length + 8 + 4 + 8);
+        record.put((byte) kind.ordinal()).putShort((short) keyBytes.length).put(keyBytes)
+                .putLong(until).putInt(strikes).putLong(forgetAt);
+        recordsSinceCompaction.increment();
+        return log.append(type, record.array());
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[System] Lockout sweep failed: " + e.getMessage());
+        }
+    }
+
+    private static void awaitDurable(CompletableFuture<Long> logged) {
+        if (logged == null) return;
+        try {
+            logged.join();
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException(new IOException("Failed to persist lockout", e));
+        }
+    }
+
+    private static int slot(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (OVERFLOW_SLOTS - 1);
+    }
+
+    private static String normalise(Kind kind, String key) {
+        return kind == Kind.LOGIN ? CaseFolding.fold(key) : key;
+    }
+}
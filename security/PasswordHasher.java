@@ -0,0 +1,172 @@
+package security;
+
+import config.AppConfig;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// PBKDF2 password hashing on a small bounded pool, so a burst of logins queues here (or is rejected when
+// the queue is full) instead of tying up every request thread. The iteration count is calibrated to a
+// target latency on this host; weaker hashes (and legacy plaintext) are upgraded on the next good login.
+// Stored format: pbkdf2-sha256$<iterations>$<base64 salt>$<base64 hash>.
+public class PasswordHasher implements AutoCloseable {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int MIN_ITERATIONS = 10_000;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadPoolExecutor pool;
+    private final int iterations;
+    private final LatencyHistogram latency;
+
+    public static final class Verification {
+        private final boolean matches;
+        private final String upgradedHash;
+
+        Verification(boolean matches, String upgradedHash) {
+            this.matches = matches;
+            this.upgradedHash = upgradedHash;
+        }
+
+        public boolean matches() { return matches; }
+        // Non-null when the stored hash was weaker than current parameters (or plaintext) and should be replaced.
+        public String getUpgradedHash() { return upgradedHash; }
+    }
+
+    public PasswordHasher() {
+        this(AppConfig.PASSWORD_HASH_TARGET_MILLIS, AppConfig.PASSWORD_HASH_THREADS, AppConfig.PASSWORD_HASH_QUEUE_CAPACITY);
+    }
+
+    public PasswordHasher(long targetMillis, int threads, int queueCapacity) {
+        this(targetMillis, threads, queueCapacity, MetricsRegistry.getInstance());
+    }
+
+    // The hasher's latency and gauges live in the given registry; give each hasher in a process its own
+    // registry if their completed counts and latencies are to be told apart.
+    public PasswordHasher(long targetMillis, int threads, int queueCapacity, MetricsRegistry metrics) {
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+            Thread thread = new Thread(task, "password-hasher-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.iterations = calibrate(targetMillis);
+        this.latency = metrics.histogram("password_hash_seconds");
+        metrics.gauge("password_hash_queue_depth", this::getQueueDepth);
+        metrics.gauge("password_hash_active", this::getActiveCount);
+    }
+
+    public CompletableFuture<String> hash(String password) {
+        return submit(() -> encode(password));
+    }
+
+    public CompletableFuture<Verification> verify(String password, String stored) {
+        return submit(() -> {
+            boolean matches;
+            boolean outdated;
+            String[] parts = stored == null ? null : stored.split("\\$");
+            if (parts != null && parts.length == 4 && parts[0].equals(PREFIX)) {
+                int storedIterations = Integer.parseInt(parts[1]);
+                byte[] salt = Base64.getDecoder().decode(parts[2]);
+                byte[] expected = Base64.getDecoder().decode(parts[3]);
+                matches = MessageDigest.isEqual(derive(password, salt, storedIterations), expected);
+                outdated = storedIterations < iterations;
+            } else {
+                // Legacy plaintext record.
+                byte[] expected = (stored == null ? "" : stored).getBytes(StandardCharsets.UTF_8);
+                matches = stored != null && MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), expected);
+                outdated = true;
+            }
+            return new Verification(matches, matches && outdated ? encode(password) : null);
+        });
+    }
+
+    public int getIterations() { return iterations; }
+    public int getQueueDepth() { return pool.getQueue().size(); }
+    public int getActiveCount() { return pool.getActiveCount(); }
+    public long getCompletedCount() { return latency.getCount(); }
+    public double getMeanLatencyMillis() { return latency.getMean() / 1e6; }
+    public double getMaxLatencyMillis() { return latency.getMax() / 1e6; }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private interface HashTask<T> {
+        T run() throws GeneralSecurityException;
+    }
+
+    // Latency is measured from submission, so it includes time spent waiting in the queue.
+    private <T> CompletableFuture<T> submit(HashTask<T> task) {
+        long submitted = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                try {
+                    result.complete(task.run());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    latency.recordSince(submitted);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private String encode(String password) throws GeneralSecurityException {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // Times a probe derivation and scales the iteration count linearly to hit the target latency.
+    private static int calibrate(long targetMillis) {
+        try {
+            byte[] salt = new byte[SALT_BYTES];
+            long best = Long.MAX_VALUE;
+            // Best of several rounds, so JIT warm-up does not inflate the measurement.
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                derive("calibration", salt, MIN_ITERATIONS);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double nanosPerIteration = (double) best / MIN_ITERATIONS;
+            long scaled = (long) (TimeUnit.MILLISECONDS.toNanos(targetMillis) / nanosPerIteration);
+            // Rounded so that small timing jitter between restarts does not trigger needless rehashing.
+            scaled = Math.round(scaled / 10_000.0) * 10_000;
+            return (int) Math.max(MIN_ITERATIONS, Math.min(scaled, Integer.MAX_VALUE));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
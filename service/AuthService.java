@@ -1,89 +1,175 @@
 package service;
 
 import config.AppConfig;
+import listener.OTPListener;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 import model.User;
-import repository.UserDatabase;
+import ratelimit.SlidingWindowRateLimiter;
+import repository.ExpiringCodeStore;
+import repository.UserRepository;
+import security.CodeGenerator;
+import security.LockoutManager;
+import security.PasswordHasher;
+import util.CaseFolding;
+import util.Clock;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class AuthService {
-    private final UserDatabase userDatabase;
+    private final UserRepository userDatabase;
+    private final PasswordHasher passwordHasher;
+    private final Clock clock;
+    // Unknown usernames are checked against this so they take as long as a real verification.
+    private final String unknownUserHash;
+    private SlidingWindowRateLimiter rateLimiter;
+    private final LockoutManager lockouts;
+    private OTPListener resetTokenListener;
+    private final ExpiringCodeStore passwordResetTokens;
+    private final CodeGenerator resetTokenGenerator = new CodeGenerator(AppConfig.RESET_TOKEN_DIGITS);
+
+    private final LatencyHistogram validationLatency = MetricsRegistry.getInstance().histogram("auth_credential_validation_seconds");
+    private final Counter loginsSucceeded = MetricsRegistry.getInstance().counter("auth_logins_total", "result", "success");
+    private final Counter loginsFailed = MetricsRegistry.getInstance().counter("auth_logins_total", "result", "failure");
+    private final Counter loginsLocked = MetricsRegistry.getInstance().counter("auth_logins_total", "result", "locked");
+    private final Counter loginsRateLimited = MetricsRegistry.getInstance().counter("auth_logins_total", "result", "rate_limited");
+    private final Counter loginsUnavailable = MetricsRegistry.getInstance().counter("auth_logins_total", "result", "unavailable");
+
+    public AuthService(UserRepository userDatabase, PasswordHasher passwordHasher) {
+        this(userDatabase, passwordHasher, Clock.cached());
+    }
 
-    private List<String> lockedOnBoardingUser = new ArrayList<>();
+    // Locks kept in memory only.
+    public AuthService(UserRepository userDatabase, PasswordHasher passwordHasher, Clock clock) {
+        this(userDatabase, passwordHasher, clock, new LockoutManager(clock));
+    }
 
-    private Map<String, LocalDateTime> onboardingLockedTime = new HashMap<>();
-    private Map<String, Map<String, LocalDateTime>> passwordResetToken = new HashMap<>();
+    // The caller owns lockouts and closes it.
+    public AuthService(UserRepository userDatabase, PasswordHasher passwordHasher, Clock clock, LockoutManager lockouts) {
+        this.userDatabase = userDatabase;
+        this.passwordHasher = passwordHasher;
+        this.clock = clock;
+        this.lockouts = lockouts;
+        this.passwordResetTokens = new ExpiringCodeStore(clock);
+        this.unknownUserHash = passwordHasher.hash("unknown-user").join();
+    }
 
+    public void setRateLimiter(SlidingWindowRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
 
-    public AuthService(UserDatabase userDatabase) {
-        this.userDatabase = userDatabase;
+    // Delivers reset tokens like OTPs; without one they are printed.
+    public void setResetTokenListener(OTPListener resetTokenListener) {
+        this.resetTokenListener = resetTokenListener;
     }
 
     public User validateCredentials(String username, String password) {
+        return validateCredentials(username, password, null);
+    }
+
+    public User validateCredentials(String username, String password, String source) {
+        return validateCredentialsAsync(username, password, source).join();
+    }
+
+    // Completes on the hashing pool; callers that must not block can chain on the result instead.
+    // Rate limits are checked before hashing, so a flood of guesses cannot saturate the hashing pool.
+    public CompletableFuture<User> validateCredentialsAsync(String username, String password, String source) {
+        long start = System.nanoTime();
+        if (rateLimiter != null && (!rateLimiter.tryAcquire(SlidingWindowRateLimiter.Dimension.SOURCE, source)
+                || !rateLimiter.tryAcquire(SlidingWindowRateLimiter.Dimension.USERNAME, CaseFolding.fold(username)))) {
+            System.out.println("Too many login attempts for " + username);
+            loginsRateLimited.increment();
+            return CompletableFuture.completedFuture(null);
+        }
+
         User user = userDatabase.findByUsername(username);
-        if (user == null) return null;
+        if (user == null) {
+            return passwordHasher.verify(password, unknownUserHash).handle((result, e) -> {
+                loginsFailed.increment();
+                validationLatency.recordSince(start);
+                return null;
+            });
+        }
 
-        if (user.getLockedUntil() != null && user.getLockedUntil().isAfter(LocalDateTime.now())) {
-            System.out.println("Account locked until " + user.getLockedUntil());
-            return null;
+        long lockedUntil = lockouts.getLockedUntil(LockoutManager.Kind.LOGIN, user.getUsername());
+        if (lockedUntil != 0) {
+            System.out.println("Account locked until " + Clock.toLocalDateTime(lockedUntil));
+            loginsLocked.increment();
+            return CompletableFuture.completedFuture(null);
         }
 
-        if (user.getPassword().equals(password)) {
+        return passwordHasher.verify(password, user.getPassword()).handle((result, e) -> {
+            validationLatency.recordSince(start);
+            if (e != null) {
+                loginsUnavailable.increment();
+                System.out.println("Login temporarily unavailable: " + rootMessage(e));
+                return null;
+            }
+            if (!result.matches()) {
+                loginsFailed.increment();
+                user.incrementLoginAttempts();
+                return null;
+            }
+            if (result.getUpgradedHash() != null) {
+                user.setPassword(result.getUpgradedHash());
+                userDatabase.saveUser(user);
+            }
             user.resetLoginAttempts();
+            loginsSucceeded.increment();
             return user;
-        }
+        });
+    }
+
+    public void changePassword(User user, String newPassword) {
+        user.setPassword(passwordHasher.hash(newPassword).join());
+        userDatabase.saveUser(user);
+    }
 
-        return null;
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause.getClass().getSimpleName();
     }
 
-    public void lockOnboardingUser(String userId) {
-        lockedOnBoardingUser.add(userId);
-        onboardingLockedTime.put(userId, LocalDateTime.now().plusHours(AppConfig.OTP_LOCK_DURATION_HOURS));
+    // Returns when the lock ends; repeat lockouts of the same NIC last longer.
+    public LocalDateTime lockOnboardingUser(String userId) {
+        return Clock.toLocalDateTime(lockouts.lock(LockoutManager.Kind.ONBOARDING, userId));
     }
 
     public boolean isOnboardingUserLocked(String userId) {
-        return lockedOnBoardingUser.contains(userId);
+        return lockouts.isLocked(LockoutManager.Kind.ONBOARDING, userId);
     }
 
     public LocalDateTime getOnboardingUserLockedTime(String userId) {
-        return onboardingLockedTime.get(userId);
+        long lockedUntil = lockouts.getLockedUntil(LockoutManager.Kind.ONBOARDING, userId);
+        return lockedUntil == 0 ? null : Clock.toLocalDateTime(lockedUntil);
     }
 
-    public void lockUser(User user) {
-        user.setLockedUntil(LocalDateTime.now().plusHours(AppConfig.OTP_LOCK_DURATION_HOURS));
+    // Returns when the lock ends; repeat lockouts of the same user last longer.
+    public LocalDateTime lockUser(User user) {
+        return Clock.toLocalDateTime(lockouts.lock(LockoutManager.Kind.LOGIN, user.getUsername()));
     }
 
     public void generatePasswordResetToken(String username, String channel) {
-        String token = String.format("%06d", (int) (Math.random() * 999999));
-        Map<String, LocalDateTime> tokenInfo = new HashMap<>();
-        tokenInfo.put(token, LocalDateTime.now().plusMinutes(AppConfig.RESET_TOKEN_VALIDITY_MINUTES));
-        passwordResetToken.put(username,tokenInfo);
-        System.out.println("[System] Reset token: " + token + " to " + username + " via " + channel);
-        System.out.println("Reset Token valid for " + AppConfig.RESET_TOKEN_VALIDITY_MINUTES + " minutes");
+        String token = resetTokenGenerator.nextCode();
+        passwordResetTokens.put(username, token, AppConfig.RESET_TOKEN_VALIDITY_MINUTES * 60_000L);
+        if (resetTokenListener != null) resetTokenListener.sendOTP(username, token, channel);
+        else System.out.println("[System] Reset token: " + token + " to " + username + " via " + channel);
     }
 
     public boolean isPasswordResetTokenMatch(String username, String inputToken) {
-        if (!passwordResetToken.containsKey(username)) {
-            return false;
-        }
-        Map<String, LocalDateTime> tokenInfo = passwordResetToken.get(username);
-        return tokenInfo.containsKey(inputToken);
+        return passwordResetTokens.matches(username, inputToken);
     }
 
     public boolean isPasswordResetTokenExpired(String username, String token) {
-        if (!passwordResetToken.containsKey(username)) {
-            return true;
-        }
-        Map<String, LocalDateTime> tokenInfo = passwordResetToken.get(username);
-        if (!tokenInfo.containsKey(token)) {
-            return true;
-        }
-        LocalDateTime expiryTime = tokenInfo.get(token);
-        return LocalDateTime.now().isAfter(expiryTime);
+        return !passwordResetTokens.matches(username, token) || passwordResetTokens.isExpired(username);
+    }
+
+    // Must be called once the token has been used, so the same token cannot reset the password twice.
+    public boolean consumePasswordResetToken(String username, String token) {
+        return passwordResetTokens.consume(username, token);
     }
 }
 
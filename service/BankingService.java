@@ -1,23 +1,102 @@
 package service;
 
+import config.AppConfig;
 import factory.UserFactory;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 import model.User;
-import repository.UserDatabase;
+import portfolio.CoreBankingSource;
+import portfolio.DashboardSnapshot;
+import portfolio.PortfolioCache;
+import portfolio.StubCoreBankingSource;
+import repository.UserRepository;
+import reservation.Reservation;
+import reservation.ReservationService;
+import util.CaseFolding;
+import util.Clock;
+import validation.OnboardingRecord;
 
 public class BankingService {
     public UserFactory userFactory;
-    public UserDatabase userDatabase;
+    public UserRepository userDatabase;
+    public final ReservationService reservations;
     private OTPService otpService;
+    private final PortfolioCache portfolios;
+    private final Counter onboarded = MetricsRegistry.getInstance().counter("onboarding_completed_total");
+    private final LatencyHistogram onboardingLatency = MetricsRegistry.getInstance().histogram("onboarding_seconds");
 
-    public BankingService(UserFactory userFactory, UserDatabase userDatabase, OTPService otpService) {
+    public BankingService(UserFactory userFactory, UserRepository userDatabase, OTPService otpService) {
+        this(userFactory, userDatabase, otpService, new StubCoreBankingSource(0));
+    }
+
+    public BankingService(UserFactory userFactory, UserRepository userDatabase, OTPService otpService,
+                          CoreBankingSource coreBanking) {
         this.userFactory = userFactory;
         this.userDatabase = userDatabase;
         this.otpService = otpService;
+        this.reservations = new ReservationService(userDatabase);
+        this.portfolios = new PortfolioCache(coreBanking, AppConfig.PORTFOLIO_CACHE_CAPACITY, Clock.cached());
+    }
+
+    // Served from the cache after the first load, so repeat logins do not reach core banking.
+    public DashboardSnapshot getDashboard(User user) {
+        return portfolios.get(CaseFolding.fold(user.getUsername()), user.getAccountNumber());
     }
 
+    public void invalidatePortfolio(String username) {
+        portfolios.invalidate(CaseFolding.fold(username));
+    }
+
+    // The keys are reserved before the password is hashed, so a taken one fails without paying for it.
     public User onboardUser(String nic, String accountNumber, String username, String password, String displayName) {
-        User user = userFactory.createUser(nic, accountNumber, username, password, displayName);
-        userDatabase.addUser(user);
-        return user;
+        long start = System.nanoTime();
+        Reservation reservation = reserve(username, nic, accountNumber);
+        try {
+            User user = userFactory.createUser(nic, accountNumber, username, password, displayName);
+            reservations.commit(reservation, user);
+            completed(start);
+            return user;
+        } finally {
+            reservations.release(reservation);
+        }
+    }
+
+    public User onboardUser(OnboardingRecord record) {
+        return onboardUser(record, reserve(record.getUsername(), record.getNic(), record.getAccountNumber()));
+    }
+
+    // Registers the user together with their contact details in a single insert. The reservation must
+    // hold the record's username, NIC and account number; it is released either way.
+    public User onboardUser(OnboardingRecord record, Reservation reservation) {
+        long start = System.nanoTime();
+        try {
+            User user = userFactory.createUser(record.getNic(), record.getAccountNumber(), record.getUsername(),
+                    record.getPassword(), record.getDisplayName());
+            user.setMobile(record.getMobile());
+            user.setEmail(record.getEmail());
+            user.setPreferredOTPChannel(record.getMobile().isEmpty() ? record.getEmail() : record.getMobile());
+            reservations.commit(reservation, user);
+            completed(start);
+            return user;
+        } finally {
+            reservations.release(reservation);
+        }
+    }
+
+    private Reservation reserve(String username, String nic, String accountNumber) {
+        Reservation reservation = reservations.open();
+        String error = null;
+        if (!reservations.hold(reservation, ReservationService.Kind.USERNAME, username)) error = "Username taken";
+        else if (!reservations.hold(reservation, ReservationService.Kind.NIC, nic)) error = "NIC already registered";
+        else if (!reservations.hold(reservation, ReservationService.Kind.ACCOUNT, accountNumber)) error = "Account already registered";
+        if (error == null) return reservation;
+        reservations.release(reservation);
+        throw new IllegalArgumentException(error);
+    }
+
+    private void completed(long startNanos) {
+        onboarded.increment();
+        onboardingLatency.recordSince(startNanos);
     }
 }
@@ -0,0 +1,449 @@
+package service;
+
+import config.AppConfig;
+import listener.OTPGateway;
+import listener.OTPListener;
+import listener.OTPMessage;
+import metrics.Counter;
+import metrics.HistogramSnapshot;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import util.CircuitBreaker;
+import util.Clock;
+import util.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// OTPListener that hands codes to a bounded per-channel queue and returns immediately. One worker per
+// channel drains its queue in micro-batches, so a slow gateway delays delivery but never the caller, and
+// a code sent to several channels goes out on all of them in parallel.
+//
+// Each gateway call has a deadline, and each channel a circuit breaker that opens after repeated failures
+// or timeouts. A batch that times out, keeps failing or meets an open breaker is passed on to each
+// message's fallback channel, if it has one. New codes with a fallback skip a degraded channel up
+// front: one whose breaker is open, or whose recent calls mostly failed or whose recent gateway latency
+// or oldest queued code is past half the deadline. A few codes still go to a slow channel with a closed
+// breaker, and the half-open trial gets through, so routing notices when the channel recovers.
+//
+// A call that overruns its deadline is interrupted, but a gateway that ignores interrupts keeps its
+// thread. Such calls are counted per channel until they return; while OTP_MAX_STUCK_CALLS are hung the
+// channel makes no new calls and its batches fail over, so a wedged gateway cannot pile up threads.
+//
+// Counters, latencies and gauges are registered in the registry passed in (the global one by default);
+// getStats reads them from there, so dispatchers that must be told apart need registries of their own.
+public class OTPDispatcher implements OTPListener, AutoCloseable {
+    public enum OverflowPolicy { BLOCK, DROP_NEWEST, DROP_OLDEST }
+
+    private static final int PROBE_EVERY = 16;
+    // Life of one gateway call; a call abandoned while running is stuck until it returns.
+    private static final int CALL_QUEUED = 0;
+    private static final int CALL_RUNNING = 1;
+    private static final int CALL_DONE = 2;
+    private static final int CALL_ABANDONED = 3;
+
+    private final OTPGateway gateway;
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final int maxRetries;
+    private final OverflowPolicy overflowPolicy;
+    private final long deadlineMillis;
+    private final int breakerFailures;
+    private final long breakerOpenMillis;
+    private final Clock clock;
+    private final MetricsRegistry metrics;
+    private final Map<String, ChannelQueue> channels = new ConcurrentHashMap<>();
+    // Gateway calls run here so a worker can give up on a call that overruns its deadline.
+    private final ExecutorService gatewayCalls = Executors.newCachedThreadPool(VirtualThreads.factory("otp-gateway-"));
+    private volatile boolean closed;
+
+    public OTPDispatcher(OTPGateway gateway) {
+        this(gateway, AppConfig.OTP_QUEUE_CAPACITY, AppConfig.OTP_BATCH_SIZE,
+                AppConfig.OTP_BATCH_LINGER_MILLIS, AppConfig.OTP_DELIVERY_RETRIES, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public OTPDispatcher(OTPGateway gateway, int queueCapacity, int maxBatchSize, long lingerMillis,
+                         int maxRetries, OverflowPolicy overflowPolicy) {
+        this(gateway, queueCapacity, maxBatchSize, lingerMillis, maxRetries, overflowPolicy,
+                AppConfig.OTP_GATEWAY_DEADLINE_MILLIS, AppConfig.OTP_BREAKER_FAILURES, AppConfig.OTP_BREAKER_OPEN_MILLIS,
+                Clock.cached(), MetricsRegistry.getInstance());
+    }
+
+    public OTPDispatcher(OTPGateway gateway, int queueCapacity, int maxBatchSize, long lingerMillis,
+                         int maxRetries, OverflowPolicy overflowPolicy, long deadlineMillis, int breakerFailures,
+                         long breakerOpenMillis, Clock clock, MetricsRegistry metrics) {
+        this.gateway = gateway;
+        this.queueCapacity = queueCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.maxRetries = maxRetries;
+        this.overflowPolicy = overflowPolicy;
+        this.deadlineMillis = deadlineMillis;
+        this.breakerFailures = breakerFailures;
+        this.breakerOpenMillis = breakerOpenMillis;
+        this.clock = clock;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void sendOTP(String userId, String otp, String channel) {
+        sendOTP(userId, otp, channel, null);
+    }
+
+    @Override
+    public void sendOTP(String userId, String otp, String channel, String fallbackChannel) {
+        if (closed) throw new IllegalStateException("OTP dispatcher is closed");
+        ChannelQueue preferred = queue(channel);
+        if (fallbackChannel != null) {
+            ChannelQueue alternate = queue(fallbackChannel);
+            if (alternate != preferred && preferred.shouldAvoid() && !alternate.isDegraded()) {
+                preferred.failedOver.increment();
+                alternate.offer(new OTPMessage(userId, otp, fallbackChannel));
+                return;
+            }
+        }
+        preferred.offer(new OTPMessage(userId, otp, channel, fallbackChannel));
+    }
+
+    @Override
+    public void sendOTPToAll(String userId, String otp, List<String> channels) {
+        if (closed) throw new IllegalStateException("OTP dispatcher is closed");
+        // One message per gateway, even if two of the channels route to the same one.
+        Map<ChannelQueue, String> targets = new LinkedHashMap<>();
+        for (String channel : channels) targets.putIfAbsent(queue(channel), channel);
+        targets.forEach((queue, channel) -> queue.offer(new OTPMessage(userId, otp, channel)));
+    }
+
+    public Map<String, ChannelStats> getStats() {
+        Map<String, ChannelStats> stats = new TreeMap<>();
+        channels.forEach((channel, queue) -> stats.put(channel, queue.stats()));
+        return stats;
+    }
+
+    // Stops accepting codes and waits for the queued ones to be delivered. An interrupt cuts the wait
+    // short and is passed on to the caller.
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            for (ChannelQueue queue : channels.values()) queue.worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            gatewayCalls.shutdownNow();
+        }
+    }
+
+    private ChannelQueue queue(String channel) {
+        return channels.computeIfAbsent(channelKey(channel), ChannelQueue::new);
+    }
+
+    // Users may pick a raw address as their preferred channel; route it to the matching gateway queue.
+    private static String channelKey(String channel) {
+        if (channel == null) return "mobile";
+        return channel.equalsIgnoreCase("email") || channel.contains("@") ? "email" : "mobile";
+    }
+
+    public static final class ChannelStats {
+        private final int queueDepth;
+        private final long enqueued;
+        private final long delivered;
+        private final long dropped;
+        private final long failed;
+        private final long retried;
+        private final long batches;
+        private final long timedOut;
+        private final long failedOver;
+        private final int stuckCalls;
+        private final CircuitBreaker.State circuit;
+        private final double recentSuccessRate;
+        private final double recentGatewayMillis;
+        private final double meanLatencyMillis;
+        private final double p99LatencyMillis;
+        private final double maxLatencyMillis;
+
+        ChannelStats(int queueDepth, long enqueued, long delivered, long dropped, long failed, long retried,
+                     long batches, long timedOut, long failedOver, int stuckCalls, CircuitBreaker.State circuit,
+                     double recentSuccessRate, double recentGatewayMillis, double meanLatencyMillis,
+                     double p99LatencyMillis, double maxLatencyMillis) {
+            this.queueDepth = queueDepth;
+            this.enqueued = enqueued;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.failed = failed;
+            this.retried = retried;
+            this.batches = batches;
+            this.timedOut = timedOut;
+            this.failedOver = failedOver;
+            this.stuckCalls = stuckCalls;
+            this.circuit = circuit;
+            this.recentSuccessRate = recentSuccessRate;
+            this.recentGatewayMillis = recentGatewayMillis;
+            this.meanLatencyMillis = meanLatencyMillis;
+            this.p99LatencyMillis = p99LatencyMillis;
+            this.maxLatencyMillis = maxLatencyMillis;
+        }
+
+        public int getQueueDepth() { return queueDepth; }
+        public long getEnqueued() { return enqueued; }
+        public long getDelivered() { return delivered; }
+        public long getDropped() { return dropped; }
+        public long getFailed() { return failed; }
+        public long getRetried() { return retried; }
+        public long getBatches() { return batches; }
+        // Codes in batches whose gateway call missed the deadline.
+        public long getTimedOut() { return timedOut; }
+        // Codes passed from this channel to their fallback, up front or after a failed batch.
+        public long getFailedOver() { return failedOver; }
+        // Gateway calls abandoned at their deadline that have not returned yet.
+        public int getStuckCalls() { return stuckCalls; }
+        public CircuitBreaker.State getCircuit() { return circuit; }
+        // Moving averages over the last few gateway calls, which the routing looks at.
+        public double getRecentSuccessRate() { return recentSuccessRate; }
+        public double getRecentGatewayMillis() { return recentGatewayMillis; }
+        public double getMeanLatencyMillis() { return meanLatencyMillis; }
+        public double getP99LatencyMillis() { return p99LatencyMillis; }
+        public double getMaxLatencyMillis() { return maxLatencyMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("depth=%d enqueued=%d delivered=%d dropped=%d failed=%d retried=%d batches=%d " +
+                            "timedOut=%d failedOver=%d stuck=%d circuit=%s recent(success=%.2f gateway=%.2fms) " +
+                            "latency(mean=%.2fms p99=%.2fms max=%.2fms)", queueDepth, enqueued, delivered, dropped, failed,
+                    retried, batches, timedOut, failedOver, stuckCalls, circuit, recentSuccessRate, recentGatewayMillis,
+                    meanLatencyMillis, p99LatencyMillis, maxLatencyMillis);
+        }
+    }
+
+    private final class ChannelQueue implements Runnable {
+        private final String channel;
+        private final BlockingQueue<OTPMessage> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Thread worker;
+        private final Counter enqueued;
+        private final Counter delivered;
+        private final Counter dropped;
+        private final Counter failed;
+        private final Counter retried;
+        private final Counter batches;
+        private final Counter timedOut;
+        private final Counter failedOver;
+        private final LatencyHistogram latency;
+        private final CircuitBreaker breaker;
+        // Moving averages of the gateway calls, written only by the worker.
+        private volatile double recentSuccessRate = 1.0;
+        private volatile double recentGatewayMillis;
+        private final AtomicInteger avoided = new AtomicInteger();
+        private final AtomicInteger stuckCalls = new AtomicInteger();
+
+        ChannelQueue(String channel) {
+            this.channel = channel;
+            this.enqueued = metrics.counter("otp_enqueued_total", "channel", channel);
+            this.delivered = metrics.counter("otp_delivered_total", "channel", channel);
+            this.dropped = metrics.counter("otp_dropped_total", "channel", channel);
+            this.failed = metrics.counter("otp_failed_total", "channel", channel);
+            this.retried = metrics.counter("otp_retried_total", "channel", channel);
+            this.batches = metrics.counter("otp_batches_total", "channel", channel);
+            this.timedOut = metrics.counter("otp_timed_out_total", "channel", channel);
+            this.failedOver = metrics.counter("otp_failed_over_total", "channel", channel);
+            this.latency = metrics.histogram("otp_delivery_seconds", "channel", channel);
+            this.breaker = new CircuitBreaker(clock, breakerFailures, breakerOpenMillis);
+            metrics.gauge("otp_queue_depth", queue::size, "channel", channel);
+            metrics.gauge("otp_circuit_state", () -> breaker.getState().ordinal(), "channel", channel);
+            metrics.gauge("otp_gateway_calls_stuck", stuckCalls::get, "channel", channel);
+            this.worker = VirtualThreads.start("otp-dispatch-" + channel + "-", this);
+        }
+
+        void offer(OTPMessage message) {
+            offer(message, overflowPolicy);
+        }
+
+        void offer(OTPMessage message, OverflowPolicy policy) {
+            enqueued.increment();
+            switch (policy) {
+                case BLOCK -> {
+                    try {
+                        queue.put(message);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.increment();
+                    }
+                }
+                case DROP_NEWEST -> {
+                    if (!queue.offer(message)) dropped.increment();
+                }
+                case DROP_OLDEST -> {
+                    while (!queue.offer(message)) {
+                        if (queue.poll() != null) dropped.increment();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<OTPMessage> batch = new ArrayList<>(maxBatchSize);
+            while (!closed || !queue.isEmpty()) {
+                try {
+                    OTPMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+
+                    // Linger briefly so a burst of codes shares one gateway call.
+                    long deadline = System.nanoTime() + lingerNanos;
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) break;
+                        OTPMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                    deliver(batch);
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        // A timeout is not retried on this channel: the gateway is slow, so the batch fails over at once.
+        private void deliver(List<OTPMessage> batch) throws InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                if (!breaker.tryAcquire()) {
+                    failOver(batch, "circuit open");
+                    return;
+                }
+                int hung = stuckCalls.get();
+                if (hung >= AppConfig.OTP_MAX_STUCK_CALLS) {
+                    breaker.onFailure();
+                    failOver(batch, hung + " gateway calls still hung");
+                    return;
+                }
+                boolean trial = breaker.getState() != CircuitBreaker.State.CLOSED;
+                for (OTPMessage message : batch) message.incrementAttempts();
+                // The gateway gets its own copy, since a call that overruns may still be reading it.
+                List<OTPMessage> sent = List.copyOf(batch);
+                long start = System.nanoTime();
+                AtomicInteger state = new AtomicInteger(CALL_QUEUED);
+                Future<?> call = gatewayCalls.submit(() -> {
+                    if (!state.compareAndSet(CALL_QUEUED, CALL_RUNNING)) return null;
+                    try {
+                        gateway.deliver(channel, sent);
+                    } finally {
+                        if (!state.compareAndSet(CALL_RUNNING, CALL_DONE)) stuckCalls.decrementAndGet();
+                    }
+                    return null;
+                });
+                try {
+                    call.get(deadlineMillis, TimeUnit.MILLISECONDS);
+                    breaker.onSuccess();
+                    // Averages from before the outage say nothing about the recovered gateway.
+                    if (trial) {
+                        recentSuccessRate = 1.0;
+                        recentGatewayMillis = 0;
+                    }
+                    observe(true, System.nanoTime() - start);
+                    batches.increment();
+                    delivered.add(batch.size());
+                    long now = System.nanoTime();
+                    for (OTPMessage message : batch) latency.record(now - message.getEnqueuedAtNanos());
+                    return;
+                } catch (InterruptedException e) {
+                    abandon(call, state);
+                    failed.add(batch.size());
+                    throw e;
+                } catch (TimeoutException e) {
+                    abandon(call, state);
+                    breaker.onFailure();
+                    observe(false, System.nanoTime() - start);
+                    timedOut.add(batch.size());
+                    failOver(batch, "no answer within " + deadlineMillis + " ms");
+                    return;
+                } catch (ExecutionException e) {
+                    breaker.onFailure();
+                    observe(false, System.nanoTime() - start);
+                    if (attempt >= maxRetries) {
+                        failOver(batch, e.getCause().getMessage());
+                        return;
+                    }
+                    retried.add(batch.size());
+                    Thread.sleep(10L << attempt);
+                }
+            }
+        }
+
+        // Gives up on a call that has not returned. One still running counts as stuck until the gateway
+        // returns, however long it ignores the interrupt.
+        private void abandon(Future<?> call, AtomicInteger state) {
+            if (state.compareAndSet(CALL_RUNNING, CALL_ABANDONED)) stuckCalls.incrementAndGet();
+            else state.compareAndSet(CALL_QUEUED, CALL_ABANDONED);
+            call.cancel(true);
+        }
+
+        // Requeues each message on its fallback channel; those without one are lost. Runs on this channel's
+        // worker, so it never blocks on a full fallback queue: two channels failing over into each other
+        // would otherwise wait on each other's workers forever.
+        private void failOver(List<OTPMessage> batch, String reason) {
+            int lost = 0;
+            for (OTPMessage message : batch) {
+                String fallback = message.getFallbackChannel();
+                if (fallback == null || closed) {
+                    lost++;
+                    continue;
+                }
+                failedOver.increment();
+                queue(fallback).offer(message.toFallback(),
+                        overflowPolicy == OverflowPolicy.BLOCK ? OverflowPolicy.DROP_NEWEST : overflowPolicy);
+            }
+            if (lost == 0) return;
+            failed.add(lost);
+            System.out.println("[System] OTP delivery via " + channel + " failed: " + reason);
+        }
+
+        private void observe(boolean success, long nanos) {
+            recentSuccessRate = recentSuccessRate * 0.8 + (success ? 0.2 : 0);
+            recentGatewayMillis = recentGatewayMillis * 0.8 + nanos / 1e6 * 0.2;
+        }
+
+        boolean isDegraded() {
+            CircuitBreaker.State state = breaker.getState();
+            if (state != CircuitBreaker.State.CLOSED) return state == CircuitBreaker.State.OPEN;
+            if (stuckCalls.get() >= AppConfig.OTP_MAX_STUCK_CALLS) return true;
+            double slowMillis = deadlineMillis / 2.0;
+            if (recentSuccessRate < 0.5 || recentGatewayMillis > slowMillis) return true;
+            OTPMessage oldest = queue.peek();
+            return oldest != null && (System.nanoTime() - oldest.getEnqueuedAtNanos()) / 1e6 > slowMillis;
+        }
+
+        // Like isDegraded, but lets every PROBE_EVERY-th code through to a slow channel whose breaker is
+        // closed; otherwise nothing would update its averages.
+        boolean shouldAvoid() {
+            if (!isDegraded()) return false;
+            return breaker.getState() == CircuitBreaker.State.OPEN || avoided.incrementAndGet() % PROBE_EVERY != 0;
+        }
+
+        ChannelStats stats() {
+            HistogramSnapshot latencies = latency.snapshot();
+            return new ChannelStats(queue.size(), enqueued.get(), delivered.get(), dropped.get(), failed.get(),
+                    retried.get(), batches.get(), timedOut.get(), failedOver.get(), stuckCalls.get(), breaker.getState(),
+                    recentSuccessRate, recentGatewayMillis, latencies.getMean() / 1e6,
+                    latencies.getPercentile(99) / 1e6, latencies.getMax() / 1e6);
+        }
+    }
+}
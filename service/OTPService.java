@@ -2,77 +2,125 @@ package service;
 
 import config.AppConfig;
 import listener.OTPListener;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 import model.User;
+import ratelimit.SlidingWindowRateLimiter;
+import repository.ExpiringCodeStore;
+import repository.OTPStore;
+import security.CodeGenerator;
+import util.CaseFolding;
+import util.Clock;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
-import java.util.Random;
 
 public class OTPService {
-    private Map<String, String> otpStore = new HashMap<>();
-    private Map<String, LocalDateTime> otpExpiry = new HashMap<>();
+    private final OTPStore otpStore;
+    private final CodeGenerator codeGenerator = new CodeGenerator(AppConfig.OTP_DIGITS);
     private OTPListener otpListener;
+    private SlidingWindowRateLimiter rateLimiter;
+
+    private final LatencyHistogram generationLatency = MetricsRegistry.getInstance().histogram("otp_generation_seconds");
+    private final Counter generated = MetricsRegistry.getInstance().counter("otp_generated_total");
+    private final Counter validationsSucceeded = MetricsRegistry.getInstance().counter("otp_validations_total", "result", "success");
+    private final Counter validationsMismatched = MetricsRegistry.getInstance().counter("otp_validations_total", "result", "mismatch");
+    private final Counter validationsExpired = MetricsRegistry.getInstance().counter("otp_validations_total", "result", "expired");
+    private final Counter validationsRateLimited = MetricsRegistry.getInstance().counter("otp_validations_total", "result", "rate_limited");
+
+    public OTPService() {
+        this(Clock.cached());
+    }
+
+    public OTPService(Clock clock) {
+        this(new ExpiringCodeStore(clock, 100, AppConfig.OTP_ATTEMPTS_LIMIT));
+    }
+
+    // E.g. a MappedOTPStore, so codes issued by one instance can be validated by another on the same host.
+    public OTPService(OTPStore otpStore) {
+        this.otpStore = otpStore;
+    }
 
     public void setOtpListener(OTPListener listener) {
         this.otpListener = listener;
     }
 
+    public void setRateLimiter(SlidingWindowRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
     // Main generateOTP method supporting cases when user may be null (e.g., pre-onboarding).
     public void generateOTP(User user, String username, String channel, Boolean sendBoth) {
+        long start = System.nanoTime();
         String key = (user != null ? user.getUsername() : username);
-        String otp = String.format("%06d", new Random().nextInt(1000000));
-        otpStore.put(key, otp);
-        otpExpiry.put(key, LocalDateTime.now().plusSeconds(AppConfig.OTP_VALIDITY_SECONDS));
+        String otp = codeGenerator.nextCode();
+        otpStore.put(key, otp, AppConfig.OTP_VALIDITY_SECONDS * 1000L);
         String usedChannel = (user != null && user.getPreferredOTPChannel() != null && !user.getPreferredOTPChannel().isEmpty())
                 ? user.getPreferredOTPChannel() : channel;
+        String otherChannel = Objects.equals(usedChannel, "mobile") ? "email" : "mobile";
         if (otpListener != null) {
             if (sendBoth) {
-                otpListener.sendOTP(key, otp, usedChannel);
-                otpListener.sendOTP(key, otp, Objects.equals(usedChannel, "mobile") ? "email" : "mobile");
+                otpListener.sendOTPToAll(key, otp, List.of(usedChannel, otherChannel));
             } else {
-                otpListener.sendOTP(key, otp, usedChannel);
+                // A registered user with both contacts can still be reached if the preferred channel fails.
+                boolean reachableElsewhere = user != null && hasText(user.getMobile()) && hasText(user.getEmail());
+                otpListener.sendOTP(key, otp, usedChannel, reachableElsewhere ? otherChannel : null);
             }
         } else {
             if (sendBoth) {
                 System.out.println("\n[System] OTP " + otp + " to " + username + " via " + usedChannel);
-                System.out.println("\n[System] OTP " + otp + " to " + username + " via " + (Objects.equals(usedChannel, "mobile") ? "email" : "mobile"));
+                System.out.println("\n[System] OTP " + otp + " to " + username + " via " + otherChannel);
             } else {
                 System.out.println("\n[System] OTP " + otp + " to " + username + " via " + usedChannel);
             }
         }
-        System.out.println("OTP valid for " + AppConfig.OTP_VALIDITY_SECONDS + " seconds");
+        generated.increment();
+        generationLatency.recordSince(start);
     }
 
+    // A successfully validated OTP is consumed and cannot be used again. Attempts count against the
+    // case-folded username's OTP budget, apart from its password attempts.
     public boolean validateOTP(User user, String enteredOtp) {
         if (user == null) return false;
-        String key = user.getUsername();
-
-        return otpStore.getOrDefault(key, "").equals(enteredOtp);
+        return isAllowed(SlidingWindowRateLimiter.Dimension.OTP, CaseFolding.fold(user.getUsername()))
+                && consume(user.getUsername(), enteredOtp);
     }
 
     public boolean isOTPExpired(User user) {
         if (user == null) return true;
-        LocalDateTime expiry = otpExpiry.get(user.getUsername());
-        if (expiry == null || LocalDateTime.now().isAfter(expiry)) {
-            System.out.println("OTP expired!");
-            return true;
-        }
-        return false;
+        return isOTPExpired(user.getUsername());
     }
 
     // Validate OTP using a key (for cases where User is not yet available).
+    // Keyed by NIC during onboarding, before a username exists. The limit is on the case-folded NIC, since
+    // "...V" and "...v" are the same card.
     public boolean validateOTP(String userId, String enteredOtp) {
-        return enteredOtp.equals(otpStore.getOrDefault(userId, ""));
+        return isAllowed(SlidingWindowRateLimiter.Dimension.NIC, CaseFolding.fold(userId)) && consume(userId, enteredOtp);
     }
 
     public boolean isOTPExpired(String userId) {
-        LocalDateTime expiry = otpExpiry.get(userId);
-        if (expiry == null || LocalDateTime.now().isAfter(expiry)) {
-            System.out.println("OTP expired!");
+        return otpStore.isExpired(userId);
+    }
+
+    private boolean consume(String key, String enteredOtp) {
+        if (otpStore.consume(key, enteredOtp)) {
+            validationsSucceeded.increment();
             return true;
         }
+        if (otpStore.isExpired(key)) validationsExpired.increment();
+        else validationsMismatched.increment();
+        return false;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    private boolean isAllowed(SlidingWindowRateLimiter.Dimension dimension, String key) {
+        if (rateLimiter == null || rateLimiter.tryAcquire(dimension, key)) return true;
+        System.out.println("Too many OTP attempts for " + key);
+        validationsRateLimited.increment();
         return false;
     }
 }
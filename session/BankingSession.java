@@ -0,0 +1,553 @@
+package session;
+
+import analytics.LoginAnalytics;
+import config.AppConfig;
+import model.LoginAttempt;
+import model.User;
+import repository.UserRepository;
+import reservation.Reservation;
+import reservation.ReservationService;
+import service.AuthService;
+import service.BankingService;
+import service.OTPService;
+import validation.InputValidators;
+import validation.OnboardingRecord;
+import util.Clock;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// One customer's onboarding or login conversation. Each submit consumes one answer, runs the step it
+// belongs to and moves to the next; the session keeps only the answers it still needs.
+class BankingSession {
+    enum Step {
+        LANGUAGE, NIC, ACCOUNT, TERMS, MOBILE, EMAIL, ONBOARDING_OTP, VERIFICATION_METHOD,
+        USERNAME, USERNAME_SUGGESTION, PASSWORD, CONFIRM_PASSWORD, DISPLAY_NAME,
+        LOGIN_USERNAME, LOGIN_OPTION, LOGIN_PASSWORD, OTP_CHANNEL, LOGIN_OTP, DASHBOARD,
+        RESET_TOKEN, RESET_PASSWORD, RESET_CONFIRM_PASSWORD, FINISHED
+    }
+
+    private static final DateTimeFormatter LOCK_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String PASSWORD_QUESTION = "Create password (min 8 chars, mix letters/numbers): ";
+
+    private final String id;
+    private final String source;
+    private final BankingService bankingService;
+    private final OTPService otpService;
+    private final AuthService authService;
+    private final UserRepository userDatabase;
+    private final LoginAnalytics loginAnalytics;
+    private final Clock clock;
+
+    private Step step;
+    private String question;
+    private volatile long lastActiveMillis;
+    private int otpAttempt;
+    private String nic;
+    private String account;
+    private String mobile;
+    private String email;
+    private String username;
+    private String password;
+    private String suggestions;
+    private User user;
+    // Holds the NIC and account from the account step, and the username once chosen, until registration.
+    private Reservation reservation;
+
+    BankingSession(String id, String source, BankingService bankingService, OTPService otpService, AuthService authService,
+                   UserRepository userDatabase, LoginAnalytics loginAnalytics, Clock clock) {
+        this.id = id;
+        this.source = source;
+        this.bankingService = bankingService;
+        this.otpService = otpService;
+        this.authService = authService;
+        this.userDatabase = userDatabase;
+        this.loginAnalytics = loginAnalytics;
+        this.clock = clock;
+        this.lastActiveMillis = clock.currentTimeMillis();
+    }
+
+    long getLastActiveMillis() { return lastActiveMillis; }
+
+    synchronized Prompt startOnboarding() {
+        List<String> out = new ArrayList<>();
+        out.add("\n=== New Customer Onboarding ===");
+        ask(Step.LANGUAGE, "Choose language (1. English): ");
+        return prompt(out);
+    }
+
+    synchronized Prompt startLogin() {
+        List<String> out = new ArrayList<>();
+        beginLogin(out);
+        return prompt(out);
+    }
+
+    synchronized Prompt current() {
+        return prompt(new ArrayList<>());
+    }
+
+    synchronized Prompt submit(String rawInput) {
+        lastActiveMillis = clock.currentTimeMillis();
+        String input = rawInput == null ? "" : rawInput.trim();
+        List<String> out = new ArrayList<>();
+        if (reservation != null && !bankingService.reservations.renew(reservation)) {
+            out.add("Onboarding expired. Please start again.");
+            finish();
+            return prompt(out);
+        }
+        switch (step) {
+            case LANGUAGE -> onLanguage(input, out);
+            case NIC -> onNic(input, out);
+            case ACCOUNT -> onAccount(input, out);
+            case TERMS -> onTerms(input, out);
+            case MOBILE -> onMobile(input, out);
+            case EMAIL -> onEmail(input, out);
+            case ONBOARDING_OTP -> onOnboardingOtp(input, out);
+            case VERIFICATION_METHOD -> onVerificationMethod(input, out);
+            case USERNAME -> onUsername(input, out);
+            case USERNAME_SUGGESTION -> onUsernameSuggestion(input, out);
+            case PASSWORD -> onPassword(input, out);
+            case CONFIRM_PASSWORD -> onConfirmPassword(input, out);
+            case DISPLAY_NAME -> onDisplayName(input, out);
+            case LOGIN_USERNAME -> onLoginUsername(input, out);
+            case LOGIN_OPTION -> onLoginOption(input, out);
+            case LOGIN_PASSWORD -> onLoginPassword(input, out);
+            case OTP_CHANNEL -> onOtpChannel(input, out);
+            case LOGIN_OTP -> onLoginOtp(input, out);
+            case DASHBOARD -> finish();
+            case RESET_TOKEN -> onResetToken(input, out);
+            case RESET_PASSWORD -> onResetPassword(input, out);
+            case RESET_CONFIRM_PASSWORD -> onResetConfirmPassword(input, out);
+            case FINISHED -> { }
+        }
+        return prompt(out);
+    }
+
+    // Onboarding
+
+    private void onLanguage(String input, List<String> out) {
+        if (!input.equals("1")) {
+            error(out, "Invalid choice");
+            return;
+        }
+        out.add("Selected language: English");
+        ask(Step.NIC, "Enter NIC/Passport number (e.g., 12345678V, 123456789012, P1234567, OL1234567, D1234567): ");
+    }
+
+    private void onNic(String input, List<String> out) {
+        if (!InputValidators.isValidNic(input)) {
+            error(out, "Invalid NIC/Passport format");
+            return;
+        }
+        if (authService.isOnboardingUserLocked(input)) {
+            out.add("Error: Onboarding is Temporary Locked until " + authService.getOnboardingUserLockedTime(input)
+                    .format(LOCK_TIME_FORMAT) + " for this user! Redirecting to login...");
+            finish();
+            return;
+        }
+        nic = input;
+        ask(Step.ACCOUNT, "Enter CASA account number (format ACCXXXXXX): ");
+    }
+
+    private void onAccount(String input, List<String> out) {
+        if (!InputValidators.isValidAccountNumber(input)) {
+            error(out, "Invalid account format");
+            return;
+        }
+        if (userDatabase.findByNic(nic) != null) {
+            out.add("Error: Account already registered! Redirecting to login...");
+            finish();
+            return;
+        }
+        ReservationService reservations = bankingService.reservations;
+        reservation = reservations.open();
+        if (!reservations.hold(reservation, ReservationService.Kind.NIC, nic)
+                || !reservations.hold(reservation, ReservationService.Kind.ACCOUNT, input)) {
+            out.add("Error: NIC or account is already registered or being onboarded! Redirecting to login...");
+            finish();
+            return;
+        }
+        account = input;
+        out.add("\nTerms & Conditions: " + AppConfig.TERMS_CONDITIONS_URL);
+        ask(Step.TERMS, "Do you accept the terms? (Y/N): ");
+    }
+
+    private void onTerms(String input, List<String> out) {
+        if (input.equalsIgnoreCase("N")) {
+            out.add("Onboarding cancelled. Terms not accepted.");
+            finish();
+        } else if (input.equalsIgnoreCase("Y")) {
+            ask(Step.MOBILE, "Enter mobile number (optional): ");
+        } else {
+            error(out, "Please enter Y/N");
+        }
+    }
+
+    private void onMobile(String input, List<String> out) {
+        if (!InputValidators.isValidMobile(input)) {
+            error(out, "Invalid mobile number format (must be 10 digits or empty)");
+            return;
+        }
+        mobile = input;
+        ask(Step.EMAIL, "Enter email (optional): ");
+    }
+
+    private void onEmail(String input, List<String> out) {
+        if (!InputValidators.isValidEmail(input)) {
+            error(out, "Invalid email format (must be valid email or empty)");
+            return;
+        }
+        email = input;
+        if (mobile.isEmpty() && email.isEmpty()) {
+            out.add("At least one contact method (mobile or email) is required!");
+            ask(Step.MOBILE, "Enter mobile number (optional): ");
+            return;
+        }
+
+        // For onboarding, the user may not be registered yet.
+        User existing = userDatabase.findByUsername(nic);
+        if (!mobile.isEmpty() && !email.isEmpty()) {
+            otpService.generateOTP(existing, nic, "mobile", true);
+        } else {
+            otpService.generateOTP(existing, nic, !mobile.isEmpty() ? "mobile" : "email", false);
+        }
+        out.add("OTP valid for " + AppConfig.OTP_VALIDITY_SECONDS + " seconds");
+        otpAttempt = 1;
+        askOtp(Step.ONBOARDING_OTP);
+    }
+
+    private void onOnboardingOtp(String input, List<String> out) {
+        if (!InputValidators.isValidOtp(input)) {
+            out.add("Invalid OTP format!");
+        } else if (otpService.isOTPExpired(nic)) {
+            out.add("OTP expired!");
+            finish();
+            return;
+        } else if (otpService.validateOTP(nic, input)) {
+            out.add("\nChoose verification method:");
+            out.add("1. Contact Call Center");
+            out.add("2. Visit Branch");
+            ask(Step.VERIFICATION_METHOD, "Select (1-2): ");
+            return;
+        } else {
+            out.add("Invalid OTP!");
+        }
+
+        if (++otpAttempt > AppConfig.OTP_ATTEMPTS_LIMIT) {
+            out.add("Maximum attempts reached. Onboarding locked until " + authService.lockOnboardingUser(nic) + ".");
+            finish();
+            return;
+        }
+        askOtp(Step.ONBOARDING_OTP);
+    }
+
+    private void onVerificationMethod(String input, List<String> out) {
+        if (!input.equals("1") && !input.equals("2")) {
+            error(out, "Invalid choice");
+            return;
+        }
+        out.add("\nVerification instructions:");
+        if (input.equals("1")) {
+            out.add("Please call our 24/7 support center at +94 11 123 4567");
+            out.add("Have your NIC/Passport and account details ready");
+        } else {
+            out.add("Visit any Serendib Bank branch with:");
+            out.add("- Original NIC/Passport");
+            out.add("- Account statement (if available)");
+        }
+        out.add("\n[System] Verification confirmation sent via " + (!mobile.isEmpty() ? "mobile" : "email") + ".");
+        ask(Step.USERNAME, "Create username (4-12 alphanumeric chars): ");
+    }
+
+    private void onUsername(String input, List<String> out) {
+        if (!InputValidators.isValidUsername(input)) {
+            error(out, "Invalid format");
+            return;
+        }
+        if (holdUsername(input)) {
+            ask(Step.PASSWORD, PASSWORD_QUESTION);
+        } else {
+            suggestions = bankingService.userFactory.suggestUsername(input);
+            out.add("Username taken! Suggestions: " + suggestions);
+            ask(Step.USERNAME_SUGGESTION, "Choose suggestion (1-3) or enter new username: ");
+        }
+    }
+
+    private void onUsernameSuggestion(String input, List<String> out) {
+        if (input.equals("1") || input.equals("2") || input.equals("3")) {
+            String chosen = suggestions.split(", ")[Integer.parseInt(input) - 1];
+            suggestions = null;
+            if (holdUsername(chosen)) {
+                ask(Step.PASSWORD, PASSWORD_QUESTION);
+            } else {
+                out.add("Username was just taken!");
+                ask(Step.USERNAME, "Create username (4-12 alphanumeric chars): ");
+            }
+        } else {
+            suggestions = null;
+            ask(Step.USERNAME, "Create username (4-12 alphanumeric chars): ");
+        }
+    }
+
+    private void onPassword(String input, List<String> out) {
+        if (!InputValidators.isValidPassword(input)) {
+            error(out, "Invalid format");
+            return;
+        }
+        password = input;
+        ask(Step.CONFIRM_PASSWORD, "Confirm password: ");
+    }
+
+    private void onConfirmPassword(String input, List<String> out) {
+        if (!input.equals(password)) {
+            error(out, "Must match password");
+            return;
+        }
+        ask(Step.DISPLAY_NAME, "Enter display name: ");
+    }
+
+    private void onDisplayName(String input, List<String> out) {
+        if (input.isEmpty()) {
+            error(out, "Name cannot be empty");
+            return;
+        }
+        try {
+            User created = bankingService.onboardUser(
+                    new OnboardingRecord(nic, account, mobile, email, username, password, input), reservation);
+            reservation = null;
+            out.add("\n=== Onboarding Successful ===");
+            out.add("Welcome " + created.getDisplayName());
+            clearOnboardingAnswers();
+            beginLogin(out);
+        } catch (IllegalArgumentException e) {
+            out.add("Onboarding failed: " + e.getMessage());
+            finish();
+        } catch (RuntimeException e) {
+            // The log write failed, the hashing pool is saturated or core banking is down. Nothing the
+            // customer typed was wrong, so they are asked to try again rather than shown the cause.
+            System.out.println("[System] Onboarding failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            out.add("Onboarding failed: the service is temporarily unavailable. Please try again later.");
+            finish();
+        }
+    }
+
+    // Reserved until this onboarding registers or ends, so nobody else can take it in the meantime.
+    private boolean holdUsername(String candidate) {
+        if (!bankingService.reservations.hold(reservation, ReservationService.Kind.USERNAME, candidate)) return false;
+        username = candidate;
+        return true;
+    }
+
+    // Login
+
+    private void beginLogin(List<String> out) {
+        out.add("\n=== Secure Login ===");
+        ask(Step.LOGIN_USERNAME, "Username: ");
+    }
+
+    private void onLoginUsername(String input, List<String> out) {
+        if (input.isEmpty()) {
+            error(out, "Required field");
+            return;
+        }
+        username = input;
+        out.add("\nSelect an option:");
+        out.add("1. Enter Password");
+        out.add("2. Forgot Password");
+        ask(Step.LOGIN_OPTION, "Select (1-2): ");
+    }
+
+    private void onLoginOption(String input, List<String> out) {
+        if (input.equals("1")) {
+            ask(Step.LOGIN_PASSWORD, "Password (min 8 chars, mix letters/numbers): ");
+        } else if (input.equals("2")) {
+            beginPasswordReset(out);
+        } else {
+            error(out, "Invalid choice");
+        }
+    }
+
+    private void onLoginPassword(String input, List<String> out) {
+        if (!InputValidators.isValidPassword(input)) {
+            error(out, "Invalid format");
+            return;
+        }
+        user = authService.validateCredentials(username, input, source);
+        LoginAttempt attempt = new LoginAttempt(username, clock.currentTimeMillis(), user != null);
+        userDatabase.logLoginAttempt(attempt);
+        if (loginAnalytics != null) loginAnalytics.onAttempt(attempt, source);
+        if (user == null) {
+            out.add("Invalid credentials or account locked");
+            finish();
+            return;
+        }
+
+        out.add("\n=== Two-Factor Authentication ===");
+        if (!user.getMobile().isEmpty() && !user.getEmail().isEmpty()) {
+            out.add("Select OTP channel:");
+            out.add("1. Mobile (" + user.getMobile() + ")");
+            out.add("2. Email (" + user.getEmail() + ")");
+            ask(Step.OTP_CHANNEL, "Choice: ");
+        } else if (!user.getMobile().isEmpty()) {
+            sendLoginOtp("mobile", out);
+        } else if (!user.getEmail().isEmpty()) {
+            sendLoginOtp("email", out);
+        } else {
+            out.add("No contact method available for OTP.");
+            finish();
+        }
+    }
+
+    private void onOtpChannel(String input, List<String> out) {
+        if (input.equals("2")) {
+            sendLoginOtp("email", out);
+            return;
+        }
+        if (!input.equals("1")) out.add("Invalid choice. Defaulting to mobile.");
+        sendLoginOtp("mobile", out);
+    }
+
+    private void sendLoginOtp(String channel, List<String> out) {
+        otpService.generateOTP(user, user.getUsername(), channel, false);
+        out.add("OTP valid for " + AppConfig.OTP_VALIDITY_SECONDS + " seconds");
+        otpAttempt = 1;
+        askOtp(Step.LOGIN_OTP);
+    }
+
+    private void onLoginOtp(String input, List<String> out) {
+        if (!InputValidators.isValidOtp(input)) {
+            out.add("Invalid OTP format.");
+        } else if (otpService.isOTPExpired(user)) {
+            out.add("OTP expired!");
+            out.add("Login failed due to OTP validation errors");
+            finish();
+            return;
+        } else if (otpService.validateOTP(user, input)) {
+            out.add("\n=== Login Successful ===");
+            showDashboard(out);
+            return;
+        } else {
+            out.add("Invalid OTP.");
+        }
+
+        if (++otpAttempt > AppConfig.OTP_ATTEMPTS_LIMIT) {
+            out.add("Maximum attempts reached. Account locked until " + authService.lockUser(user) + ".");
+            out.add("Login failed due to OTP validation errors");
+            finish();
+            return;
+        }
+        askOtp(Step.LOGIN_OTP);
+    }
+
+    private void showDashboard(List<String> out) {
+        try {
+            out.addAll(bankingService.getDashboard(user).getLines());
+        } catch (IllegalStateException e) {
+            out.add("\nYour accounts cannot be shown right now. Please try again later.");
+        }
+        ask(Step.DASHBOARD, "\nPress Enter to logout...");
+    }
+
+    // Password reset
+
+    private void beginPasswordReset(List<String> out) {
+        user = userDatabase.findByUsername(username);
+        if (user == null) {
+            out.add("User not found");
+            finish();
+            return;
+        }
+        out.add("\n=== Password Reset ===");
+        authService.generatePasswordResetToken(username, user.getEmail().isEmpty() ? "Mobile" : "Email");
+        out.add("Reset Token valid for " + AppConfig.RESET_TOKEN_VALIDITY_MINUTES + " minutes");
+        ask(Step.RESET_TOKEN, "Enter reset token: ");
+    }
+
+    private void onResetToken(String input, List<String> out) {
+        if (!InputValidators.isValidOtp(input)) {
+            error(out, "6 digits required");
+            return;
+        }
+        if (!authService.isPasswordResetTokenMatch(username, input)) {
+            out.add("Invalid Reset Token");
+            finish();
+        } else if (authService.isPasswordResetTokenExpired(username, input)) {
+            out.add("Reset Token Expired");
+            finish();
+        } else if (!authService.consumePasswordResetToken(username, input)) {
+            out.add("Invalid Reset Token");
+            finish();
+        } else {
+            ask(Step.RESET_PASSWORD, PASSWORD_QUESTION);
+        }
+    }
+
+    private void onResetPassword(String input, List<String> out) {
+        if (!InputValidators.isValidPassword(input)) {
+            error(out, "Invalid format");
+            return;
+        }
+        password = input;
+        ask(Step.RESET_CONFIRM_PASSWORD, "Confirm password: ");
+    }
+
+    private void onResetConfirmPassword(String input, List<String> out) {
+        if (!input.equals(password)) {
+            error(out, "Must match password");
+            return;
+        }
+        authService.changePassword(user, password);
+        out.add("Password reset successful");
+        finish();
+    }
+
+    // Helpers
+
+    private void ask(Step next, String nextQuestion) {
+        step = next;
+        question = nextQuestion;
+    }
+
+    private void askOtp(Step next) {
+        ask(next, "Enter OTP (Attempt " + otpAttempt + "/" + AppConfig.OTP_ATTEMPTS_LIMIT + "): ");
+    }
+
+    private static void error(List<String> out, String message) {
+        out.add("Error: " + message);
+    }
+
+    // Releases the onboarding's holds when the session is dropped before it finishes.
+    synchronized void close() {
+        finish();
+    }
+
+    private void finish() {
+        step = Step.FINISHED;
+        question = null;
+        if (reservation != null) {
+            bankingService.reservations.release(reservation);
+            reservation = null;
+        }
+        clearOnboardingAnswers();
+        username = null;
+        user = null;
+    }
+
+    private void clearOnboardingAnswers() {
+        nic = null;
+        account = null;
+        mobile = null;
+        email = null;
+        password = null;
+        suggestions = null;
+    }
+
+    private Prompt prompt(List<String> out) {
+        return new Prompt(id, out, question);
+    }
+
+    synchronized boolean isFinished() {
+        return step == Step.FINISHED;
+    }
+}
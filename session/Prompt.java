@@ -0,0 +1,22 @@
+package session;
+
+import java.util.List;
+
+// What a client shows after each step: the lines produced by that step, then the next question.
+// A finished prompt has no question and its session is gone.
+public class Prompt {
+    private final String sessionId;
+    private final List<String> messages;
+    private final String question;
+
+    Prompt(String sessionId, List<String> messages, String question) {
+        this.sessionId = sessionId;
+        this.messages = messages;
+        this.question = question;
+    }
+
+    public String getSessionId() { return sessionId; }
+    public List<String> getMessages() { return messages; }
+    public String getQuestion() { return question; }
+    public boolean isFinished() { return question == null; }
+}
@@ -0,0 +1,114 @@
+package session;
+
+import analytics.LoginAnalytics;
+import config.AppConfig;
+import repository.UserRepository;
+import service.AuthService;
+import service.BankingService;
+import service.OTPService;
+import util.Clock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless onboarding/login flows. Clients start a session, show the returned prompt and submit the
+// customer's answer; nothing here reads a terminal or owns a thread, so any number of clients (one
+// virtual thread each, for example) can drive their own sessions concurrently.
+public class SessionEngine {
+    private static final int SWEEP_EVERY_STARTS = 1_024;
+
+    private final BankingService bankingService;
+    private final OTPService otpService;
+    private final AuthService authService;
+    private final UserRepository userDatabase;
+    private final Clock clock;
+    private final Map<String, BankingSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private volatile LoginAnalytics loginAnalytics;
+
+    public SessionEngine(BankingService bankingService, OTPService otpService, AuthService authService,
+                         UserRepository userDatabase) {
+        this(bankingService, otpService, authService, userDatabase, Clock.cached());
+    }
+
+    public SessionEngine(BankingService bankingService, OTPService otpService, AuthService authService,
+                         UserRepository userDatabase, Clock clock) {
+        this.bankingService = bankingService;
+        this.otpService = otpService;
+        this.authService = authService;
+        this.userDatabase = userDatabase;
+        this.clock = clock;
+    }
+
+    // Login attempts from sessions started after this call are fed to the analytics stage.
+    public void setLoginAnalytics(LoginAnalytics loginAnalytics) {
+        this.loginAnalytics = loginAnalytics;
+    }
+
+    public Prompt startOnboarding() {
+        return startOnboarding(null);
+    }
+
+    // source identifies the client (e.g. its address) for per-source rate limiting.
+    public Prompt startOnboarding(String source) {
+        return track(newSession(source).startOnboarding());
+    }
+
+    public Prompt startLogin() {
+        return startLogin(null);
+    }
+
+    public Prompt startLogin(String source) {
+        return track(newSession(source).startLogin());
+    }
+
+    public Prompt submit(String sessionId, String input) {
+        BankingSession session = sessions.get(sessionId);
+        if (session == null) return new Prompt(sessionId, List.of("Session expired. Please start again."), null);
+        Prompt prompt = session.submit(input);
+        if (prompt.isFinished()) sessions.remove(sessionId, session);
+        return prompt;
+    }
+
+    // The question still awaiting an answer, e.g. for a client that reconnects.
+    public Prompt current(String sessionId) {
+        BankingSession session = sessions.get(sessionId);
+        if (session == null) throw new IllegalArgumentException("Unknown session " + sessionId);
+        return session.current();
+    }
+
+    public void cancel(String sessionId) {
+        BankingSession session = sessions.remove(sessionId);
+        if (session != null) session.close();
+    }
+
+    public int getActiveSessions() {
+        return sessions.size();
+    }
+
+    public void expireIdleSessions() {
+        long cutoff = clock.currentTimeMillis() - AppConfig.SESSION_IDLE_TIMEOUT_MINUTES * 60_000L;
+        sessions.values().removeIf(session -> {
+            if (session.getLastActiveMillis() >= cutoff) return false;
+            session.close();
+            return true;
+        });
+    }
+
+    private BankingSession newSession(String source) {
+        if (started.incrementAndGet() % SWEEP_EVERY_STARTS == 0) expireIdleSessions();
+        String id = UUID.randomUUID().toString();
+        BankingSession session = new BankingSession(id, source, bankingService, otpService, authService, userDatabase,
+                loginAnalytics, clock);
+        sessions.put(id, session);
+        return session;
+    }
+
+    private Prompt track(Prompt prompt) {
+        if (prompt.isFinished()) sessions.remove(prompt.getSessionId());
+        return prompt;
+    }
+}
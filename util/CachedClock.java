@@ -0,0 +1,43 @@
+package util;
+
+import config.AppConfig;
+
+import java.util.concurrent.locks.LockSupport;
+
+// A clock that is read with a single volatile load. One daemon thread refreshes the value every
+// tickMillis, so readers see time at that granularity, which is plenty for expiry measured in seconds.
+public final class CachedClock implements Clock {
+    private static volatile CachedClock instance;
+
+    private final long tickNanos;
+    private volatile long now = System.currentTimeMillis();
+
+    public CachedClock(long tickMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("Tick must be positive");
+        this.tickNanos = tickMillis * 1_000_000L;
+        Thread ticker = new Thread(this::tick, "cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public static CachedClock getInstance() {
+        if (instance == null) {
+            synchronized (CachedClock.class) {
+                if (instance == null) instance = new CachedClock(AppConfig.CLOCK_TICK_MILLIS);
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    private void tick() {
+        while (true) {
+            LockSupport.parkNanos(tickNanos);
+            now = System.currentTimeMillis();
+        }
+    }
+}
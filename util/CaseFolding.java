@@ -0,0 +1,44 @@
+package util;
+
+// Locale-independent case folding for keys users type in different cases: usernames, email addresses
+// and NICs. Hashing and comparing fold one char at a time, so lookups allocate nothing; fold(String)
+// returns its argument unchanged when it is already folded.
+public final class CaseFolding {
+    private CaseFolding() {}
+
+    public static char fold(char c) {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    // Same value as fold(key).hashCode().
+    public static int hash(String key) {
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) h = 31 * h + fold(key.charAt(i));
+        return h;
+    }
+
+    public static boolean equals(String a, String b) {
+        if (a.length() != b.length()) return false;
+        for (int i = 0; i < a.length(); i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y && fold(x) != fold(y)) return false;
+        }
+        return true;
+    }
+
+    public static String fold(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (fold(c) != c) return copyFolded(key, i);
+        }
+        return key;
+    }
+
+    private static String copyFolded(String key, int from) {
+        char[] chars = key.toCharArray();
+        for (int i = from; i < chars.length; i++) chars[i] = fold(chars[i]);
+        return new String(chars);
+    }
+}
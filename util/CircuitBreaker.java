@@ -0,0 +1,52 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Stops calls to a dependency after failureThreshold consecutive failures. Once openMillis have passed,
+// one trial call is let through (half open): success closes the breaker, failure opens it again.
+public final class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Clock clock;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    // 0 while closed.
+    private volatile long openUntilMillis;
+
+    public CircuitBreaker(Clock clock, int failureThreshold, long openMillis) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("Failure threshold must be at least 1");
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    // True if a call may go ahead now; in the half-open state only the first caller gets the trial.
+    public boolean tryAcquire() {
+        long openUntil = openUntilMillis;
+        if (openUntil == 0) return true;
+        if (clock.currentTimeMillis() < openUntil) return false;
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        openUntilMillis = 0;
+        trialInFlight.set(false);
+    }
+
+    public void onFailure() {
+        boolean trial = trialInFlight.getAndSet(false);
+        if (trial || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntilMillis = clock.currentTimeMillis() + openMillis;
+        }
+    }
+
+    public State getState() {
+        long openUntil = openUntilMillis;
+        if (openUntil == 0) return State.CLOSED;
+        return clock.currentTimeMillis() < openUntil ? State.OPEN : State.HALF_OPEN;
+    }
+}
@@ -0,0 +1,24 @@
+package util;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Source of the current time for expiry checks. Services take one so tests can substitute a ManualClock;
+// timestamps are plain epoch millis and only turned into LocalDateTime when shown to a customer.
+public interface Clock {
+    long currentTimeMillis();
+
+    static Clock system() {
+        return System::currentTimeMillis;
+    }
+
+    // The default for services: a shared clock ticking every AppConfig.CLOCK_TICK_MILLIS.
+    static Clock cached() {
+        return CachedClock.getInstance();
+    }
+
+    static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,25 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A clock that only moves when told to, for deterministic expiry in tests and simulations.
+public final class ManualClock implements Clock {
+    private final AtomicLong now;
+
+    public ManualClock(long startMillis) {
+        this.now = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now.get();
+    }
+
+    public void set(long epochMillis) {
+        now.set(epochMillis);
+    }
+
+    public long advance(long millis) {
+        return now.addAndGet(millis);
+    }
+}
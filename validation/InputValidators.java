@@ -0,0 +1,147 @@
+package validation;
+
+import java.util.List;
+
+// Hand-written equivalents of the input regexes used during onboarding and login. Each method accepts
+// exactly the strings its documented regex accepts, but scans the input once and allocates nothing.
+public final class InputValidators {
+    public static final int INVALID_NIC = 1;
+    public static final int INVALID_ACCOUNT = 1 << 1;
+    public static final int INVALID_MOBILE = 1 << 2;
+    public static final int INVALID_EMAIL = 1 << 3;
+    public static final int MISSING_CONTACT = 1 << 4;
+    public static final int INVALID_USERNAME = 1 << 5;
+    public static final int INVALID_PASSWORD = 1 << 6;
+    public static final int INVALID_DISPLAY_NAME = 1 << 7;
+
+    private InputValidators() {}
+
+    // ^(?:\d{12}|\d{9}[Vv]|(?:[Pp]|[Oo][Ll]|[Dd])\d{7})$
+    public static boolean isValidNic(String input) {
+        int length = input.length();
+        if (length == 12) return isDigits(input, 0, 12);
+        if (length == 10) return isDigits(input, 0, 9) && (input.charAt(9) == 'V' || input.charAt(9) == 'v');
+        if (length == 8) {
+            char c = input.charAt(0);
+            return (c == 'P' || c == 'p' || c == 'D' || c == 'd') && isDigits(input, 1, 8);
+        }
+        if (length == 9) {
+            char o = input.charAt(0);
+            char l = input.charAt(1);
+            return (o == 'O' || o == 'o') && (l == 'L' || l == 'l') && isDigits(input, 2, 9);
+        }
+        return false;
+    }
+
+    // ACC\d{6}
+    public static boolean isValidAccountNumber(String input) {
+        return input.length() == 9 && input.startsWith("ACC") && isDigits(input, 3, 9);
+    }
+
+    // (^$|\d{10})
+    public static boolean isValidMobile(String input) {
+        return input.isEmpty() || (input.length() == 10 && isDigits(input, 0, 10));
+    }
+
+    // (^$|\S+@\S+\.\S+)
+    public static boolean isValidEmail(String input) {
+        int length = input.length();
+        if (length == 0) return true;
+
+        int at = -1;
+        boolean dotAfterAt = false;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (isRegexWhitespace(c)) return false;
+            if (c == '@' && at < 0 && i > 0) at = i;
+            else if (c == '.' && at >= 0 && i >= at + 2 && i <= length - 2) dotAfterAt = true;
+        }
+        return dotAfterAt;
+    }
+
+    // \d{6}
+    public static boolean isValidOtp(String input) {
+        return input.length() == 6 && isDigits(input, 0, 6);
+    }
+
+    // ^(?=.*[A-Za-z])(?=.*\d).{8,}$
+    public static boolean isValidPassword(String input) {
+        boolean letter = false;
+        boolean digit = false;
+        int codePoints = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (isLineTerminator(c)) return false;
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) letter = true;
+            else if (c >= '0' && c <= '9') digit = true;
+            // A surrogate pair is one code point, as it is for the regex '.'.
+            if (!(Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(input.charAt(i - 1)))) codePoints++;
+        }
+        return letter && digit && codePoints >= 8;
+    }
+
+    // \w{4,12}
+    public static boolean isValidUsername(String input) {
+        int length = input.length();
+        if (length < 4 || length > 12) return false;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) return false;
+        }
+        return true;
+    }
+
+    // Returns a bit set of INVALID_* / MISSING_* flags, or 0 when the whole record is acceptable.
+    public static int validate(OnboardingRecord record) {
+        int errors = 0;
+        if (!isValidNic(record.getNic())) errors |= INVALID_NIC;
+        if (!isValidAccountNumber(record.getAccountNumber())) errors |= INVALID_ACCOUNT;
+        if (!isValidMobile(record.getMobile())) errors |= INVALID_MOBILE;
+        if (!isValidEmail(record.getEmail())) errors |= INVALID_EMAIL;
+        if (record.getMobile().isEmpty() && record.getEmail().isEmpty()) errors |= MISSING_CONTACT;
+        if (!isValidUsername(record.getUsername())) errors |= INVALID_USERNAME;
+        if (!isValidPassword(record.getPassword())) errors |= INVALID_PASSWORD;
+        if (record.getDisplayName().trim().isEmpty()) errors |= INVALID_DISPLAY_NAME;
+        return errors;
+    }
+
+    public static void validateAll(List<OnboardingRecord> records, int[] errors) {
+        for (int i = 0; i < records.size(); i++) errors[i] = validate(records.get(i));
+    }
+
+    public static String describe(int errors) {
+        StringBuilder description = new StringBuilder();
+        if ((errors & INVALID_NIC) != 0) append(description, "Invalid NIC/Passport format");
+        if ((errors & INVALID_ACCOUNT) != 0) append(description, "Invalid account format");
+        if ((errors & INVALID_MOBILE) != 0) append(description, "Invalid mobile number format");
+        if ((errors & INVALID_EMAIL) != 0) append(description, "Invalid email format");
+        if ((errors & MISSING_CONTACT) != 0) append(description, "At least one contact method is required");
+        if ((errors & INVALID_USERNAME) != 0) append(description, "Invalid username format");
+        if ((errors & INVALID_PASSWORD) != 0) append(description, "Invalid password format");
+        if ((errors & INVALID_DISPLAY_NAME) != 0) append(description, "Name cannot be empty");
+        return description.toString();
+    }
+
+    private static void append(StringBuilder description, String message) {
+        if (description.length() > 0) description.append("; ");
+        description.append(message);
+    }
+
+    private static boolean isDigits(String input, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    // The characters java.util.regex treats as \s.
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // The characters java.util.regex's '.' does not match.
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,30 @@
+package validation;
+
+public class OnboardingRecord {
+    private final String nic;
+    private final String accountNumber;
+    private final String mobile;
+    private final String email;
+    private final String username;
+    private final String password;
+    private final String displayName;
+
+    public OnboardingRecord(String nic, String accountNumber, String mobile, String email,
+                            String username, String password, String displayName) {
+        this.nic = nic;
+        this.accountNumber = accountNumber;
+        this.mobile = mobile;
+        this.email = email;
+        this.username = username;
+        this.password = password;
+        this.displayName = displayName;
+    }
+
+    public String getNic() { return nic; }
+    public String getAccountNumber() { return accountNumber; }
+    public String getMobile() { return mobile; }
+    public String getEmail() { return email; }
+    public String getUsername() { return username; }
+    public String getPassword() { return password; }
+    public String getDisplayName() { return displayName; }
+}